@@ -0,0 +1,149 @@
+package com.markets.emailsync;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.graph.models.BodyType;
+import com.microsoft.graph.models.EmailAddress;
+import com.microsoft.graph.models.Importance;
+import com.microsoft.graph.models.ItemBody;
+import com.microsoft.graph.models.Message;
+import com.microsoft.graph.models.Recipient;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Realistic inputs for the benchmarks: HTML bodies of a given size, long
+ * recipient lists and Graph-shaped delta pages and notification batches.
+ * Generation is seeded so every run measures the same data.
+ */
+public final class BenchmarkFixtures {
+
+    private static final String PARAGRAPH = "<p style=\"font-family:Segoe UI,sans-serif;font-size:14px\">"
+            + "Please find the latest figures for the desk below. Positions were reconciled against "
+            + "the overnight run and the exceptions are listed in the attached table.</p>\n";
+
+    private BenchmarkFixtures() {
+    }
+
+    /** The application's Jackson setup, as used for the raw-data capture. */
+    public static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    public static List<Message> messages(int count, int bodySizeBytes, int recipients) {
+        Random random = new Random(42);
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(message(random, i, bodySizeBytes, recipients));
+        }
+        return messages;
+    }
+
+    private static Message message(Random random, int index, int bodySizeBytes, int recipients) {
+        Message message = new Message();
+        message.id = "AAMkAGI2TG93AAA" + String.format("%08d", index) + Long.toHexString(random.nextLong());
+        message.subject = "RE: Daily P&L reconciliation " + Integer.toHexString(random.nextInt());
+        message.from = recipient("sender" + random.nextInt(200) + "@fabrikam.example");
+        message.toRecipients = new ArrayList<>(recipients);
+        for (int i = 0; i < recipients; i++) {
+            message.toRecipients.add(recipient("recipient" + random.nextInt(5000) + "@contoso.example"));
+        }
+        message.receivedDateTime = OffsetDateTime.of(2024, 1, 1, 8, 0, 0, 0, ZoneOffset.UTC)
+                .plusMinutes(index);
+        message.hasAttachments = random.nextInt(4) == 0;
+        message.isRead = random.nextBoolean();
+        message.importance = Importance.NORMAL;
+        message.bodyPreview = "Please find the latest figures for the desk below. Positions were reconciled";
+        message.body = new ItemBody();
+        message.body.contentType = BodyType.HTML;
+        message.body.content = htmlBody(message.subject, bodySizeBytes);
+        message.categories = List.of("Finance", "Reconciliation");
+        message.conversationId = "AAQkAGI2TG93conv" + Integer.toHexString(index);
+        return message;
+    }
+
+    private static Recipient recipient(String address) {
+        Recipient recipient = new Recipient();
+        recipient.emailAddress = new EmailAddress();
+        recipient.emailAddress.address = address;
+        recipient.emailAddress.name = address.substring(0, address.indexOf('@'));
+        return recipient;
+    }
+
+    private static String htmlBody(String subject, int sizeBytes) {
+        return "<html><head><meta charset=\"utf-8\"></head><body><h3>" + subject + "</h3>\n"
+                + PARAGRAPH.repeat(Math.max(1, sizeBytes / PARAGRAPH.length()))
+                + "</body></html>";
+    }
+
+    /** A delta page as Graph returns it, encoded as UTF-8 JSON. */
+    public static byte[] deltaPage(List<Message> messages) {
+        List<Object> value = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("@odata.etag", "W/\"CQAAABYAAAA\"");
+            json.put("id", message.id);
+            json.put("subject", message.subject);
+            json.put("from", emailAddress(message.from));
+            json.put("toRecipients", message.toRecipients.stream().map(BenchmarkFixtures::emailAddress).toList());
+            json.put("receivedDateTime", message.receivedDateTime.toString());
+            json.put("hasAttachments", message.hasAttachments);
+            json.put("isRead", message.isRead);
+            json.put("importance", "normal");
+            json.put("bodyPreview", message.bodyPreview);
+            json.put("body", Map.of("contentType", "html", "content", message.body.content));
+            json.put("categories", message.categories);
+            json.put("conversationId", message.conversationId);
+            value.add(json);
+        }
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("@odata.context", "https://graph.microsoft.com/v1.0/$metadata#Collection(message)");
+        page.put("value", value);
+        page.put("@odata.nextLink",
+                "https://graph.microsoft.com/v1.0/users/user1@contoso.example/messages/delta?$skiptoken=abc");
+        return write(page);
+    }
+
+    private static Map<String, Object> emailAddress(Recipient recipient) {
+        return Map.of("emailAddress", Map.of(
+                "name", recipient.emailAddress.name,
+                "address", recipient.emailAddress.address));
+    }
+
+    /** A webhook POST body with {@code count} message change notifications. */
+    public static String notificationBatch(int count, String clientState) {
+        List<Object> value = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String resource = "Users/user" + (i % 20) + "@contoso.example/Messages/AAMkAGI2TG93AAA" + i;
+            value.add(Map.of(
+                    "subscriptionId", "7f105c7d-2dc5-4530-97cd-4e7ae6534c0" + (i % 10),
+                    "subscriptionExpirationDateTime", "2024-01-04T11:00:00.0000000Z",
+                    "changeType", i % 3 == 0 ? "updated" : "created",
+                    "resource", resource,
+                    "clientState", clientState,
+                    "tenantId", "84bd8158-6d4d-4958-8b9f-9d6445542f95",
+                    "resourceData", Map.of(
+                            "@odata.type", "#Microsoft.Graph.Message",
+                            "@odata.id", resource,
+                            "@odata.etag", "W/\"CQAAABYAAAA\"",
+                            "id", "AAMkAGI2TG93AAA" + i)));
+        }
+        return new String(write(Map.of("value", value)), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] write(Object value) {
+        try {
+            return objectMapper().writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
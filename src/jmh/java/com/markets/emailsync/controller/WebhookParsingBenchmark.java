@@ -0,0 +1,68 @@
+package com.markets.emailsync.controller;
+
+import com.markets.emailsync.BenchmarkFixtures;
+import com.markets.emailsync.config.MicrosoftGraphProperties;
+import com.markets.emailsync.config.WebhookProperties;
+import com.markets.emailsync.service.WebhookProcessingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request-thread cost of {@code POST /api/webhooks/graph}: payload parsing,
+ * validation and hand-off, with the asynchronous processing stubbed out.
+ * Scores are per notification batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookParsingBenchmark {
+
+    private static final String CLIENT_STATE = "benchmark-client-state";
+
+    // Graph sends up to a few dozen notifications per POST under load
+    @Param({"1", "50"})
+    private int notificationsPerBatch;
+
+    private WebhookController controller;
+    private String payload;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        MicrosoftGraphProperties properties = new MicrosoftGraphProperties();
+        properties.getSubscription().setClientState(CLIENT_STATE);
+
+        WebhookProcessingService processingService = new WebhookProcessingService(
+                null, null, null, null, new WebhookProperties(), new SimpleMeterRegistry()) {
+            @Override
+            public void processNotification(String subscriptionId, String changeType,
+                                            String resource, String clientState, String rawPayload) {
+                blackhole.consume(resource);
+            }
+        };
+
+        controller = new WebhookController(processingService, properties, BenchmarkFixtures.objectMapper());
+        payload = BenchmarkFixtures.notificationBatch(notificationsPerBatch, CLIENT_STATE);
+    }
+
+    @Benchmark
+    public ResponseEntity<Void> receiveNotification() {
+        return controller.receiveNotification(payload);
+    }
+}
@@ -0,0 +1,195 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.BenchmarkFixtures;
+import com.markets.emailsync.config.EmailPersistenceProperties;
+import com.markets.emailsync.config.MicrosoftGraphProperties;
+import com.markets.emailsync.entity.EmailEntity;
+import com.markets.emailsync.entity.MailboxEntity;
+import com.markets.emailsync.repository.EmailBatchWriter;
+import com.markets.emailsync.repository.EmailBulkRepository;
+import com.markets.emailsync.repository.EmailRawDataRepository;
+import com.markets.emailsync.repository.EmailRepository;
+import com.markets.emailsync.repository.MailboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java-side cost of persisting a delta page ({@code processMessages},
+ * {@code updateEmailFromMessage} and raw payload compression), with
+ * repositories backed by a map so the database round trips are left out.
+ * Scores are per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailPersistenceBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    public enum Scenario {
+        // Every message is new (initial sync)
+        CREATE,
+        // Every message exists already (delta sync of changed mail)
+        UPDATE
+    }
+
+    @Param({"CREATE", "UPDATE"})
+    private Scenario scenario;
+
+    @Param({"2048", "32768"})
+    private int bodySizeBytes;
+
+    @Param({"50"})
+    private int recipients;
+
+    private EmailPersistenceService persistenceService;
+    private MailboxEntity mailbox;
+    private List<MessageRecord> page;
+
+    @Setup
+    public void setUp() {
+        MessageRecordMapper mapper = new MessageRecordMapper(BenchmarkFixtures.objectMapper());
+        page = BenchmarkFixtures.messages(PAGE_SIZE, bodySizeBytes, recipients).stream()
+                .map(mapper::fromMessage)
+                .toList();
+        mailbox = MailboxEntity.builder().id(1L).emailAddress("user1@contoso.example").build();
+
+        Map<String, EmailEntity> stored = new HashMap<>();
+        if (scenario == Scenario.UPDATE) {
+            for (MessageRecord message : page) {
+                EmailEntity email = new EmailEntity();
+                email.setId((long) stored.size() + 1);
+                email.setMessageId(message.id());
+                email.setMailbox(mailbox);
+                stored.put(message.id(), email);
+            }
+        }
+
+        MicrosoftGraphProperties properties = new MicrosoftGraphProperties();
+        // Per-message JPA path; the bulk upsert path and body deduplication
+        // need a real database
+        EmailPersistenceProperties persistenceProperties = new EmailPersistenceProperties();
+        persistenceProperties.setBulkUpsert(false);
+        persistenceProperties.getBodyDedup().setEnabled(false);
+        BodyDeduplicationService bodyDeduplication = new BodyDeduplicationService(
+                null, null, persistenceProperties, null, new SimpleMeterRegistry());
+
+        BodyHydrationService hydrationService = new BodyHydrationService(
+                null, null, bodyDeduplication, properties, null, new SimpleMeterRegistry());
+
+        // Raw payloads are still compressed, only the write is skipped
+        EmailRawDataRepository rawDataRepository = new EmailRawDataRepository(null) {
+            @Override
+            public void store(List<RawPayload> payloads) {
+            }
+        };
+        RawPayloadService rawPayloadService = new RawPayloadService(
+                rawDataRepository, persistenceProperties, null, new SimpleMeterRegistry());
+
+        // Every id is looked up, as before the index is loaded
+        persistenceProperties.getMessageIndex().setEnabled(false);
+        MessageIdIndex messageIndex = new MessageIdIndex(
+                null, persistenceProperties, new SimpleMeterRegistry());
+
+        // Inserts are dropped like the other writes
+        EmailBatchWriter batchWriter = new EmailBatchWriter() {
+            @Override
+            public Set<String> insert(List<EmailEntity> emails) {
+                return Set.of();
+            }
+
+            @Override
+            public void flushAndClear() {
+            }
+        };
+
+        // Stored rows have no received time, like rows in the default partition
+        EmailBulkRepository bulkRepository = new EmailBulkRepository(null) {
+            @Override
+            public boolean isSupported() {
+                return false;
+            }
+
+            @Override
+            public Map<String, Instant> findReceivedTimes(Collection<String> messageIds) {
+                Map<String, Instant> received = new HashMap<>();
+                messageIds.stream().filter(stored::containsKey).forEach(id -> received.put(id, null));
+                return received;
+            }
+        };
+
+        persistenceService = new EmailPersistenceService(
+                emailRepository(stored), mailboxRepository(mailbox), null, null, null, hydrationService,
+                bulkRepository, persistenceProperties, rawPayloadService, bodyDeduplication, batchWriter,
+                messageIndex);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public int persistPage() {
+        return persistenceService.persistPage(mailbox, page, scenario == Scenario.CREATE);
+    }
+
+    // Lookups never insert, so every invocation sees the same state
+    private static EmailRepository emailRepository(Map<String, EmailEntity> stored) {
+        return repository(EmailRepository.class, (method, args) -> switch (method) {
+            case "findByMessageId" -> Optional.ofNullable(stored.get((String) args[0]));
+            case "existsByMessageId" -> stored.containsKey((String) args[0]);
+            case "findByMessageIds" -> ((Collection<?>) args[0]).stream()
+                    .map(stored::get)
+                    .filter(Objects::nonNull)
+                    .toList();
+            case "findExistingMessageIds" -> ((Collection<?>) args[0]).stream()
+                    .filter(stored::containsKey)
+                    .toList();
+            case "save" -> args[0];
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    private static MailboxRepository mailboxRepository(MailboxEntity mailbox) {
+        return repository(MailboxRepository.class, (method, args) -> switch (method) {
+            case "getReferenceById", "getById" -> mailbox;
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static <T> T repository(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "toString" -> type.getSimpleName() + " (in memory)";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> handler.invoke(method.getName(), args);
+                }));
+    }
+}
@@ -0,0 +1,83 @@
+package com.markets.emailsync.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.markets.emailsync.BenchmarkFixtures;
+import com.markets.emailsync.config.EmailPersistenceProperties;
+import com.microsoft.graph.models.Message;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning one Graph message into a {@link MessageRecord}: the SDK
+ * mapping with its raw-data capture, the raw-data serialization alone, and
+ * the streaming decoder on the same page. Scores are per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageMappingBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"2048", "32768"})
+    private int bodySizeBytes;
+
+    @Param({"5", "50"})
+    private int recipients;
+
+    private ObjectMapper objectMapper;
+    private MessageRecordMapper mapper;
+    private DeltaPageDecoder decoder;
+    private List<Message> messages;
+    private byte[] deltaPage;
+
+    @Setup
+    public void setUp() {
+        objectMapper = BenchmarkFixtures.objectMapper();
+        mapper = new MessageRecordMapper(objectMapper);
+        decoder = new DeltaPageDecoder(objectMapper, new EmailPersistenceProperties());
+        messages = BenchmarkFixtures.messages(PAGE_SIZE, bodySizeBytes, recipients);
+        deltaPage = BenchmarkFixtures.deltaPage(messages);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public void mapSdkMessage(Blackhole blackhole) {
+        for (Message message : messages) {
+            blackhole.consume(mapper.fromMessage(message));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public void captureRawData(Blackhole blackhole) throws IOException {
+        for (Message message : messages) {
+            blackhole.consume(objectMapper.writeValueAsString(message));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public GraphService.DeltaPage decodeStreamingPage() throws IOException {
+        return decoder.decode(new ByteArrayInputStream(deltaPage));
+    }
+}
@@ -0,0 +1,162 @@
+package com.markets.emailsync.config;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.credential.TokenRequestContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps access tokens in memory and refreshes them in the background before
+ * they expire, so Graph requests never wait for Azure AD. Callers arriving
+ * while a refresh is running share it instead of each starting their own.
+ */
+@Slf4j
+public class CachingTokenCredential implements TokenCredential, AutoCloseable {
+
+    private final TokenCredential delegate;
+    private final Duration refreshAhead;
+    private final Map<String, CachedToken> tokens = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService refresher;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter failureCounter;
+    private final Timer refreshTimer;
+
+    public CachingTokenCredential(TokenCredential delegate,
+                                  MicrosoftGraphProperties.TokenProperties settings,
+                                  MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.refreshAhead = Duration.ofSeconds(settings.getRefreshAheadSeconds());
+
+        this.hitCounter = Counter.builder("graph.token.requests")
+                .tag("result", "hit")
+                .description("Access token requests served from the cache")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("graph.token.requests")
+                .tag("result", "miss")
+                .description("Access token requests that had to wait for Azure AD")
+                .register(meterRegistry);
+        this.failureCounter = Counter.builder("graph.token.refresh.failures")
+                .description("Failed access token refreshes")
+                .register(meterRegistry);
+        this.refreshTimer = Timer.builder("graph.token.refresh")
+                .description("Latency of access token requests to Azure AD")
+                .register(meterRegistry);
+
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshExpiring, settings.getCheckIntervalSeconds(),
+                settings.getCheckIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Mono<AccessToken> getToken(TokenRequestContext request) {
+        CachedToken cached = tokens.computeIfAbsent(keyOf(request), key -> new CachedToken(request));
+        AccessToken token = cached.current;
+
+        if (token != null && isValid(token)) {
+            hitCounter.increment();
+            if (needsRefresh(token)) {
+                cached.refresh();
+            }
+            return Mono.just(token);
+        }
+
+        missCounter.increment();
+        return Mono.fromFuture(cached.refresh());
+    }
+
+    /**
+     * Fetches the token for {@code scopes} ahead of the first request.
+     */
+    public void prefetch(List<String> scopes) {
+        TokenRequestContext request = new TokenRequestContext().setScopes(scopes);
+        tokens.computeIfAbsent(keyOf(request), key -> new CachedToken(request)).refresh();
+    }
+
+    private void refreshExpiring() {
+        tokens.values().forEach(cached -> {
+            AccessToken token = cached.current;
+            if (token == null || needsRefresh(token)) {
+                cached.refresh();
+            }
+        });
+    }
+
+    private boolean isValid(AccessToken token) {
+        return OffsetDateTime.now().isBefore(token.getExpiresAt());
+    }
+
+    private boolean needsRefresh(AccessToken token) {
+        return OffsetDateTime.now().plus(refreshAhead).isAfter(token.getExpiresAt());
+    }
+
+    private static String keyOf(TokenRequestContext request) {
+        return String.join(" ", request.getScopes()) + "|"
+                + (request.getTenantId() != null ? request.getTenantId() : "")
+                + "|" + (request.getClaims() != null ? request.getClaims() : "");
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    private final class CachedToken {
+
+        private final TokenRequestContext request;
+        private volatile AccessToken current;
+        private CompletableFuture<AccessToken> inFlight;
+
+        private CachedToken(TokenRequestContext request) {
+            this.request = request;
+        }
+
+        // Single flight: concurrent callers get the refresh already running
+        private synchronized CompletableFuture<AccessToken> refresh() {
+            if (inFlight != null) {
+                return inFlight;
+            }
+
+            long start = System.nanoTime();
+            CompletableFuture<AccessToken> refresh = new CompletableFuture<>();
+            inFlight = refresh;
+
+            delegate.getToken(request).toFuture().whenComplete((token, error) -> {
+                refreshTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                synchronized (CachedToken.this) {
+                    if (error == null) {
+                        current = token;
+                    }
+                    inFlight = null;
+                }
+                if (error != null) {
+                    failureCounter.increment();
+                    log.warn("Access token refresh failed: {}", error.getMessage());
+                    refresh.completeExceptionally(error);
+                } else {
+                    log.debug("Access token refreshed, expires at {}", token.getExpiresAt());
+                    refresh.complete(token);
+                }
+            });
+            return refresh;
+        }
+    }
+}
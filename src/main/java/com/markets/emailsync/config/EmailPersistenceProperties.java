@@ -0,0 +1,170 @@
+package com.markets.emailsync.config;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@Data
+@Validated
+@ConfigurationProperties(prefix = "email.persistence")
+public class EmailPersistenceProperties {
+
+    // Write pages with one lookup and batched INSERT ... ON CONFLICT
+    // (PostgreSQL only; other databases use per-message JPA writes)
+    private boolean bulkUpsert = true;
+
+    // Load the initial sync of a mailbox without stored rows through COPY
+    // and a staging table (PostgreSQL only)
+    private boolean copyLoad = true;
+
+    // Messages per lookup, insert batch and flush on the JPA write path; the
+    // persistence context is cleared after each chunk
+    @Positive
+    @Max(1000)
+    private int writeChunkSize = 200;
+
+    private RawDataProperties rawData = new RawDataProperties();
+    private BodyDedupProperties bodyDedup = new BodyDedupProperties();
+    private TombstoneProperties tombstones = new TombstoneProperties();
+    private PartitionProperties partitions = new PartitionProperties();
+    private MessageIndexProperties messageIndex = new MessageIndexProperties();
+
+    @Data
+    public static class RawDataProperties {
+        public enum Mode {
+            ALWAYS,
+            // Only messages that mapped with gaps (no sender or received time)
+            ON_ERROR,
+            // A stable sample of messages, see samplePercent
+            SAMPLE,
+            NEVER
+        }
+
+        private Mode mode = Mode.ALWAYS;
+
+        @DecimalMin("0.0")
+        @DecimalMax("100.0")
+        private double samplePercent = 1.0;
+
+        // Payloads older than this are purged (0 = keep forever)
+        @PositiveOrZero
+        private int retentionDays = 30;
+
+        // Rows per purge or legacy-migration transaction
+        @Positive
+        private int batchSize = 500;
+
+        @Positive
+        private long maintenanceIntervalMs = 60000;
+    }
+
+    @Data
+    public static class BodyDedupProperties {
+        // Store bodies once in email_bodies, keyed by SHA-256 (PostgreSQL only)
+        private boolean enabled = true;
+
+        // Shorter bodies stay inline on the emails row
+        @PositiveOrZero
+        private int minLength = 2048;
+
+        // Bodies checked per transaction of the orphan sweep, which runs
+        // after tombstone purges and partition drops (one IN list)
+        @Positive
+        @Max(1000)
+        private int sweepBatchSize = 1000;
+
+        @Positive
+        private int sweepMaxBatchesPerRun = 50;
+    }
+
+    @Data
+    public static class TombstoneProperties {
+        public enum Mode {
+            DELETE,
+            // Copy the row as JSON to emails_archive first (PostgreSQL only)
+            ARCHIVE
+        }
+
+        // Remove soft-deleted rows in the background once they are old enough
+        private boolean purgeEnabled = true;
+
+        private Mode mode = Mode.DELETE;
+
+        @Positive
+        private int retentionDays = 30;
+
+        // Rows per purge transaction, kept small so locks stay short
+        @Positive
+        private int batchSize = 1000;
+
+        @Positive
+        private int maxBatchesPerRun = 50;
+
+        @PositiveOrZero
+        private long pauseBetweenBatchesMs = 100;
+
+        @Positive
+        private long purgeIntervalMs = 600000;
+    }
+
+    @Data
+    public static class PartitionProperties {
+        // Create and drop monthly partitions of emails (PostgreSQL only)
+        private boolean maintenanceEnabled = true;
+
+        // Months created ahead of the current one
+        @Positive
+        private int monthsAhead = 3;
+
+        // Months kept behind the current one, so backfilled history gets its
+        // own partitions instead of the default one
+        @PositiveOrZero
+        private int monthsBehind = 24;
+
+        // Partitions wholly older than this are dropped (0 = keep forever)
+        @PositiveOrZero
+        private int retentionMonths = 0;
+
+        // Give up on a partition DDL instead of queueing behind sync writes
+        @Positive
+        private long lockTimeoutMs = 5000;
+
+        @Positive
+        private long maintenanceIntervalMs = 21600000;
+    }
+
+    @Data
+    public static class MessageIndexProperties {
+        // Answer most "is this message stored?" checks from memory
+        private boolean enabled = true;
+
+        // Bloom filter capacity; it is sized for at least twice the stored rows
+        @Positive
+        private long expectedMessages = 1000000;
+
+        @DecimalMin("0.0001")
+        @DecimalMax("0.5")
+        private double falsePositiveRate = 0.01;
+
+        // Recently written ids, answered as stored without a lookup
+        @Positive
+        private int recentCapacity = 100000;
+
+        // Rows per keyset page while loading and following emails
+        @Positive
+        private int batchSize = 10000;
+
+        // Rows below the keyset cursor read again on every refresh, for ids
+        // that commit after higher ones (concurrent writers, other nodes)
+        @Positive
+        private int overlapRows = 5000;
+
+        @Positive
+        private long refreshIntervalMs = 5000;
+    }
+}
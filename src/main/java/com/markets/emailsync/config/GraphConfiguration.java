@@ -3,12 +3,19 @@ package com.markets.emailsync.config;
 import com.azure.identity.ClientSecretCredential;
 import com.azure.identity.ClientSecretCredentialBuilder;
 import com.microsoft.graph.authentication.TokenCredentialAuthProvider;
+import com.microsoft.graph.httpcore.HttpClients;
 import com.microsoft.graph.requests.GraphServiceClient;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Configuration
@@ -31,19 +38,80 @@ public class GraphConfiguration {
                 .build();
     }
 
-    @Bean
-    public GraphServiceClient<okhttp3.Request> graphServiceClient(
-            ClientSecretCredential credential) {
+    @Bean(destroyMethod = "close")
+    public CachingTokenCredential cachingTokenCredential(
+            ClientSecretCredential credential,
+            MeterRegistry meterRegistry) {
+        CachingTokenCredential cachingCredential =
+                new CachingTokenCredential(credential, properties.getToken(), meterRegistry);
+        // The SDK only attaches tokens for Graph hosts, so a custom service
+        // root (the local simulator) does not need one up front
+        if (properties.getServiceRoot() == null) {
+            cachingCredential.prefetch(properties.getScopes());
+        }
+        return cachingCredential;
+    }
 
-        log.info("Initializing Microsoft Graph Service Client");
+    /**
+     * Shared Graph transport. Also used directly by the streaming delta
+     * decoder, so raw requests go through the same auth, pacing and pool.
+     */
+    @Bean
+    public OkHttpClient graphHttpClient(
+            CachingTokenCredential credential,
+            GraphThrottlingGovernor throttlingGovernor,
+            GraphTransportInterceptor transportInterceptor,
+            GraphTransportMetrics transportMetrics) {
 
         TokenCredentialAuthProvider authProvider = new TokenCredentialAuthProvider(
                 List.of(properties.getScopes().toArray(new String[0])),
                 credential
         );
 
-        return GraphServiceClient.builder()
-                .authenticationProvider(authProvider)
+        MicrosoftGraphProperties.TransportProperties transport = properties.getTransport();
+        ConnectionPool connectionPool = new ConnectionPool(transport.getMaxIdleConnections(),
+                transport.getKeepAliveSeconds(), TimeUnit.SECONDS);
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(transport.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(transport.getMaxRequestsPerHost());
+        transportMetrics.bindPool(connectionPool, dispatcher);
+
+        // Default SDK middleware (auth, retry, redirect) plus the governor,
+        // added last so it paces every attempt the retry handler makes
+        OkHttpClient httpClient = HttpClients.createDefault(authProvider)
+                .newBuilder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .protocols(transport.isHttp2Enabled()
+                        ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : List.of(Protocol.HTTP_1_1))
+                .pingInterval(transport.getPingIntervalSeconds(), TimeUnit.SECONDS)
+                .connectTimeout(transport.getTimeouts().getConnectMs(), TimeUnit.MILLISECONDS)
+                .writeTimeout(transport.getTimeouts().getWriteMs(), TimeUnit.MILLISECONDS)
+                .readTimeout(transport.getTimeouts().getDefaultReadMs(), TimeUnit.MILLISECONDS)
+                .eventListenerFactory(transportMetrics)
+                .addInterceptor(transportInterceptor)
+                .addInterceptor(throttlingGovernor)
+                .build();
+
+        log.info("Graph transport: {} idle connections, {} requests per host, HTTP/2 {}",
+                transport.getMaxIdleConnections(), transport.getMaxRequestsPerHost(),
+                transport.isHttp2Enabled() ? "enabled" : "disabled");
+
+        return httpClient;
+    }
+
+    @Bean
+    public GraphServiceClient<okhttp3.Request> graphServiceClient(OkHttpClient graphHttpClient) {
+        log.info("Initializing Microsoft Graph Service Client");
+
+        GraphServiceClient<okhttp3.Request> client = GraphServiceClient.builder()
+                .httpClient(graphHttpClient)
                 .buildClient();
+        if (properties.getServiceRoot() != null) {
+            log.info("Using Graph service root {}", properties.getServiceRoot());
+            client.setServiceRoot(properties.getServiceRoot());
+        }
+        return client;
     }
 }
@@ -0,0 +1,30 @@
+package com.markets.emailsync.config;
+
+import com.microsoft.graph.http.GraphServiceException;
+
+import java.util.function.Predicate;
+
+/**
+ * Retry predicate for the graphApi Resilience4j instance. Throttling
+ * responses are left out: the SDK retry handler and the
+ * {@link GraphThrottlingGovernor} have already waited for Retry-After, so
+ * retrying them again would only burn attempts. So is 410: an expired delta
+ * link does not come back. The Graph error is looked for along the cause
+ * chain, since sync calls wrap it.
+ */
+public class GraphRetryPredicate implements Predicate<Throwable> {
+
+    @Override
+    public boolean test(Throwable throwable) {
+        for (Throwable current = throwable; current != null; current = current.getCause()) {
+            if (current instanceof GraphServiceException graphException) {
+                int status = graphException.getResponseCode();
+                return status != 429 && status != 503 && status != 410;
+            }
+            if (current.getCause() == current) {
+                break;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,281 @@
+package com.markets.emailsync.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces every request sent by the GraphServiceClient. Keeps one adaptive
+ * token bucket for the tenant and one per mailbox: a 429/503 blocks the
+ * affected bucket for its Retry-After and halves its rate, while successful
+ * responses let the rate climb back towards the configured ceiling.
+ * <p>
+ * Installed as the innermost interceptor, so it also sees the attempts made
+ * by the SDK's own RetryHandler.
+ */
+@Slf4j
+@Component
+public class GraphThrottlingGovernor implements Interceptor {
+
+    private static final String TENANT = "tenant";
+
+    private final MicrosoftGraphProperties.ThrottlingProperties settings;
+    private final TokenBucket tenantBucket;
+    private final Map<String, TokenBucket> mailboxBuckets = new ConcurrentHashMap<>();
+    private final Counter throttledCounter;
+    private final Counter pressureCounter;
+
+    public GraphThrottlingGovernor(MicrosoftGraphProperties properties, MeterRegistry meterRegistry) {
+        this.settings = properties.getThrottling();
+        this.tenantBucket = new TokenBucket(settings.getTenantRequestsPerSecond(), settings);
+        this.throttledCounter = Counter.builder("graph.throttling.throttled")
+                .description("Graph responses with status 429 or 503")
+                .register(meterRegistry);
+        this.pressureCounter = Counter.builder("graph.throttling.pressure")
+                .description("Graph responses reporting the throttle limit is near")
+                .register(meterRegistry);
+        Gauge.builder("graph.throttling.tenant.rate", tenantBucket, TokenBucket::currentRate)
+                .description("Current tenant request rate allowed by the governor")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!settings.isEnabled()) {
+            return chain.proceed(request);
+        }
+
+        String mailbox = mailboxOf(request);
+        TokenBucket mailboxBucket = mailbox != null ? bucketFor(mailbox) : null;
+
+        long waitNanos = tenantBucket.reserve();
+        if (mailboxBucket != null) {
+            waitNanos = Math.max(waitNanos, mailboxBucket.reserve());
+        }
+        pause(waitNanos, mailbox);
+
+        Response response = chain.proceed(request);
+        recordResponse(mailbox, response.code(),
+                response.header("Retry-After"),
+                response.header("x-ms-throttle-limit-percentage"));
+        return response;
+    }
+
+    /**
+     * Feeds the outcome of a Graph call into the buckets. Also used for the
+     * individual steps of a $batch response, which carry their own status.
+     */
+    public void recordResponse(String mailbox, int status, String retryAfter,
+                               String limitPercentage) {
+        TokenBucket mailboxBucket = mailbox != null ? bucketFor(mailbox) : null;
+
+        if (status == 429 || status == 503) {
+            long retryAfterNanos = parseRetryAfter(retryAfter);
+            throttledCounter.increment();
+            log.warn("Graph throttled {} (HTTP {}), backing off for {} ms",
+                    mailbox != null ? mailbox : TENANT, status,
+                    TimeUnit.NANOSECONDS.toMillis(retryAfterNanos));
+
+            if (mailboxBucket != null) {
+                // Mailbox-level throttling must not stall the other mailboxes
+                mailboxBucket.throttle(retryAfterNanos);
+            } else {
+                tenantBucket.throttle(retryAfterNanos);
+            }
+            return;
+        }
+
+        if (limitPercentage != null && isNearLimit(limitPercentage)) {
+            pressureCounter.increment();
+            (mailboxBucket != null ? mailboxBucket : tenantBucket).slowDown();
+            return;
+        }
+
+        if (status < 400) {
+            tenantBucket.recover();
+            if (mailboxBucket != null) {
+                mailboxBucket.recover();
+            }
+        }
+    }
+
+    /**
+     * True if Graph pushed back on the tenant or the given mailbox within the
+     * last {@code max-wait-ms}. Background work yields to live sync then.
+     */
+    public boolean isUnderPressure(String mailbox) {
+        if (!settings.isEnabled()) {
+            return false;
+        }
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(settings.getMaxWaitMs());
+        TokenBucket mailboxBucket = mailbox != null
+                ? mailboxBuckets.get(mailbox.toLowerCase()) : null;
+        return tenantBucket.slowedDownWithin(windowNanos)
+                || (mailboxBucket != null && mailboxBucket.slowedDownWithin(windowNanos));
+    }
+
+    private TokenBucket bucketFor(String mailbox) {
+        return mailboxBuckets.computeIfAbsent(mailbox.toLowerCase(),
+                key -> new TokenBucket(settings.getMailboxRequestsPerSecond(), settings));
+    }
+
+    private void pause(long waitNanos, String mailbox) throws IOException {
+        if (waitNanos <= 0) {
+            return;
+        }
+        if (TimeUnit.NANOSECONDS.toMillis(waitNanos) > settings.getMaxWaitMs()) {
+            throw new IOException(String.format(
+                    "Graph requests for %s are throttled for another %d ms",
+                    mailbox != null ? mailbox : TENANT,
+                    TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Graph rate limit");
+        }
+    }
+
+    private long parseRetryAfter(String retryAfter) {
+        long fallback = TimeUnit.MILLISECONDS.toNanos(settings.getDefaultRetryAfterMs());
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return fallback;
+        }
+        try {
+            return TimeUnit.SECONDS.toNanos(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime until = ZonedDateTime.parse(retryAfter.trim(),
+                        DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(), until).toNanos());
+            } catch (Exception ignored) {
+                return fallback;
+            }
+        }
+    }
+
+    private boolean isNearLimit(String limitPercentage) {
+        try {
+            return Double.parseDouble(limitPercentage.trim()) >= settings.getPressureThreshold();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Extracts the mailbox from paths like {@code /v1.0/users/{id}/messages}.
+     */
+    static String mailboxOf(Request request) {
+        return mailboxOf(request.url());
+    }
+
+    /**
+     * Mailbox a Graph URL addresses, for the steps of a $batch request, whose
+     * responses are booked against it like those of single calls.
+     */
+    public static String mailboxOf(URL url) {
+        HttpUrl httpUrl = url != null ? HttpUrl.get(url) : null;
+        return httpUrl != null ? mailboxOf(httpUrl) : null;
+    }
+
+    private static String mailboxOf(HttpUrl url) {
+        List<String> segments = url.pathSegments();
+        for (int i = 0; i < segments.size() - 1; i++) {
+            if ("users".equalsIgnoreCase(segments.get(i))) {
+                return segments.get(i + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Token bucket whose refill rate adapts: multiplicative decrease on
+     * throttling, additive increase on success.
+     */
+    static final class TokenBucket {
+
+        private final double maxRate;
+        private final MicrosoftGraphProperties.ThrottlingProperties settings;
+        private double rate;
+        private double tokens;
+        private long lastRefillNanos;
+        private long blockedUntilNanos;
+        private long lastSlowDownNanos;
+        private boolean slowedDown;
+
+        TokenBucket(double maxRate, MicrosoftGraphProperties.ThrottlingProperties settings) {
+            this.maxRate = maxRate;
+            this.settings = settings;
+            this.rate = maxRate;
+            this.tokens = maxRate;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        /**
+         * Takes a token and returns how long the caller has to wait for it.
+         */
+        synchronized long reserve() {
+            long now = System.nanoTime();
+            refill(now);
+            tokens -= 1;
+
+            long waitNanos = Math.max(0, blockedUntilNanos - now);
+            if (tokens < 0) {
+                waitNanos = Math.max(waitNanos, (long) (-tokens / rate * 1_000_000_000L));
+            }
+            return waitNanos;
+        }
+
+        synchronized void throttle(long retryAfterNanos) {
+            blockedUntilNanos = Math.max(blockedUntilNanos, System.nanoTime() + retryAfterNanos);
+            slowDown();
+        }
+
+        synchronized void slowDown() {
+            refill(System.nanoTime());
+            lastSlowDownNanos = System.nanoTime();
+            slowedDown = true;
+            rate = Math.max(settings.getMinRequestsPerSecond(), rate * settings.getDecreaseFactor());
+        }
+
+        synchronized void recover() {
+            refill(System.nanoTime());
+            rate = Math.min(maxRate, rate + settings.getRecoveryStep());
+        }
+
+        synchronized double currentRate() {
+            return rate;
+        }
+
+        synchronized boolean slowedDownWithin(long windowNanos) {
+            long now = System.nanoTime();
+            return now < blockedUntilNanos
+                    || (slowedDown && now - lastSlowDownNanos < windowNanos);
+        }
+
+        private void refill(long now) {
+            double elapsedSeconds = (now - lastRefillNanos) / 1_000_000_000d;
+            tokens = Math.min(rate, tokens + elapsedSeconds * rate);
+            lastRefillNanos = now;
+        }
+    }
+}
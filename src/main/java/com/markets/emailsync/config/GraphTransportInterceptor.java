@@ -0,0 +1,70 @@
+package com.markets.emailsync.config;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the per-operation read timeout to each Graph request: delta pages
+ * and $batch calls may legitimately take much longer than a subscription
+ * PATCH. Also turns response compression off when it is disabled.
+ */
+@Component
+public class GraphTransportInterceptor implements Interceptor {
+
+    public enum Operation {
+        DELTA,
+        BATCH,
+        SUBSCRIPTION,
+        DEFAULT
+    }
+
+    private final MicrosoftGraphProperties.TransportProperties settings;
+
+    public GraphTransportInterceptor(MicrosoftGraphProperties properties) {
+        this.settings = properties.getTransport();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!settings.isCompressionEnabled() && request.header("Accept-Encoding") == null) {
+            // An explicit header stops OkHttp from asking for gzip
+            request = request.newBuilder().header("Accept-Encoding", "identity").build();
+        }
+
+        return chain
+                .withReadTimeout((int) readTimeoutMs(operationOf(request)), TimeUnit.MILLISECONDS)
+                .proceed(request);
+    }
+
+    private long readTimeoutMs(Operation operation) {
+        MicrosoftGraphProperties.TimeoutProperties timeouts = settings.getTimeouts();
+        return switch (operation) {
+            case DELTA -> timeouts.getDeltaReadMs();
+            case BATCH -> timeouts.getBatchReadMs();
+            case SUBSCRIPTION -> timeouts.getSubscriptionReadMs();
+            case DEFAULT -> timeouts.getDefaultReadMs();
+        };
+    }
+
+    static Operation operationOf(Request request) {
+        String path = request.url().encodedPath();
+        if (path.endsWith("/$batch")) {
+            return Operation.BATCH;
+        }
+        // The SDK's delta() builders address microsoft.graph.delta
+        if (path.endsWith("/delta") || path.endsWith("/delta()")
+                || path.endsWith("/microsoft.graph.delta") || path.endsWith("/microsoft.graph.delta()")) {
+            return Operation.DELTA;
+        }
+        if (path.contains("/subscriptions")) {
+            return Operation.SUBSCRIPTION;
+        }
+        return Operation.DEFAULT;
+    }
+}
@@ -0,0 +1,125 @@
+package com.markets.emailsync.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Response;
+import org.springframework.stereotype.Component;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer view of the Graph transport: connection reuse, the time a call
+ * waits before it holds a connection (dispatcher queueing plus connect) and
+ * bytes on the wire, tagged by operation type. Pool and dispatcher gauges
+ * are registered once the client is built.
+ */
+@Component
+public class GraphTransportMetrics implements EventListener.Factory {
+
+    private final MeterRegistry meterRegistry;
+    private final Counter reusedConnections;
+    private final Counter newConnections;
+    private final Timer queueTimer;
+
+    public GraphTransportMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.reusedConnections = Counter.builder("graph.http.connections.acquired")
+                .tag("reused", "true")
+                .description("Graph calls served by a pooled connection")
+                .register(meterRegistry);
+        this.newConnections = Counter.builder("graph.http.connections.acquired")
+                .tag("reused", "false")
+                .description("Graph calls that had to open a new connection")
+                .register(meterRegistry);
+        this.queueTimer = Timer.builder("graph.http.queue")
+                .description("Time from call start until a connection is acquired")
+                .register(meterRegistry);
+    }
+
+    public void bindPool(ConnectionPool connectionPool, Dispatcher dispatcher) {
+        Gauge.builder("graph.http.pool.connections", connectionPool, ConnectionPool::connectionCount)
+                .description("Open connections in the Graph connection pool")
+                .register(meterRegistry);
+        Gauge.builder("graph.http.pool.idle", connectionPool, ConnectionPool::idleConnectionCount)
+                .description("Idle connections in the Graph connection pool")
+                .register(meterRegistry);
+        Gauge.builder("graph.http.dispatcher.running", dispatcher, Dispatcher::runningCallsCount)
+                .description("Async Graph calls currently executing")
+                .register(meterRegistry);
+        Gauge.builder("graph.http.dispatcher.queued", dispatcher, Dispatcher::queuedCallsCount)
+                .description("Async Graph calls waiting for a dispatcher slot")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public EventListener create(Call call) {
+        return new CallMetrics(GraphTransportInterceptor.operationOf(call.request()).name());
+    }
+
+    private DistributionSummary bytes(String direction, String operation) {
+        return DistributionSummary.builder("graph.http.bytes")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .tag("operation", operation)
+                .description("Bytes transferred per Graph call body")
+                .register(meterRegistry);
+    }
+
+    private final class CallMetrics extends EventListener {
+
+        private final String operation;
+        private long callStartNanos;
+        private boolean connectStarted;
+
+        private CallMetrics(String operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            callStartNanos = System.nanoTime();
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+            connectStarted = true;
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            (connectStarted ? newConnections : reusedConnections).increment();
+            // Retries and redirects acquire again; only the first wait counts
+            if (callStartNanos != 0) {
+                queueTimer.record(System.nanoTime() - callStartNanos, TimeUnit.NANOSECONDS);
+                callStartNanos = 0;
+            }
+            connectStarted = false;
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            bytes("sent", operation).record(byteCount);
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            bytes("received", operation).record(byteCount);
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            meterRegistry.counter("graph.http.responses",
+                    "protocol", response.protocol().toString()).increment();
+        }
+    }
+}
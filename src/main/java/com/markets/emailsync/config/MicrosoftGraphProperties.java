@@ -1,8 +1,10 @@
 package com.markets.emailsync.config;
 
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
@@ -29,9 +31,19 @@ public class MicrosoftGraphProperties {
     @NotEmpty
     private List<String> mailboxes;
 
+    // Base URL of the Graph API; unset = https://graph.microsoft.com/v1.0.
+    // Point at /simulator/v1.0 to run against the local simulator
+    private String serviceRoot;
+
     private SubscriptionProperties subscription = new SubscriptionProperties();
     private DeltaProperties delta = new DeltaProperties();
     private RetryProperties retry = new RetryProperties();
+    private ThrottlingProperties throttling = new ThrottlingProperties();
+    private InitializationProperties initialization = new InitializationProperties();
+    private BackfillProperties backfill = new BackfillProperties();
+    private HydrationProperties hydration = new HydrationProperties();
+    private TransportProperties transport = new TransportProperties();
+    private TokenProperties token = new TokenProperties();
 
     @Data
     public static class SubscriptionProperties {
@@ -55,6 +67,34 @@ public class MicrosoftGraphProperties {
 
         @Positive
         private int initialSyncDaysBack = 7;
+
+        // Pages requested ahead of the one being persisted (0 = sequential)
+        @PositiveOrZero
+        private int prefetchDepth = 1;
+
+        // Decode pages with Jackson's streaming parser instead of the SDK
+        // models; faster and leaner
+        private boolean streamingDecoder = false;
+
+        private FolderShardingProperties folderSharding = new FolderShardingProperties();
+    }
+
+    @Data
+    public static class FolderShardingProperties {
+        // Keep one delta stream per mail folder instead of one per mailbox
+        private boolean enabled = false;
+
+        // Folder syncs running at the same time across all mailboxes
+        @Positive
+        private int maxParallelFolders = 8;
+
+        // Folders of one mailbox synced at the same time
+        @Positive
+        private int foldersPerMailbox = 4;
+
+        // How often the folder list of a mailbox is re-read during delta syncs
+        @Positive
+        private int folderRefreshMinutes = 60;
     }
 
     @Data
@@ -71,4 +111,166 @@ public class MicrosoftGraphProperties {
         @Positive
         private long maxIntervalMs = 10000;
     }
+
+    @Data
+    public static class ThrottlingProperties {
+        private boolean enabled = true;
+
+        @Positive
+        private double tenantRequestsPerSecond = 100;
+
+        @Positive
+        private double mailboxRequestsPerSecond = 16;
+
+        // Floor the adaptive rate never drops below
+        @Positive
+        private double minRequestsPerSecond = 0.5;
+
+        // Rate multiplier applied on throttling or limit pressure
+        @Positive
+        private double decreaseFactor = 0.5;
+
+        // Requests/second added back after each successful response
+        @Positive
+        private double recoveryStep = 0.2;
+
+        // x-ms-throttle-limit-percentage from which we start slowing down
+        @Positive
+        private double pressureThreshold = 0.8;
+
+        @Positive
+        private long defaultRetryAfterMs = 2000;
+
+        // Longer waits fail the request instead of blocking the caller
+        @Positive
+        private long maxWaitMs = 60000;
+    }
+
+    @Data
+    public static class InitializationProperties {
+        // Mailboxes onboarded at the same time
+        @Positive
+        private int maxConcurrentMailboxes = 4;
+
+        // Sync streams allowed at the same time for one mailbox
+        @Positive
+        private int perMailboxConcurrency = 1;
+
+        @Positive
+        private long mailboxSlotTimeoutMs = 300000;
+    }
+
+    @Data
+    public static class BackfillProperties {
+        // Import history older than delta.initial-sync-days-back in the background
+        private boolean enabled = false;
+
+        // How far back the backfill goes, counted from the end of the delta window
+        @Positive
+        private int historyDays = 365;
+
+        @Positive
+        private int sliceDays = 30;
+
+        // Slices fetched at the same time across all mailboxes
+        @Positive
+        private int maxParallelSlices = 2;
+
+        // Graph request budget reserved for the backfill
+        @Positive
+        private int requestsPerSecond = 2;
+
+        @Positive
+        private int maxAttempts = 5;
+
+        // Renewed with every page; a slice whose node stops renewing it is
+        // picked up by another node
+        @Positive
+        private long leaseMs = 600000;
+
+        @Positive
+        private long pollIntervalMs = 60000;
+    }
+
+    @Data
+    public static class HydrationProperties {
+        // Sync headers only and fetch message bodies in the background
+        private boolean enabled = false;
+
+        // Bodies waiting in memory; the rest stays marked in the database
+        @Positive
+        private int queueCapacity = 5000;
+
+        // Messages per $batch request (Graph allows at most 20)
+        @Positive
+        @Max(20)
+        private int batchSize = 20;
+
+        @Positive
+        private int workers = 2;
+
+        // How often the queue is refilled from unhydrated rows
+        @Positive
+        private long pollIntervalMs = 15000;
+    }
+
+    @Data
+    public static class TransportProperties {
+        @Positive
+        private int maxIdleConnections = 32;
+
+        @Positive
+        private long keepAliveSeconds = 300;
+
+        // Async calls in flight across all hosts / against graph.microsoft.com
+        @Positive
+        private int maxRequests = 128;
+
+        @Positive
+        private int maxRequestsPerHost = 64;
+
+        // Multiplex requests over one connection when the server supports it
+        private boolean http2Enabled = true;
+
+        // HTTP/2 pings keep idle multiplexed connections alive (0 = off)
+        @PositiveOrZero
+        private long pingIntervalSeconds = 30;
+
+        // gzip responses; OkHttp decompresses them transparently
+        private boolean compressionEnabled = true;
+
+        private TimeoutProperties timeouts = new TimeoutProperties();
+    }
+
+    @Data
+    public static class TimeoutProperties {
+        @Positive
+        private long connectMs = 10000;
+
+        @Positive
+        private long writeMs = 30000;
+
+        // Read timeouts by operation type
+        @Positive
+        private long defaultReadMs = 30000;
+
+        @Positive
+        private long deltaReadMs = 120000;
+
+        @Positive
+        private long batchReadMs = 60000;
+
+        @Positive
+        private long subscriptionReadMs = 20000;
+    }
+
+    @Data
+    public static class TokenProperties {
+        // Tokens are renewed in the background this long before they expire
+        @Positive
+        private long refreshAheadSeconds = 300;
+
+        @Positive
+        private long checkIntervalSeconds = 30;
+    }
 }
@@ -0,0 +1,92 @@
+package com.markets.emailsync.config;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.List;
+
+@Data
+@Validated
+@ConfigurationProperties(prefix = "webhook")
+public class WebhookProperties {
+
+    private RetryProperties retry = new RetryProperties();
+    private CleanupProperties cleanup = new CleanupProperties();
+
+    @Data
+    public static class RetryProperties {
+        // How often each node polls the queue for due notifications
+        @Positive
+        private long interval = 15000;
+
+        // Attempts, the first one included, before a notification is dead-lettered
+        @Positive
+        private int maxAttempts = 5;
+
+        // Notifications claimed per batch
+        @Positive
+        private int batchSize = 50;
+
+        @Positive
+        private int maxBatchesPerRun = 10;
+
+        // Longer than a delta sync; an expired lease lets another node retry
+        @Positive
+        private long leaseMs = 600000;
+
+        // Backoff doubles per failed attempt up to the maximum, half of it jittered
+        @Positive
+        private long initialBackoffMs = 30000;
+
+        @Positive
+        private long maxBackoffMs = 3600000;
+    }
+
+    @Data
+    public static class CleanupProperties {
+        // Delete processed notifications once they are old enough
+        private boolean enabled = true;
+
+        // Short runs every 15 minutes outside business hours, instead of one
+        // long run that would hold a scheduler thread
+        @NotBlank
+        private String cron = "0 */15 * * * ?";
+
+        // Age after processing at which a notification is deleted
+        @Positive
+        private int retentionDays = 30;
+
+        // Rows per delete transaction, kept small so locks stay short
+        @Positive
+        private int batchSize = 1000;
+
+        @PositiveOrZero
+        private long pauseBetweenBatchesMs = 200;
+
+        // A run stops after this long; the rest is left to the next run
+        @Positive
+        private long maxRunMs = 120000;
+
+        // No deletes run inside business hours
+        @NotNull
+        private LocalTime businessHoursStart = LocalTime.of(7, 0);
+
+        @NotNull
+        private LocalTime businessHoursEnd = LocalTime.of(20, 0);
+
+        @NotNull
+        private List<DayOfWeek> businessDays = List.of(DayOfWeek.MONDAY, DayOfWeek.TUESDAY,
+                DayOfWeek.WEDNESDAY, DayOfWeek.THURSDAY, DayOfWeek.FRIDAY);
+
+        @NotNull
+        private ZoneId zone = ZoneId.systemDefault();
+    }
+}
@@ -6,9 +6,12 @@ import com.markets.emailsync.repository.MailboxRepository;
 import com.markets.emailsync.repository.WebhookNotificationRepository;
 import com.markets.emailsync.service.EmailSyncService;
 import com.markets.emailsync.service.MailboxInitializationService;
+import com.markets.emailsync.service.ParallelInitialSyncService;
+import com.markets.emailsync.service.RawPayloadService;
 import com.markets.emailsync.service.SubscriptionService;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -28,6 +31,8 @@ public class AdminController {
     private final MailboxInitializationService initializationService;
     private final EmailSyncService emailSyncService;
     private final SubscriptionService subscriptionService;
+    private final ParallelInitialSyncService parallelInitialSyncService;
+    private final RawPayloadService rawPayloadService;
 
     public AdminController(
             MailboxRepository mailboxRepository,
@@ -35,13 +40,17 @@ public class AdminController {
             WebhookNotificationRepository notificationRepository,
             MailboxInitializationService initializationService,
             EmailSyncService emailSyncService,
-            SubscriptionService subscriptionService) {
+            SubscriptionService subscriptionService,
+            ParallelInitialSyncService parallelInitialSyncService,
+            RawPayloadService rawPayloadService) {
         this.mailboxRepository = mailboxRepository;
         this.emailRepository = emailRepository;
         this.notificationRepository = notificationRepository;
         this.initializationService = initializationService;
         this.emailSyncService = emailSyncService;
         this.subscriptionService = subscriptionService;
+        this.parallelInitialSyncService = parallelInitialSyncService;
+        this.rawPayloadService = rawPayloadService;
     }
 
     @GetMapping("/mailboxes")
@@ -65,6 +74,13 @@ public class AdminController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @GetMapping(value = "/emails/{id}/raw", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getRawMessage(@PathVariable Long id) {
+        return rawPayloadService.load(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @PostMapping("/mailboxes/{emailAddress}/initialize")
     public ResponseEntity<Map<String, String>> initializeMailbox(
             @PathVariable String emailAddress) {
@@ -149,6 +165,22 @@ public class AdminController {
         }
     }
 
+    @GetMapping("/initialization")
+    public ResponseEntity<List<ParallelInitialSyncService.MailboxProgress>> getInitializationProgress() {
+        return ResponseEntity.ok(parallelInitialSyncService.getProgress());
+    }
+
+    @PostMapping("/initialization")
+    public ResponseEntity<Map<String, String>> initializeConfiguredMailboxes() {
+        log.info("Admin triggered initialization of all configured mailboxes");
+
+        parallelInitialSyncService.initializeConfiguredMailboxes();
+        return ResponseEntity.accepted().body(Map.of(
+                "status", "accepted",
+                "message", "Mailbox initialization started"
+        ));
+    }
+
     @GetMapping("/stats")
     public ResponseEntity<StatsDto> getStats() {
         long totalMailboxes = mailboxRepository.count();
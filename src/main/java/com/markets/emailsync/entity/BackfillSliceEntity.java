@@ -0,0 +1,84 @@
+package com.markets.emailsync.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+
+/**
+ * One time slice [sliceStart, sliceEnd) of a mailbox's historical backfill.
+ * The next-page link is committed with every page so a slice resumes where
+ * it stopped.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "backfill_slices", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_backfill_slice", columnNames = {"mailbox_id", "slice_start"})
+}, indexes = {
+        @Index(name = "idx_backfill_status", columnList = "status")
+})
+public class BackfillSliceEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "mailbox_id", nullable = false)
+    private Long mailboxId;
+
+    @Column(name = "slice_start", nullable = false)
+    private Instant sliceStart;
+
+    @Column(name = "slice_end", nullable = false)
+    private Instant sliceEnd;
+
+    @Builder.Default
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status = Status.PENDING;
+
+    @Column(name = "next_link", columnDefinition = "TEXT")
+    private String nextLink;
+
+    @Builder.Default
+    @Column(name = "messages_written")
+    private long messagesWritten = 0;
+
+    @Builder.Default
+    @Column(name = "attempts")
+    private int attempts = 0;
+
+    // Lease of the node working the slice, renewed with every page; an
+    // expired lease lets another node resume it
+    @Column(name = "locked_by", length = 100)
+    private String lockedBy;
+
+    @Column(name = "locked_until")
+    private Instant lockedUntil;
+
+    @Column(name = "error_message", length = 1000)
+    private String errorMessage;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    public enum Status {
+        PENDING,
+        IN_PROGRESS,
+        COMPLETED,
+        FAILED
+    }
+}
@@ -6,6 +6,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.Instant;
@@ -15,11 +16,14 @@ import java.time.Instant;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+@DynamicUpdate
 @Table(name = "emails", indexes = {
         @Index(name = "idx_email_message_id", columnList = "message_id"),
         @Index(name = "idx_email_mailbox", columnList = "mailbox_id"),
         @Index(name = "idx_email_received", columnList = "received_date_time"),
-        @Index(name = "idx_email_change_type", columnList = "change_type")
+        @Index(name = "idx_email_change_type", columnList = "change_type"),
+        @Index(name = "idx_email_hydration", columnList = "body_hydrated, received_date_time"),
+        @Index(name = "idx_email_body_hash", columnList = "body_hash")
 })
 public class EmailEntity {
 
@@ -27,7 +31,7 @@ public class EmailEntity {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(name = "message_id", nullable = false, unique = true, length = 500)
+    @Column(name = "message_id", nullable = false, length = 500)
     private String messageId;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -67,12 +71,25 @@ public class EmailEntity {
     @Column(name = "body_content_type", length = 20)
     private String bodyContentType;
 
+    // SHA-256 of a body kept in email_bodies; body_content is empty then
+    @Column(name = "body_hash", length = 64)
+    private String bodyHash;
+
+    // False while the row only holds headers and waits for its body
+    @Builder.Default
+    @Column(name = "body_hydrated", nullable = false)
+    private boolean bodyHydrated = true;
+
     @Column(name = "categories", length = 500)
     private String categories;
 
     @Column(name = "conversation_id", length = 500)
     private String conversationId;
 
+    // Fingerprint of the mapped message fields, to skip unchanged writes
+    @Column(name = "content_fingerprint")
+    private Long contentFingerprint;
+
     @Enumerated(EnumType.STRING)
     @Column(name = "change_type", nullable = false, length = 20)
     private ChangeType changeType;
@@ -80,8 +97,9 @@ public class EmailEntity {
     @Column(name = "is_deleted")
     private boolean isDeleted = false;
 
-    @Column(name = "raw_data", columnDefinition = "TEXT")
-    private String rawData;
+    // When the delta reported the message as removed; drives the purge
+    @Column(name = "deleted_at")
+    private Instant deletedAt;
 
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
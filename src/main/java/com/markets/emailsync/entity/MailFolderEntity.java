@@ -0,0 +1,61 @@
+package com.markets.emailsync.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+
+/**
+ * Delta state of one mail folder when a mailbox is synced in folder-sharded
+ * mode. Each folder has its own delta link and resume checkpoint.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "mail_folders", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_mail_folder", columnNames = {"mailbox_id", "folder_id"})
+}, indexes = {
+        @Index(name = "idx_mail_folder_mailbox", columnList = "mailbox_id")
+})
+public class MailFolderEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "mailbox_id", nullable = false)
+    private Long mailboxId;
+
+    @Column(name = "folder_id", nullable = false, length = 500)
+    private String folderId;
+
+    @Column(name = "display_name", length = 255)
+    private String displayName;
+
+    @Column(name = "delta_link", columnDefinition = "TEXT")
+    private String deltaLink;
+
+    @Column(name = "checkpoint_link", columnDefinition = "TEXT")
+    private String checkpointLink;
+
+    @Column(name = "last_sync_time")
+    private Instant lastSyncTime;
+
+    @Column(name = "error_message", length = 1000)
+    private String errorMessage;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
@@ -0,0 +1,52 @@
+package com.markets.emailsync.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+
+/**
+ * Resume point of an in-flight initial sync. Updated in the same transaction
+ * as each persisted page and removed once the delta link has been obtained.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "sync_checkpoints", indexes = {
+        @Index(name = "idx_checkpoint_mailbox", columnList = "mailbox_id")
+})
+public class SyncCheckpointEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "mailbox_id", nullable = false, unique = true)
+    private Long mailboxId;
+
+    @Column(name = "checkpoint_link", columnDefinition = "TEXT")
+    private String checkpointLink;
+
+    @Builder.Default
+    @Column(name = "pages_committed")
+    private long pagesCommitted = 0;
+
+    @Builder.Default
+    @Column(name = "messages_committed")
+    private long messagesCommitted = 0;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
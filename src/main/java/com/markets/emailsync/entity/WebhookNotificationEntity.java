@@ -55,4 +55,19 @@ public class WebhookNotificationEntity {
 
     @Column(name = "processed_at")
     private Instant processedAt;
+
+    // Earliest time the retry worker picks the notification up again
+    @Column(name = "next_attempt_at")
+    private Instant nextAttemptAt;
+
+    // Lease of the node working the notification; an expired lease frees it
+    @Column(name = "locked_by", length = 100)
+    private String lockedBy;
+
+    @Column(name = "locked_until")
+    private Instant lockedUntil;
+
+    // Set once the notification has run out of attempts
+    @Column(name = "dead_lettered_at")
+    private Instant deadLetteredAt;
 }
\ No newline at end of file
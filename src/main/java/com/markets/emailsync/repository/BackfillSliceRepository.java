@@ -0,0 +1,82 @@
+package com.markets.emailsync.repository;
+
+import com.markets.emailsync.entity.BackfillSliceEntity;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface BackfillSliceRepository extends JpaRepository<BackfillSliceEntity, Long> {
+
+    boolean existsByMailboxId(Long mailboxId);
+
+    // Pending slices, and running ones whose node stopped renewing its
+    // lease; most recent history first
+    @Query("SELECT s FROM BackfillSliceEntity s WHERE s.status = 'PENDING' " +
+            "OR (s.status = 'IN_PROGRESS' AND (s.lockedUntil IS NULL OR s.lockedUntil < :now)) " +
+            "ORDER BY s.sliceEnd DESC")
+    List<BackfillSliceEntity> findClaimable(@Param("now") Instant now, Pageable pageable);
+
+    /**
+     * Leases the slice to {@code owner} and counts the attempt. The
+     * condition is checked again by the update, so of two nodes racing for
+     * a slice only one gets it.
+     *
+     * @return 1 if the slice was claimed, 0 if another node holds it
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE BackfillSliceEntity s SET s.status = 'IN_PROGRESS', s.lockedBy = :owner, " +
+            "s.lockedUntil = :leaseUntil, s.attempts = s.attempts + 1 WHERE s.id = :id " +
+            "AND (s.status = 'PENDING' " +
+            "OR (s.status = 'IN_PROGRESS' AND (s.lockedUntil IS NULL OR s.lockedUntil < :now)))")
+    int claim(@Param("id") Long id,
+              @Param("owner") String owner,
+              @Param("now") Instant now,
+              @Param("leaseUntil") Instant leaseUntil);
+
+    @Modifying
+    @Query("UPDATE BackfillSliceEntity s SET s.nextLink = :nextLink, " +
+            "s.messagesWritten = s.messagesWritten + :written WHERE s.id = :id")
+    void recordProgress(@Param("id") Long id,
+                        @Param("nextLink") String nextLink,
+                        @Param("written") long written);
+
+    // Outcomes only apply while the lease is still this node's
+    @Transactional
+    @Modifying
+    @Query("UPDATE BackfillSliceEntity s SET s.lockedUntil = :leaseUntil " +
+            "WHERE s.id = :id AND s.lockedBy = :owner AND s.status = 'IN_PROGRESS'")
+    int renewLease(@Param("id") Long id,
+                   @Param("owner") String owner,
+                   @Param("leaseUntil") Instant leaseUntil);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE BackfillSliceEntity s SET s.status = 'COMPLETED', s.nextLink = NULL, " +
+            "s.errorMessage = NULL, s.lockedBy = NULL, s.lockedUntil = NULL " +
+            "WHERE s.id = :id AND s.lockedBy = :owner")
+    int complete(@Param("id") Long id, @Param("owner") String owner);
+
+    // Keeps the next link written by the committed pages
+    @Transactional
+    @Modifying
+    @Query("UPDATE BackfillSliceEntity s SET s.status = :status, s.errorMessage = :error, " +
+            "s.lockedBy = NULL, s.lockedUntil = NULL WHERE s.id = :id AND s.lockedBy = :owner")
+    int release(@Param("id") Long id,
+                @Param("owner") String owner,
+                @Param("status") BackfillSliceEntity.Status status,
+                @Param("error") String error);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM BackfillSliceEntity s WHERE s.mailboxId = :mailboxId")
+    void deleteByMailboxId(@Param("mailboxId") Long mailboxId);
+}
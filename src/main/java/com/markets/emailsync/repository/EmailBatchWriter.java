@@ -0,0 +1,99 @@
+package com.markets.emailsync.repository;
+
+import com.markets.emailsync.entity.EmailEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * High-volume JPA writes of {@link EmailEntity} rows, for the sync path that
+ * does not go through {@link EmailBulkRepository}. New rows are inserted
+ * with a {@link StatelessSession} on the transaction's connection, so they
+ * never enter the persistence context and carry no snapshot or version
+ * check. Updated rows stay managed, keeping {@code @DynamicUpdate} and the
+ * optimistic lock against concurrent body hydration; callers flush and
+ * clear after every chunk so dirty checking only ever covers one chunk.
+ */
+@Slf4j
+@Repository
+public class EmailBatchWriter {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Inserts the new rows in the caller's transaction. If one fails, the
+     * inserts are rolled back to a savepoint and retried row by row, each
+     * behind its own savepoint, so a duplicate does not fail the page.
+     *
+     * @return message ids of the rows that could not be written
+     */
+    public Set<String> insert(List<EmailEntity> emails) {
+        if (emails.isEmpty()) {
+            return Set.of();
+        }
+        Session session = entityManager.unwrap(Session.class);
+        Set<String> failed = new HashSet<>();
+        session.doWork(connection -> {
+            try (StatelessSession stateless = session.getSessionFactory()
+                    .withStatelessOptions()
+                    .connection(connection)
+                    .openStatelessSession()) {
+                Instant now = Instant.now();
+                Savepoint batchSavepoint = connection.setSavepoint();
+                try {
+                    for (EmailEntity email : emails) {
+                        // Set here, the generation annotations belong to the managed lifecycle
+                        email.setCreatedAt(now);
+                        email.setUpdatedAt(now);
+                        stateless.insert(email);
+                    }
+                    connection.releaseSavepoint(batchSavepoint);
+                } catch (RuntimeException e) {
+                    connection.rollback(batchSavepoint);
+                    log.warn("Insert of {} emails failed, retrying row by row: {}",
+                            emails.size(), e.getMessage());
+                    insertOneByOne(connection, stateless, emails, failed);
+                }
+            }
+        });
+        return failed;
+    }
+
+    private static void insertOneByOne(Connection connection, StatelessSession stateless,
+                                       List<EmailEntity> emails, Set<String> failed) throws SQLException {
+        for (EmailEntity email : emails) {
+            // Values generated by the rolled back attempt
+            email.setId(null);
+            email.setVersion(null);
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                stateless.insert(email);
+                connection.releaseSavepoint(savepoint);
+            } catch (RuntimeException e) {
+                connection.rollback(savepoint);
+                failed.add(email.getMessageId());
+                log.warn("Failed to insert message {}: {}", email.getMessageId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes pending changes of managed rows and detaches them all.
+     */
+    public void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
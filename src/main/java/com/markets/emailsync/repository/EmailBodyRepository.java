@@ -0,0 +1,101 @@
+package com.markets.emailsync.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Content-addressed message bodies in {@code email_bodies}: each distinct
+ * body is stored once under its SHA-256 hash and referenced from
+ * {@code emails.body_hash}. Rows are immutable, and deleted by the orphan
+ * sweep once no email references them. PostgreSQL only, like
+ * {@link EmailBulkRepository}.
+ */
+@Repository
+public class EmailBodyRepository {
+
+    // Archived rows carry their body inline, so only emails count
+    private static final String UNREFERENCED =
+            "AND NOT EXISTS (SELECT 1 FROM emails e WHERE e.body_hash = b.content_hash)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public EmailBodyRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Hashes already stored. The rows found stay locked until the caller's
+     * transaction ends, so the orphan sweep cannot delete a body that
+     * transaction is about to reference.
+     */
+    public Set<String> findExistingHashes(Collection<String> hashes) {
+        Set<String> existing = new HashSet<>();
+        InLists.forEachChunk(hashes, chunk -> existing.addAll(jdbcTemplate.queryForList(
+                "SELECT content_hash FROM email_bodies WHERE content_hash IN ("
+                        + InLists.placeholders(chunk.size()) + ") FOR KEY SHARE",
+                String.class, chunk.toArray())));
+        return existing;
+    }
+
+    /**
+     * Inserts the bodies in one batch. A hash written concurrently by another
+     * transaction is skipped, its content is identical.
+     */
+    public void insert(Map<String, String> bodiesByHash) {
+        if (bodiesByHash.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, String>> bodies = new ArrayList<>(bodiesByHash.entrySet());
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO email_bodies (content_hash, content, content_length, created_at)
+                VALUES (?, ?, ?, now())
+                ON CONFLICT (content_hash) DO NOTHING
+                """, bodies, bodies.size(), (statement, body) -> {
+            statement.setString(1, body.getKey());
+            statement.setString(2, body.getValue());
+            statement.setInt(3, body.getValue().length());
+        });
+    }
+
+    /**
+     * One page of the orphan sweep: hashes after {@code after}, in key order.
+     */
+    public List<String> findHashesAfter(String after, int limit) {
+        return jdbcTemplate.queryForList(
+                "SELECT content_hash FROM email_bodies WHERE content_hash > ? ORDER BY content_hash LIMIT ?",
+                String.class, after, limit);
+    }
+
+    /**
+     * Deletes those of the hashes that no email references; at most one
+     * chunk of them, in the caller's transaction. Unreferenced bodies are
+     * locked first, skipping those a page transaction holds, and the delete
+     * checks the references again with a fresh snapshot, so one committed
+     * in between keeps its body.
+     *
+     * @return number of bodies deleted
+     */
+    public int deleteUnreferenced(List<String> hashes) {
+        if (hashes.isEmpty()) {
+            return 0;
+        }
+        List<String> unreferenced = jdbcTemplate.queryForList(
+                "SELECT content_hash FROM email_bodies b WHERE content_hash IN ("
+                        + InLists.placeholders(hashes.size()) + ") " + UNREFERENCED + " FOR UPDATE SKIP LOCKED",
+                String.class, hashes.toArray());
+        if (unreferenced.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(
+                "DELETE FROM email_bodies b WHERE content_hash IN ("
+                        + InLists.placeholders(unreferenced.size()) + ") " + UNREFERENCED,
+                unreferenced.toArray());
+    }
+}
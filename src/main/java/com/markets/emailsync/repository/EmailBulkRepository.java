@@ -0,0 +1,451 @@
+package com.markets.emailsync.repository;
+
+import com.markets.emailsync.entity.EmailEntity;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Set-based writes to the {@code emails} table with plain JDBC, for pages
+ * where per-entity JPA round trips dominate: a batched upsert, a
+ * {@code COPY} load for mailboxes synced for the first time, and the
+ * tombstone purge. Runs inside the caller's transaction. Everything but
+ * the plain purge needs PostgreSQL; see {@link #isSupported()}.
+ */
+@Slf4j
+@Repository
+public class EmailBulkRepository {
+
+    // Fields missing from a change keep their stored value, like the JPA
+    // update path; the body is only replaced when the page carried one.
+    // emails is partitioned by received_date_time, so a known message is
+    // written with the received time on its key (the array tells a stored
+    // NULL from a missing key) and keeps the partition it was first put in
+    private static final String UPSERT_SQL = """
+            INSERT INTO emails (message_id, mailbox_id, subject, sender_email, sender_name,
+                recipient_emails, received_date_time, has_attachments, is_read, importance,
+                body_preview, body_content, body_content_type, body_hash, body_hydrated, categories,
+                conversation_id, content_fingerprint, change_type, is_deleted, created_at,
+                updated_at, version)
+            VALUES (?, ?, ?, ?, ?, ?,
+                COALESCE((SELECT ARRAY[k.received_date_time] FROM email_message_keys k
+                    WHERE k.message_id = ?), ARRAY[?::timestamp])[1],
+                ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 'CREATED', false, now(), now(), 0)
+            ON CONFLICT (message_id, received_date_time) DO UPDATE SET
+                subject = EXCLUDED.subject,
+                sender_email = COALESCE(EXCLUDED.sender_email, emails.sender_email),
+                sender_name = CASE WHEN EXCLUDED.sender_email IS NOT NULL
+                    THEN EXCLUDED.sender_name ELSE emails.sender_name END,
+                recipient_emails = COALESCE(EXCLUDED.recipient_emails, emails.recipient_emails),
+                has_attachments = EXCLUDED.has_attachments,
+                is_read = EXCLUDED.is_read,
+                importance = EXCLUDED.importance,
+                body_preview = EXCLUDED.body_preview,
+                body_content = CASE WHEN ? AND EXCLUDED.body_content IS DISTINCT FROM emails.body_content
+                    THEN EXCLUDED.body_content ELSE emails.body_content END,
+                body_content_type = CASE WHEN ? THEN EXCLUDED.body_content_type
+                    ELSE emails.body_content_type END,
+                body_hash = CASE WHEN ? THEN EXCLUDED.body_hash ELSE emails.body_hash END,
+                body_hydrated = CASE WHEN ? THEN true ELSE emails.body_hydrated END,
+                categories = COALESCE(EXCLUDED.categories, emails.categories),
+                conversation_id = EXCLUDED.conversation_id,
+                content_fingerprint = EXCLUDED.content_fingerprint,
+                change_type = 'UPDATED',
+                is_deleted = false,
+                deleted_at = NULL,
+                updated_at = now(),
+                version = COALESCE(emails.version, 0) + 1
+            WHERE emails.content_fingerprint IS DISTINCT FROM EXCLUDED.content_fingerprint
+            """;
+
+    // Lives for the pooled connection; rows are dropped at every commit
+    private static final String STAGING_DDL = """
+            CREATE TEMPORARY TABLE IF NOT EXISTS emails_staging (
+                row_no INT, message_id VARCHAR(500), mailbox_id BIGINT, subject VARCHAR(1000),
+                sender_email VARCHAR(255), sender_name VARCHAR(255), recipient_emails VARCHAR(2000),
+                received_date_time TIMESTAMP, has_attachments BOOLEAN, is_read BOOLEAN,
+                importance VARCHAR(20), body_preview VARCHAR(500), body_content TEXT,
+                body_content_type VARCHAR(20), body_hash VARCHAR(64), body_hydrated BOOLEAN,
+                categories VARCHAR(500), conversation_id VARCHAR(500), content_fingerprint BIGINT
+            ) ON COMMIT DELETE ROWS
+            """;
+
+    private static final String COPY_SQL = """
+            COPY emails_staging (row_no, message_id, mailbox_id, subject, sender_email, sender_name,
+                recipient_emails, received_date_time, has_attachments, is_read, importance,
+                body_preview, body_content, body_content_type, body_hash, body_hydrated, categories,
+                conversation_id, content_fingerprint) FROM STDIN WITH (FORMAT csv)
+            """;
+
+    // The mailbox had no rows when the load started, so conflicts only come
+    // from a message repeated later in the same sync: the last copy wins and
+    // a copy without a body keeps the stored one. Known messages keep their
+    // received time, as in UPSERT_SQL
+    private static final String MERGE_SQL = """
+            INSERT INTO emails (message_id, mailbox_id, subject, sender_email, sender_name,
+                recipient_emails, received_date_time, has_attachments, is_read, importance,
+                body_preview, body_content, body_content_type, body_hash, body_hydrated, categories,
+                conversation_id, content_fingerprint, change_type, is_deleted, created_at,
+                updated_at, version)
+            SELECT DISTINCT ON (s.message_id) s.message_id, s.mailbox_id, s.subject, s.sender_email,
+                s.sender_name, s.recipient_emails,
+                CASE WHEN k.message_id IS NULL THEN s.received_date_time ELSE k.received_date_time END,
+                s.has_attachments, s.is_read, s.importance, s.body_preview, s.body_content,
+                s.body_content_type, s.body_hash, s.body_hydrated, s.categories, s.conversation_id,
+                s.content_fingerprint, 'CREATED', false, now(), now(), 0
+            FROM emails_staging s
+            LEFT JOIN email_message_keys k ON k.message_id = s.message_id
+            ORDER BY s.message_id, s.row_no DESC
+            ON CONFLICT (message_id, received_date_time) DO UPDATE SET
+                subject = EXCLUDED.subject,
+                sender_email = COALESCE(EXCLUDED.sender_email, emails.sender_email),
+                sender_name = CASE WHEN EXCLUDED.sender_email IS NOT NULL
+                    THEN EXCLUDED.sender_name ELSE emails.sender_name END,
+                recipient_emails = COALESCE(EXCLUDED.recipient_emails, emails.recipient_emails),
+                has_attachments = EXCLUDED.has_attachments,
+                is_read = EXCLUDED.is_read,
+                importance = EXCLUDED.importance,
+                body_preview = EXCLUDED.body_preview,
+                body_content = CASE WHEN EXCLUDED.body_content IS NULL AND EXCLUDED.body_hash IS NULL
+                    THEN emails.body_content ELSE EXCLUDED.body_content END,
+                body_hash = CASE WHEN EXCLUDED.body_content IS NULL AND EXCLUDED.body_hash IS NULL
+                    THEN emails.body_hash ELSE EXCLUDED.body_hash END,
+                body_content_type = COALESCE(EXCLUDED.body_content_type, emails.body_content_type),
+                body_hydrated = EXCLUDED.body_hydrated OR emails.body_hydrated,
+                categories = COALESCE(EXCLUDED.categories, emails.categories),
+                conversation_id = EXCLUDED.conversation_id,
+                content_fingerprint = EXCLUDED.content_fingerprint,
+                change_type = 'UPDATED',
+                is_deleted = false,
+                deleted_at = NULL,
+                updated_at = now(),
+                version = COALESCE(emails.version, 0) + 1
+            WHERE emails.content_fingerprint IS DISTINCT FROM EXCLUDED.content_fingerprint
+            """;
+
+    // Oldest tombstones first; rows locked by another node are left to it.
+    // Raw payloads go with the row: a partitioned emails cannot be the
+    // target of the cascading foreign key
+    private static final String PURGE_SQL = """
+            WITH doomed AS (
+                SELECT id FROM emails WHERE is_deleted = true AND deleted_at < ?
+                ORDER BY deleted_at LIMIT ? FOR UPDATE SKIP LOCKED
+            ), raw AS (
+                DELETE FROM email_raw_data r USING doomed d WHERE r.email_id = d.id
+            )
+            DELETE FROM emails e USING doomed d WHERE e.id = d.id
+            """;
+
+    private static final String PURGE_PORTABLE_SQL = """
+            DELETE FROM emails WHERE id IN (
+                SELECT id FROM emails WHERE is_deleted = true AND deleted_at < ?
+                ORDER BY deleted_at LIMIT ?)
+            """;
+
+    // The whole row goes to the archive as JSON, so the archive does not
+    // have to follow schema changes of emails. A deduplicated body is
+    // copied in, since email_bodies drops it once no email references it
+    private static final String ARCHIVE_SQL = """
+            WITH doomed AS (
+                SELECT id FROM emails WHERE is_deleted = true AND deleted_at < ?
+                ORDER BY deleted_at LIMIT ? FOR UPDATE SKIP LOCKED
+            ), raw AS (
+                DELETE FROM email_raw_data r USING doomed d WHERE r.email_id = d.id
+            ), moved AS (
+                DELETE FROM emails e USING doomed d WHERE e.id = d.id RETURNING e.*
+            )
+            INSERT INTO emails_archive (email_id, message_id, mailbox_id, deleted_at, row_data, archived_at)
+            SELECT m.id, m.message_id, m.mailbox_id, m.deleted_at,
+                CASE WHEN b.content IS NULL THEN to_json(m)
+                    ELSE (to_jsonb(m) || jsonb_build_object('body_content', b.content))::json END,
+                now()
+            FROM moved m LEFT JOIN email_bodies b ON b.content_hash = m.body_hash
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Boolean supported;
+
+    public EmailBulkRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Whether the database understands {@code INSERT ... ON CONFLICT}.
+     */
+    public boolean isSupported() {
+        if (supported == null) {
+            supported = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName()));
+        }
+        return supported;
+    }
+
+    /**
+     * Message ids already stored, read from {@code email_message_keys}: one
+     * index instead of one probe per partition of {@code emails}.
+     */
+    public Set<String> findExistingMessageIds(List<String> messageIds) {
+        Set<String> existing = new HashSet<>();
+        InLists.forEachChunk(messageIds, chunk -> existing.addAll(jdbcTemplate.queryForList(
+                "SELECT message_id FROM email_message_keys WHERE message_id IN ("
+                        + InLists.placeholders(chunk.size()) + ")",
+                String.class, chunk.toArray())));
+        return existing;
+    }
+
+    /**
+     * Received time of each stored message, null for rows without one. On
+     * PostgreSQL it comes from {@code email_message_keys}, so callers can
+     * address the partition of a row instead of probing all of them.
+     */
+    public Map<String, Instant> findReceivedTimes(Collection<String> messageIds) {
+        String table = isSupported() ? "email_message_keys" : "emails";
+        Map<String, Instant> received = new HashMap<>();
+        InLists.forEachChunk(messageIds, chunk -> jdbcTemplate.query(
+                "SELECT message_id, received_date_time FROM " + table
+                        + " WHERE message_id IN (" + InLists.placeholders(chunk.size()) + ")",
+                rs -> {
+                    Timestamp time = rs.getTimestamp("received_date_time");
+                    received.put(rs.getString("message_id"), time != null ? time.toInstant() : null);
+                }, chunk.toArray()));
+        return received;
+    }
+
+    /**
+     * Hard-deletes, or with {@code archive} moves to {@code emails_archive},
+     * at most {@code limit} soft-deleted rows that were removed before the
+     * cutoff. Each call is one short statement; archiving needs PostgreSQL.
+     *
+     * @return number of rows removed from {@code emails}
+     */
+    public int purgeTombstones(Instant cutoff, int limit, boolean archive) {
+        if (archive && !isSupported()) {
+            throw new UnsupportedOperationException("Archiving tombstones needs PostgreSQL");
+        }
+        String sql = archive ? ARCHIVE_SQL : isSupported() ? PURGE_SQL : PURGE_PORTABLE_SQL;
+        return jdbcTemplate.update(sql, Timestamp.from(cutoff), limit);
+    }
+
+    /**
+     * Inserts or updates the rows in one JDBC batch. If the batch fails, it
+     * is rolled back to a savepoint and retried row by row, each row behind
+     * its own savepoint, so one bad message does not fail the page. A row
+     * whose fingerprint is unchanged counts as neither written nor failed.
+     */
+    public UpsertResult upsert(List<UpsertRow> rows) {
+        if (rows.isEmpty()) {
+            return new UpsertResult(Set.of(), Set.of());
+        }
+        return jdbcTemplate.execute((ConnectionCallback<UpsertResult>) connection -> {
+            Savepoint batchSavepoint = connection.setSavepoint();
+            try (PreparedStatement statement = connection.prepareStatement(UPSERT_SQL)) {
+                for (UpsertRow row : rows) {
+                    bind(statement, row);
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                connection.releaseSavepoint(batchSavepoint);
+                Set<String> written = new HashSet<>();
+                for (int i = 0; i < counts.length; i++) {
+                    // 0 is a conflict the fingerprint check skipped; a driver
+                    // that reports no counts gets every row treated as written
+                    if (counts[i] != 0) {
+                        written.add(rows.get(i).email().getMessageId());
+                    }
+                }
+                return new UpsertResult(written, Set.of());
+            } catch (SQLException e) {
+                connection.rollback(batchSavepoint);
+                log.warn("Bulk upsert of {} emails failed, retrying row by row: {}",
+                        rows.size(), e.getMessage());
+                return upsertOneByOne(connection, rows);
+            }
+        });
+    }
+
+    private UpsertResult upsertOneByOne(Connection connection, List<UpsertRow> rows) throws SQLException {
+        Set<String> written = new HashSet<>();
+        Set<String> failed = new HashSet<>();
+        try (PreparedStatement statement = connection.prepareStatement(UPSERT_SQL)) {
+            for (UpsertRow row : rows) {
+                Savepoint savepoint = connection.setSavepoint();
+                try {
+                    bind(statement, row);
+                    if (statement.executeUpdate() > 0) {
+                        written.add(row.email().getMessageId());
+                    }
+                    connection.releaseSavepoint(savepoint);
+                } catch (SQLException e) {
+                    connection.rollback(savepoint);
+                    failed.add(row.email().getMessageId());
+                    log.error("Failed to upsert message {}: {}",
+                            row.email().getMessageId(), e.getMessage());
+                }
+            }
+        }
+        return new UpsertResult(written, failed);
+    }
+
+    /**
+     * Loads the rows with {@code COPY} into a session-local staging table
+     * and merges them into {@code emails} with one statement. Meant for
+     * pages of a mailbox that had no rows yet, where every write is an
+     * insert. On failure the transaction is rolled back to where it was
+     * and the exception is rethrown, so the caller can fall back to
+     * {@link #upsert}.
+     */
+    public void copyLoad(List<UpsertRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute(STAGING_DDL);
+                }
+                copyToStaging(connection, rows);
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate(MERGE_SQL);
+                    // ON COMMIT DELETE ROWS only fires at the end of the transaction
+                    statement.execute("TRUNCATE emails_staging");
+                }
+                connection.releaseSavepoint(savepoint);
+                return null;
+            } catch (SQLException e) {
+                connection.rollback(savepoint);
+                throw e;
+            }
+        });
+    }
+
+    private static void copyToStaging(Connection connection, List<UpsertRow> rows) throws SQLException {
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+        try {
+            StringBuilder line = new StringBuilder(1024);
+            int rowNo = 0;
+            for (UpsertRow row : rows) {
+                line.setLength(0);
+                appendCsvLine(line, rowNo++, row.email());
+                byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                copyIn.writeToCopy(bytes, 0, bytes.length);
+            }
+            copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    static void appendCsvLine(StringBuilder line, int rowNo, EmailEntity email) {
+        line.append(rowNo).append(',');
+        appendCsv(line, email.getMessageId()).append(',');
+        line.append(email.getMailbox().getId()).append(',');
+        appendCsv(line, email.getSubject()).append(',');
+        appendCsv(line, email.getSenderEmail()).append(',');
+        appendCsv(line, email.getSenderName()).append(',');
+        appendCsv(line, email.getRecipientEmails()).append(',');
+        // Same local-time rendering the driver uses for setTimestamp
+        appendCsv(line, email.getReceivedDateTime() != null
+                ? Timestamp.from(email.getReceivedDateTime()).toString() : null).append(',');
+        line.append(email.isHasAttachments()).append(',');
+        line.append(email.isRead()).append(',');
+        appendCsv(line, email.getImportance()).append(',');
+        appendCsv(line, email.getBodyPreview()).append(',');
+        appendCsv(line, email.getBodyContent()).append(',');
+        appendCsv(line, email.getBodyContentType()).append(',');
+        appendCsv(line, email.getBodyHash()).append(',');
+        line.append(email.isBodyHydrated()).append(',');
+        appendCsv(line, email.getCategories()).append(',');
+        appendCsv(line, email.getConversationId()).append(',');
+        if (email.getContentFingerprint() != null) {
+            line.append(email.getContentFingerprint());
+        }
+        line.append('\n');
+    }
+
+    // In CSV format an unquoted empty field is NULL and a quoted one is ''
+    static StringBuilder appendCsv(StringBuilder line, String value) {
+        if (value == null) {
+            return line;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    private static void bind(PreparedStatement statement, UpsertRow row) throws SQLException {
+        EmailEntity email = row.email();
+        int i = 1;
+        statement.setString(i++, email.getMessageId());
+        statement.setLong(i++, email.getMailbox().getId());
+        statement.setString(i++, email.getSubject());
+        statement.setString(i++, email.getSenderEmail());
+        statement.setString(i++, email.getSenderName());
+        statement.setString(i++, email.getRecipientEmails());
+        statement.setString(i++, email.getMessageId());
+        if (email.getReceivedDateTime() != null) {
+            statement.setTimestamp(i++, Timestamp.from(email.getReceivedDateTime()));
+        } else {
+            statement.setNull(i++, Types.TIMESTAMP);
+        }
+        statement.setBoolean(i++, email.isHasAttachments());
+        statement.setBoolean(i++, email.isRead());
+        statement.setString(i++, email.getImportance());
+        statement.setString(i++, email.getBodyPreview());
+        statement.setString(i++, email.getBodyContent());
+        statement.setString(i++, email.getBodyContentType());
+        statement.setString(i++, email.getBodyHash());
+        statement.setBoolean(i++, email.isBodyHydrated());
+        statement.setString(i++, email.getCategories());
+        statement.setString(i++, email.getConversationId());
+        if (email.getContentFingerprint() != null) {
+            statement.setLong(i++, email.getContentFingerprint());
+        } else {
+            statement.setNull(i++, Types.BIGINT);
+        }
+        statement.setBoolean(i++, row.replaceBody());
+        statement.setBoolean(i++, row.replaceBody());
+        statement.setBoolean(i++, row.replaceBody());
+        statement.setBoolean(i, row.replaceBody());
+    }
+
+    /**
+     * A mapped message and whether its page carried the body.
+     */
+    public record UpsertRow(EmailEntity email, boolean replaceBody) {
+    }
+
+    /**
+     * Message ids of the rows inserted or changed, and of the rows that
+     * could not be written.
+     */
+    public record UpsertResult(Set<String> written, Set<String> failed) {
+    }
+}
@@ -0,0 +1,113 @@
+package com.markets.emailsync.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DDL for the monthly range partitions of {@code emails}, named
+ * {@code emails_pYYYYMM}. Rows outside every partition, and rows without a
+ * received time, land in {@code emails_pdefault}. PostgreSQL only; every
+ * method must run inside a transaction.
+ */
+@Repository
+public class EmailPartitionRepository {
+
+    private static final String DEFAULT_PARTITION = "emails_pdefault";
+    private static final Pattern PARTITION_NAME = Pattern.compile("emails_p(\\d{6})");
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public EmailPartitionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public boolean isPartitioned() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('emails'))",
+                Boolean.class));
+    }
+
+    public List<YearMonth> findMonthlyPartitions() {
+        List<String> names = jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = 'emails'::regclass
+                """, String.class);
+        List<YearMonth> months = new ArrayList<>(names.size());
+        for (String name : names) {
+            Matcher matcher = PARTITION_NAME.matcher(name);
+            if (matcher.matches()) {
+                months.add(YearMonth.parse(matcher.group(1), SUFFIX));
+            }
+        }
+        return months;
+    }
+
+    /**
+     * Creates the partition for the month. Rows of that month already in the
+     * default partition are moved into it first, since the default partition
+     * may not overlap the new range.
+     *
+     * @return number of rows moved out of the default partition
+     */
+    public int createPartition(YearMonth month, long lockTimeoutMs) {
+        String name = partitionName(month);
+        Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+        String bounds = String.format("FOR VALUES FROM ('%s') TO ('%s')", from, to);
+        setLockTimeout(lockTimeoutMs);
+
+        Integer stray = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM " + DEFAULT_PARTITION
+                        + " WHERE received_date_time >= ? AND received_date_time < ?",
+                Integer.class, from, to);
+        if (stray == null || stray == 0) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF emails " + bounds);
+            return 0;
+        }
+
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE emails INCLUDING DEFAULTS)");
+        int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION
+                + " WHERE received_date_time >= ? AND received_date_time < ? RETURNING *)"
+                + " INSERT INTO " + name + " SELECT * FROM moved", from, to);
+        jdbcTemplate.execute("ALTER TABLE emails ATTACH PARTITION " + name + " " + bounds);
+        // The delete from the default partition fired the key trigger
+        jdbcTemplate.update("INSERT INTO email_message_keys (message_id, email_id, received_date_time)"
+                + " SELECT message_id, id, received_date_time FROM " + name);
+        return moved;
+    }
+
+    /**
+     * Detaches and drops the partition for the month, with the message keys
+     * and raw payloads of its rows.
+     *
+     * @return number of message keys removed, one per dropped email
+     */
+    public int dropPartition(YearMonth month, long lockTimeoutMs) {
+        String name = partitionName(month);
+        setLockTimeout(lockTimeoutMs);
+        jdbcTemplate.execute("ALTER TABLE emails DETACH PARTITION " + name);
+        // Rows of a detached table no longer fire the key trigger
+        int dropped = jdbcTemplate.update("DELETE FROM email_message_keys k USING " + name
+                + " e WHERE k.message_id = e.message_id AND k.email_id = e.id");
+        jdbcTemplate.update("DELETE FROM email_raw_data r USING " + name + " e WHERE r.email_id = e.id");
+        jdbcTemplate.execute("DROP TABLE " + name);
+        return dropped;
+    }
+
+    private void setLockTimeout(long lockTimeoutMs) {
+        jdbcTemplate.execute("SET LOCAL lock_timeout = " + lockTimeoutMs);
+    }
+
+    private static String partitionName(YearMonth month) {
+        return "emails_p" + month.format(SUFFIX);
+    }
+}
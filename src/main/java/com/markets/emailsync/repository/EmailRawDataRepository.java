@@ -0,0 +1,163 @@
+package com.markets.emailsync.repository;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Raw Graph payloads, kept out of the {@code emails} row in
+ * {@code email_raw_data} and only read on demand. Writes address the email
+ * by message id, so they work after both the JPA and the bulk write paths.
+ * On PostgreSQL the id is resolved through {@code email_message_keys}
+ * rather than the partitions of {@code emails}.
+ */
+@Repository
+public class EmailRawDataRepository {
+
+    private static final String DELETE_SQL = """
+            DELETE FROM email_raw_data
+            WHERE email_id = (SELECT email_id FROM email_message_keys WHERE message_id = ?)
+            """;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO email_raw_data (email_id, codec, raw_size, payload, created_at)
+            SELECT email_id, ?, ?, ?, ? FROM email_message_keys WHERE message_id = ?
+            """;
+
+    private static final String DELETE_PORTABLE_SQL = """
+            DELETE FROM email_raw_data
+            WHERE email_id = (SELECT id FROM emails WHERE message_id = ?)
+            """;
+
+    private static final String INSERT_PORTABLE_SQL = """
+            INSERT INTO email_raw_data (email_id, codec, raw_size, payload, created_at)
+            SELECT id, ?, ?, ?, ? FROM emails WHERE message_id = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Boolean postgres;
+
+    public EmailRawDataRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Replaces the stored payloads of the given messages inside the caller's
+     * transaction. On failure the transaction is rolled back to where it was
+     * and the exception is rethrown, so the caller's own writes survive.
+     */
+    public void store(List<RawPayload> payloads) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        boolean keyTable = isPostgres();
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                jdbcTemplate.batchUpdate(keyTable ? DELETE_SQL : DELETE_PORTABLE_SQL, payloads,
+                        payloads.size(), (statement, payload) -> statement.setString(1, payload.messageId()));
+                jdbcTemplate.batchUpdate(keyTable ? INSERT_SQL : INSERT_PORTABLE_SQL, payloads,
+                        payloads.size(), (statement, payload) -> {
+                    statement.setString(1, payload.encoded().codec());
+                    statement.setInt(2, payload.encoded().rawSize());
+                    statement.setBytes(3, payload.encoded().bytes());
+                    statement.setTimestamp(4, now);
+                    statement.setString(5, payload.messageId());
+                });
+                connection.releaseSavepoint(savepoint);
+                return null;
+            } catch (DataAccessException e) {
+                connection.rollback(savepoint);
+                throw e;
+            }
+        });
+    }
+
+    public Optional<EncodedPayload> findByEmailId(Long emailId) {
+        return jdbcTemplate.query(
+                "SELECT codec, raw_size, payload FROM email_raw_data WHERE email_id = ?",
+                (rs, rowNum) -> new EncodedPayload(rs.getString("codec"), rs.getInt("raw_size"),
+                        rs.getBytes("payload")),
+                emailId).stream().findFirst();
+    }
+
+    /**
+     * Deletes at most {@code limit} payloads stored before the cutoff.
+     *
+     * @return number of rows deleted
+     */
+    public int deleteOlderThan(Instant cutoff, int limit) {
+        return jdbcTemplate.update("""
+                DELETE FROM email_raw_data WHERE email_id IN (
+                    SELECT email_id FROM email_raw_data WHERE created_at < ? LIMIT ?)
+                """, Timestamp.from(cutoff), limit);
+    }
+
+    /**
+     * Rows that still carry their payload in the legacy {@code emails.raw_data}
+     * column.
+     */
+    public List<LegacyPayload> findLegacy(int limit) {
+        return jdbcTemplate.query(
+                "SELECT id, raw_data, updated_at FROM emails WHERE raw_data IS NOT NULL LIMIT ?",
+                (rs, rowNum) -> new LegacyPayload(rs.getLong("id"), rs.getString("raw_data"),
+                        rs.getTimestamp("updated_at").toInstant()),
+                limit);
+    }
+
+    /**
+     * Moves legacy payloads into {@code email_raw_data} and clears the old
+     * column.
+     */
+    public void moveLegacy(List<MovedPayload> payloads) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+        Object[] ids = payloads.stream().map(MovedPayload::emailId).toArray();
+        String placeholders = InLists.placeholders(ids.length);
+        jdbcTemplate.update("DELETE FROM email_raw_data WHERE email_id IN (" + placeholders + ")", ids);
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO email_raw_data (email_id, codec, raw_size, payload, created_at)
+                VALUES (?, ?, ?, ?, ?)
+                """, payloads, payloads.size(), (statement, payload) -> {
+            statement.setLong(1, payload.emailId());
+            statement.setString(2, payload.encoded().codec());
+            statement.setInt(3, payload.encoded().rawSize());
+            statement.setBytes(4, payload.encoded().bytes());
+            statement.setTimestamp(5, Timestamp.from(payload.storedAt()));
+        });
+        jdbcTemplate.update("UPDATE emails SET raw_data = NULL WHERE id IN (" + placeholders + ")", ids);
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName()));
+        }
+        return postgres;
+    }
+
+    /**
+     * A payload as stored: codec name, uncompressed size in bytes, and the
+     * encoded bytes.
+     */
+    public record EncodedPayload(String codec, int rawSize, byte[] bytes) {
+    }
+
+    public record RawPayload(String messageId, EncodedPayload encoded) {
+    }
+
+    public record LegacyPayload(long emailId, String rawData, Instant updatedAt) {
+    }
+
+    public record MovedPayload(long emailId, Instant storedAt, EncodedPayload encoded) {
+    }
+}
@@ -3,11 +3,16 @@ package com.markets.emailsync.repository;
 import com.markets.emailsync.entity.MailboxEntity;
 import com.markets.emailsync.entity.EmailEntity;
 import com.markets.emailsync.entity.WebhookNotificationEntity;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,4 +29,80 @@ public interface EmailRepository extends JpaRepository<EmailEntity, Long> {
     List<EmailEntity> findRecentEmails(String emailAddress, Instant since);
 
     boolean existsByMessageId(String messageId);
+
+    // emails is partitioned by received time: the times of the ids, from
+    // EmailBulkRepository.findReceivedTimes, limit the partitions read;
+    // rows without one live in the default partition
+    @Query("SELECT e FROM EmailEntity e WHERE e.messageId IN :messageIds " +
+            "AND (e.receivedDateTime IN :receivedTimes OR e.receivedDateTime IS NULL)")
+    List<EmailEntity> findByMessageIds(@Param("messageIds") Collection<String> messageIds,
+                                       @Param("receivedTimes") Collection<Instant> receivedTimes);
+
+    @Query("SELECT e.messageId FROM EmailEntity e WHERE e.messageId IN :messageIds")
+    List<String> findExistingMessageIds(@Param("messageIds") Collection<String> messageIds);
+
+    boolean existsByMailboxId(Long mailboxId);
+
+    // Newest first, so recent mail gets its body before old mail
+    @Query("SELECT e.messageId AS messageId, e.mailbox.emailAddress AS mailboxEmail, " +
+            "e.receivedDateTime AS receivedDateTime FROM EmailEntity e " +
+            "WHERE e.bodyHydrated = false AND e.isDeleted = false " +
+            "ORDER BY e.receivedDateTime DESC")
+    List<UnhydratedEmail> findUnhydrated(Pageable pageable);
+
+    // Leaves the version alone: a concurrent header update that overwrites
+    // the body resets body_hydrated as well, and the row is fetched again.
+    // The received time picks the partition; a row it misses stays
+    // unhydrated and comes back with its stored time on the next refill
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailEntity e SET e.bodyContent = :content, e.bodyContentType = :contentType, " +
+            "e.bodyHash = :bodyHash, e.bodyHydrated = true WHERE e.messageId = :messageId " +
+            "AND (e.receivedDateTime = :receivedDateTime OR e.receivedDateTime IS NULL)")
+    int hydrateBody(@Param("messageId") String messageId,
+                    @Param("receivedDateTime") Instant receivedDateTime,
+                    @Param("content") String content,
+                    @Param("contentType") String contentType,
+                    @Param("bodyHash") String bodyHash);
+
+    // One statement per page for the delta's @removed entries; the cleared
+    // fingerprint makes a later change to the same message write again
+    @Modifying
+    @Query("UPDATE EmailEntity e SET e.isDeleted = true, e.deletedAt = :deletedAt, " +
+            "e.changeType = com.markets.emailsync.entity.EmailEntity.ChangeType.DELETED, " +
+            "e.contentFingerprint = null, e.updatedAt = :deletedAt, e.version = COALESCE(e.version, 0) + 1 " +
+            "WHERE e.messageId IN :messageIds AND e.isDeleted = false " +
+            "AND (e.receivedDateTime IN :receivedTimes OR e.receivedDateTime IS NULL)")
+    int markDeleted(@Param("messageIds") Collection<String> messageIds,
+                    @Param("receivedTimes") Collection<Instant> receivedTimes,
+                    @Param("deletedAt") Instant deletedAt);
+
+    @Query("SELECT e.messageId AS messageId, e.createdAt AS createdAt FROM EmailEntity e " +
+            "WHERE e.messageId IN :messageIds")
+    List<PersistedEmail> findPersisted(@Param("messageIds") Collection<String> messageIds);
+
+    // Keyset pages in row order, for the in-memory message id index
+    @Query("SELECT e.id AS id, e.messageId AS messageId FROM EmailEntity e " +
+            "WHERE e.id > :afterId ORDER BY e.id")
+    List<MessageKey> findMessageKeysAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    interface UnhydratedEmail {
+        String getMessageId();
+
+        String getMailboxEmail();
+
+        Instant getReceivedDateTime();
+    }
+
+    interface PersistedEmail {
+        String getMessageId();
+
+        Instant getCreatedAt();
+    }
+
+    interface MessageKey {
+        Long getId();
+
+        String getMessageId();
+    }
 }
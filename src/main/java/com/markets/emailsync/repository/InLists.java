@@ -0,0 +1,30 @@
+package com.markets.emailsync.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * {@code IN (...)} lists for the JDBC repositories. Lookups are split so the
+ * IN list stays well below driver limits.
+ */
+final class InLists {
+
+    static final int CHUNK_SIZE = 1000;
+
+    private InLists() {
+    }
+
+    static <T> void forEachChunk(Collection<T> values, Consumer<List<T>> action) {
+        List<T> all = values instanceof List<T> list ? list : new ArrayList<>(values);
+        for (int from = 0; from < all.size(); from += CHUNK_SIZE) {
+            action.accept(all.subList(from, Math.min(from + CHUNK_SIZE, all.size())));
+        }
+    }
+
+    static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+}
@@ -0,0 +1,26 @@
+package com.markets.emailsync.repository;
+
+import com.markets.emailsync.entity.MailFolderEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface MailFolderRepository extends JpaRepository<MailFolderEntity, Long> {
+
+    List<MailFolderEntity> findByMailboxId(Long mailboxId);
+
+    @Modifying
+    @Query("UPDATE MailFolderEntity f SET f.checkpointLink = :checkpointLink WHERE f.id = :id")
+    void updateCheckpointLink(@Param("id") Long id, @Param("checkpointLink") String checkpointLink);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM MailFolderEntity f WHERE f.mailboxId = :mailboxId")
+    void deleteByMailboxId(@Param("mailboxId") Long mailboxId);
+}
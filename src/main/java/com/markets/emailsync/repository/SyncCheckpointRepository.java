@@ -0,0 +1,22 @@
+package com.markets.emailsync.repository;
+
+import com.markets.emailsync.entity.SyncCheckpointEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+@Repository
+public interface SyncCheckpointRepository extends JpaRepository<SyncCheckpointEntity, Long> {
+
+    Optional<SyncCheckpointEntity> findByMailboxId(Long mailboxId);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM SyncCheckpointEntity c WHERE c.mailboxId = :mailboxId")
+    void deleteByMailboxId(@Param("mailboxId") Long mailboxId);
+}
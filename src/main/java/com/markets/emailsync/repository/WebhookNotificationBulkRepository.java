@@ -0,0 +1,177 @@
+package com.markets.emailsync.repository;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Set-based statements on {@code webhook_notifications} with plain JDBC,
+ * for work that JPQL cannot bound: the retry queue's claims and outcomes,
+ * its statistics, and the retention delete. Each call is one short
+ * statement, or one batch, and runs in the caller's transaction, or its
+ * own if there is none.
+ */
+@Repository
+public class WebhookNotificationBulkRepository {
+
+    // Oldest first; rows locked by another node are left to it
+    private static final String DELETE_PROCESSED_SQL = """
+            DELETE FROM webhook_notifications WHERE id IN (
+                SELECT id FROM webhook_notifications WHERE processed = true AND processed_at < ?
+                ORDER BY processed_at LIMIT ? FOR UPDATE SKIP LOCKED)
+            """;
+
+    private static final String DELETE_PROCESSED_PORTABLE_SQL = """
+            DELETE FROM webhook_notifications WHERE id IN (
+                SELECT id FROM webhook_notifications WHERE processed = true AND processed_at < ?
+                ORDER BY processed_at LIMIT ?)
+            """;
+
+    // Due notifications, oldest first, whose lease is free or has run out.
+    // Rows another node is claiming right now are skipped, not waited for
+    private static final String CLAIM_SQL = """
+            UPDATE webhook_notifications SET locked_by = ?, locked_until = ?
+            WHERE id IN (
+                SELECT id FROM webhook_notifications
+                WHERE processed = false AND dead_lettered_at IS NULL AND next_attempt_at <= ?
+                    AND (locked_until IS NULL OR locked_until < ?)
+                ORDER BY next_attempt_at LIMIT ? FOR UPDATE SKIP LOCKED)
+            RETURNING id, subscription_id, retry_count
+            """;
+
+    // Without SKIP LOCKED the lease condition is checked again by the
+    // update, so of two nodes racing for a row only one gets it
+    private static final String CLAIM_PORTABLE_SQL = """
+            UPDATE webhook_notifications SET locked_by = ?, locked_until = ?
+            WHERE id IN (
+                SELECT id FROM webhook_notifications
+                WHERE processed = false AND dead_lettered_at IS NULL AND next_attempt_at <= ?
+                    AND (locked_until IS NULL OR locked_until < ?)
+                ORDER BY next_attempt_at LIMIT ?)
+            AND (locked_until IS NULL OR locked_until < ?)
+            """;
+
+    private static final String CLAIMED_SQL = """
+            SELECT id, subscription_id, retry_count FROM webhook_notifications
+            WHERE locked_by = ? AND locked_until = ?
+            """;
+
+    // Outcomes only apply while the lease is still this node's
+    private static final String COMPLETE_SQL = """
+            UPDATE webhook_notifications SET processed = true, processed_at = ?,
+                processing_error = NULL, locked_by = NULL, locked_until = NULL
+            WHERE id = ? AND locked_by = ?
+            """;
+
+    private static final String RESCHEDULE_SQL = """
+            UPDATE webhook_notifications SET retry_count = ?, processing_error = ?,
+                next_attempt_at = ?, dead_lettered_at = ?, locked_by = NULL, locked_until = NULL
+            WHERE id = ? AND locked_by = ?
+            """;
+
+    private static final String STATS_SQL = """
+            SELECT SUM(CASE WHEN dead_lettered_at IS NULL THEN 1 ELSE 0 END),
+                MIN(CASE WHEN dead_lettered_at IS NULL THEN received_at END),
+                SUM(CASE WHEN dead_lettered_at IS NOT NULL THEN 1 ELSE 0 END)
+            FROM webhook_notifications WHERE processed = false
+            """;
+
+    private static final RowMapper<ClaimedNotification> CLAIMED_MAPPER = (rs, rowNum) ->
+            new ClaimedNotification(rs.getLong("id"), rs.getString("subscription_id"), rs.getInt("retry_count"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Boolean postgres;
+
+    public WebhookNotificationBulkRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Leases at most {@code limit} due notifications to {@code owner} until
+     * {@code leaseUntil}.
+     */
+    public List<ClaimedNotification> claimDue(String owner, Instant now, Instant leaseUntil, int limit) {
+        Timestamp nowTs = Timestamp.from(now);
+        Timestamp leaseTs = Timestamp.from(leaseUntil);
+        if (isPostgres()) {
+            return jdbcTemplate.query(CLAIM_SQL, CLAIMED_MAPPER, owner, leaseTs, nowTs, nowTs, limit);
+        }
+        int claimed = jdbcTemplate.update(CLAIM_PORTABLE_SQL, owner, leaseTs, nowTs, nowTs, limit, nowTs);
+        return claimed == 0 ? List.of() : jdbcTemplate.query(CLAIMED_SQL, CLAIMED_MAPPER, owner, leaseTs);
+    }
+
+    public void complete(List<Long> ids, String owner, Instant processedAt) {
+        Timestamp processedTs = Timestamp.from(processedAt);
+        jdbcTemplate.batchUpdate(COMPLETE_SQL, ids, ids.size(), (statement, id) -> {
+            statement.setTimestamp(1, processedTs);
+            statement.setLong(2, id);
+            statement.setString(3, owner);
+        });
+    }
+
+    /**
+     * Records failed attempts: each notification is either due again later
+     * or dead-lettered, and its lease is released.
+     */
+    public void reschedule(List<FailedAttempt> failures, String owner) {
+        jdbcTemplate.batchUpdate(RESCHEDULE_SQL, failures, failures.size(), (statement, failure) -> {
+            statement.setInt(1, failure.retryCount());
+            statement.setString(2, failure.error());
+            statement.setTimestamp(3, failure.nextAttemptAt() != null
+                    ? Timestamp.from(failure.nextAttemptAt()) : null);
+            statement.setTimestamp(4, failure.deadLetteredAt() != null
+                    ? Timestamp.from(failure.deadLetteredAt()) : null);
+            statement.setLong(5, failure.id());
+            statement.setString(6, owner);
+        });
+    }
+
+    public QueueStats queueStats() {
+        return jdbcTemplate.queryForObject(STATS_SQL, (rs, rowNum) -> {
+            Timestamp oldest = rs.getTimestamp(2);
+            return new QueueStats(rs.getLong(1), oldest != null ? oldest.toInstant() : null, rs.getLong(3));
+        });
+    }
+
+    /**
+     * Deletes at most {@code limit} notifications processed before the
+     * cutoff.
+     *
+     * @return number of rows deleted
+     */
+    public int deleteProcessedBefore(Instant cutoff, int limit) {
+        String sql = isPostgres() ? DELETE_PROCESSED_SQL : DELETE_PROCESSED_PORTABLE_SQL;
+        return jdbcTemplate.update(sql, Timestamp.from(cutoff), limit);
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName()));
+        }
+        return postgres;
+    }
+
+    public record ClaimedNotification(long id, String subscriptionId, int retryCount) {
+    }
+
+    /**
+     * Outcome of a failed attempt; exactly one of {@code nextAttemptAt} and
+     * {@code deadLetteredAt} is set.
+     */
+    public record FailedAttempt(long id, int retryCount, String error,
+                                Instant nextAttemptAt, Instant deadLetteredAt) {
+    }
+
+    /**
+     * Unprocessed notifications still being retried, when the oldest of them
+     * arrived, and dead letters.
+     */
+    public record QueueStats(long depth, Instant oldestReceivedAt, long deadLettered) {
+    }
+}
@@ -20,9 +20,5 @@ public interface WebhookNotificationRepository extends JpaRepository<WebhookNoti
 
     Optional<WebhookNotificationEntity> findFirstBySubscriptionIdAndProcessedFalseOrderByReceivedAtAsc(String subscriptionId);
 
-    @Query("SELECT w FROM WebhookNotificationEntity w WHERE w.processed = false " +
-            "AND w.retryCount < :maxRetries ORDER BY w.receivedAt ASC")
-    List<WebhookNotificationEntity> findUnprocessedWithRetriesAvailable(int maxRetries);
-
     long countByProcessedFalse();
 }
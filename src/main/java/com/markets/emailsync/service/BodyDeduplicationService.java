@@ -0,0 +1,151 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.config.EmailPersistenceProperties;
+import com.markets.emailsync.repository.EmailBodyRepository;
+import com.markets.emailsync.repository.EmailBulkRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores large message bodies once, keyed by their SHA-256 hash, so reply
+ * chains and broadcast mail repeated across rows and mailboxes do not
+ * rewrite the same content. Rows reference the body through
+ * {@code body_hash} and leave {@code body_content} empty; the
+ * {@code email_body_content} view resolves either form. Bodies whose last
+ * email was purged or dropped with its partition are swept away in the
+ * background.
+ */
+@Slf4j
+@Service
+public class BodyDeduplicationService {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final EmailBodyRepository bodyRepository;
+    private final EmailBulkRepository bulkRepository;
+    private final EmailPersistenceProperties.BodyDedupProperties settings;
+    private final Counter storedCounter;
+    private final Counter deduplicatedCounter;
+    private final Counter sweptCounter;
+    private final TransactionTemplate transactionTemplate;
+    private volatile boolean sweepRequested;
+    // Position of the unfinished sweep pass, null between passes
+    private String sweepCursor;
+
+    public BodyDeduplicationService(
+            EmailBodyRepository bodyRepository,
+            EmailBulkRepository bulkRepository,
+            EmailPersistenceProperties properties,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.bodyRepository = bodyRepository;
+        this.bulkRepository = bulkRepository;
+        this.settings = properties.getBodyDedup();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.storedCounter = Counter.builder("email.body.stored")
+                .description("Distinct message bodies written to email_bodies")
+                .register(meterRegistry);
+        this.deduplicatedCounter = Counter.builder("email.body.deduplicated")
+                .description("Message bodies that were already stored under their hash")
+                .register(meterRegistry);
+        this.sweptCounter = Counter.builder("email.body.swept")
+                .description("Message bodies deleted because no email references them any more")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether this body goes to {@code email_bodies}; small bodies stay inline,
+     * where they cost less than the extra lookup.
+     */
+    public boolean shouldDeduplicate(String content) {
+        return settings.isEnabled() && content != null
+                && content.length() >= settings.getMinLength()
+                && bulkRepository.isSupported();
+    }
+
+    public String hash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HEX.formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Writes the bodies whose hash is not stored yet, in the caller's
+     * transaction. Content of known hashes never leaves the application.
+     */
+    public void store(Map<String, String> bodiesByHash) {
+        if (bodiesByHash.isEmpty()) {
+            return;
+        }
+        Set<String> existing = bodyRepository.findExistingHashes(bodiesByHash.keySet());
+        Map<String, String> missing = new HashMap<>(bodiesByHash);
+        missing.keySet().removeAll(existing);
+        bodyRepository.insert(missing);
+        storedCounter.increment(missing.size());
+        deduplicatedCounter.increment(existing.size());
+    }
+
+    /**
+     * Notes that emails were removed in bulk, so bodies may have lost their
+     * last reference; the following sweeps walk all of {@code email_bodies}
+     * once.
+     */
+    public void requestSweep() {
+        sweepRequested = true;
+    }
+
+    /**
+     * Deletes bodies no email references, in bounded batches that each
+     * commit on their own. A pass that does not finish within one run
+     * continues where it stopped on the next one.
+     */
+    public synchronized void sweepOrphans() {
+        if (!bulkRepository.isSupported()) {
+            return;
+        }
+        if (sweepCursor == null) {
+            if (!sweepRequested) {
+                return;
+            }
+            sweepRequested = false;
+            sweepCursor = "";
+        }
+
+        int deleted = 0;
+        try {
+            for (int batch = 0; batch < settings.getSweepMaxBatchesPerRun(); batch++) {
+                List<String> hashes = bodyRepository.findHashesAfter(sweepCursor, settings.getSweepBatchSize());
+                Integer removed = transactionTemplate.execute(status -> bodyRepository.deleteUnreferenced(hashes));
+                deleted += removed != null ? removed : 0;
+                if (hashes.size() < settings.getSweepBatchSize()) {
+                    sweepCursor = null;
+                    break;
+                }
+                sweepCursor = hashes.get(hashes.size() - 1);
+            }
+        } catch (Exception e) {
+            log.error("Message body sweep failed after {} bodies: {}", deleted, e.getMessage(), e);
+        }
+
+        sweptCounter.increment(deleted);
+        if (deleted > 0) {
+            log.info("Deleted {} message bodies no email references", deleted);
+        }
+    }
+}
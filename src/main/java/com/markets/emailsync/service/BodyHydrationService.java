@@ -0,0 +1,251 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.config.MicrosoftGraphProperties;
+import com.markets.emailsync.repository.EmailRepository;
+import com.microsoft.graph.models.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Second tier of headers-first sync: fetches message bodies in the background
+ * for rows stored with {@code body_hydrated = false}. The in-memory queue is
+ * bounded and ordered by priority (live changes, then initial sync, then
+ * backfill; newest mail first). Rows that do not fit are picked up again by
+ * the periodic refill from the database, which is the durable backlog.
+ */
+@Slf4j
+@Service
+public class BodyHydrationService {
+
+    public enum Priority {
+        LIVE,
+        INITIAL,
+        BACKFILL
+    }
+
+    private static final Comparator<HydrationTask> ORDER = Comparator
+            .comparing(HydrationTask::priority)
+            .thenComparing(HydrationTask::receivedDateTime,
+                    Comparator.nullsLast(Comparator.reverseOrder()));
+
+    private final GraphService graphService;
+    private final EmailRepository emailRepository;
+    private final BodyDeduplicationService bodyDeduplication;
+    private final MicrosoftGraphProperties.HydrationProperties settings;
+    private final PriorityBlockingQueue<HydrationTask> queue;
+    private final Set<String> queuedIds = ConcurrentHashMap.newKeySet();
+    private final ExecutorService workers;
+    private final Counter hydratedCounter;
+    private final Counter failedCounter;
+    private final TransactionTemplate transactionTemplate;
+
+    public BodyHydrationService(
+            GraphService graphService,
+            EmailRepository emailRepository,
+            BodyDeduplicationService bodyDeduplication,
+            MicrosoftGraphProperties properties,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.graphService = graphService;
+        this.emailRepository = emailRepository;
+        this.bodyDeduplication = bodyDeduplication;
+        this.settings = properties.getHydration();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new PriorityBlockingQueue<>(settings.getQueueCapacity(), ORDER);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(settings.getWorkers(), runnable -> {
+            Thread thread = new Thread(runnable, "body-hydration-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.hydratedCounter = Counter.builder("email.hydration.hydrated")
+                .description("Message bodies fetched by the hydration queue")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("email.hydration.failed")
+                .description("Message body fetches that failed and will be retried")
+                .register(meterRegistry);
+        Gauge.builder("email.hydration.queue.size", queue, PriorityBlockingQueue::size)
+                .description("Message bodies waiting in the in-memory hydration queue")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        for (int i = 0; i < settings.getWorkers(); i++) {
+            workers.submit(this::drainQueue);
+        }
+        refill();
+    }
+
+    /**
+     * Queues header-only messages once the surrounding transaction has
+     * committed, so a worker never looks for a row that is not visible yet.
+     */
+    public void enqueueAfterCommit(String mailboxEmail, List<MessageRecord> messages,
+                                   Priority priority) {
+        if (!isEnabled() || messages.isEmpty()) {
+            return;
+        }
+        List<HydrationTask> tasks = new ArrayList<>(messages.size());
+        for (MessageRecord message : messages) {
+            tasks.add(new HydrationTask(message.id(), mailboxEmail,
+                    message.receivedDateTime(), priority));
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    tasks.forEach(BodyHydrationService.this::offer);
+                }
+            });
+        } else {
+            tasks.forEach(this::offer);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${microsoft.graph.hydration.poll-interval-ms:15000}")
+    public void refill() {
+        if (!isEnabled()) {
+            return;
+        }
+        int free = settings.getQueueCapacity() - queue.size();
+        if (free < settings.getQueueCapacity() / 2) {
+            return;
+        }
+
+        try {
+            List<EmailRepository.UnhydratedEmail> rows =
+                    emailRepository.findUnhydrated(PageRequest.of(0, free));
+            rows.forEach(row -> offer(new HydrationTask(row.getMessageId(),
+                    row.getMailboxEmail(), row.getReceivedDateTime(), Priority.BACKFILL)));
+            if (!rows.isEmpty()) {
+                log.debug("Refilled hydration queue with {} messages", rows.size());
+            }
+        } catch (Exception e) {
+            log.error("Failed to refill hydration queue: {}", e.getMessage(), e);
+        }
+    }
+
+    // Full queue: the row keeps body_hydrated = false and returns on refill
+    private void offer(HydrationTask task) {
+        if (task.messageId() == null || queue.size() >= settings.getQueueCapacity()) {
+            return;
+        }
+        if (queuedIds.add(task.messageId())) {
+            queue.offer(task);
+        }
+    }
+
+    private void drainQueue() {
+        List<HydrationTask> batch = new ArrayList<>(settings.getBatchSize());
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, settings.getBatchSize() - 1);
+                hydrate(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Body hydration batch failed: {}", e.getMessage(), e);
+                failedCounter.increment(batch.size());
+                pause();
+            } finally {
+                batch.forEach(task -> queuedIds.remove(task.messageId()));
+                batch.clear();
+            }
+        }
+    }
+
+    private void hydrate(List<HydrationTask> batch) {
+        Map<String, String> mailboxByMessageId = new LinkedHashMap<>();
+        Map<String, Instant> receivedByMessageId = new HashMap<>();
+        batch.forEach(task -> {
+            mailboxByMessageId.put(task.messageId(), task.mailboxEmail());
+            receivedByMessageId.put(task.messageId(), task.receivedDateTime());
+        });
+
+        Map<String, GraphService.BatchOutcome<Message>> outcomes =
+                graphService.fetchMessageBodies(mailboxByMessageId);
+
+        outcomes.forEach((messageId, outcome) -> {
+            Instant received = receivedByMessageId.get(messageId);
+            Message message = outcome.result();
+            if (outcome.isSuccess() && message != null) {
+                String content = message.body != null ? message.body.content : null;
+                String contentType = message.body != null && message.body.contentType != null
+                        ? message.body.contentType.name() : null;
+                if (bodyDeduplication.shouldDeduplicate(content)) {
+                    // One transaction: the stored body stays locked until the
+                    // row points at it, so the orphan sweep cannot take it
+                    String hash = bodyDeduplication.hash(content);
+                    transactionTemplate.executeWithoutResult(status -> {
+                        bodyDeduplication.store(Map.of(hash, content));
+                        emailRepository.hydrateBody(messageId, received, null, contentType, hash);
+                    });
+                } else {
+                    emailRepository.hydrateBody(messageId, received, content, contentType, null);
+                }
+                hydratedCounter.increment();
+            } else if (outcome.status() == 404) {
+                // Deleted in the mailbox meanwhile, nothing left to fetch
+                emailRepository.hydrateBody(messageId, received, null, null, null);
+            } else {
+                failedCounter.increment();
+                log.debug("Body fetch for {} failed: {}", messageId, outcome.error());
+            }
+        });
+    }
+
+    private void pause() {
+        try {
+            TimeUnit.SECONDS.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private record HydrationTask(String messageId, String mailboxEmail,
+                                 Instant receivedDateTime, Priority priority) {}
+}
@@ -0,0 +1,258 @@
+package com.markets.emailsync.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.markets.emailsync.config.EmailPersistenceProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decodes a Graph message collection response (delta or list) straight from
+ * the socket with Jackson's streaming parser. No tree or SDK model is built:
+ * only the fields of {@link MessageRecord} are read, each string is
+ * materialised once, and everything else is skipped token by token. Unless
+ * raw payloads are switched off, the page is buffered first and each
+ * message's JSON is cut from it by byte range for {@link RawPayloadService}.
+ */
+@Component
+public class DeltaPageDecoder {
+
+    private final JsonFactory jsonFactory;
+    private final boolean captureRaw;
+
+    public DeltaPageDecoder(ObjectMapper objectMapper, EmailPersistenceProperties persistenceProperties) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.captureRaw = persistenceProperties.getRawData().getMode()
+                != EmailPersistenceProperties.RawDataProperties.Mode.NEVER;
+    }
+
+    public GraphService.DeltaPage decode(InputStream body) throws IOException {
+        if (!captureRaw) {
+            return decode(jsonFactory.createParser(body), null);
+        }
+        byte[] page = body.readAllBytes();
+        return decode(jsonFactory.createParser(page), page);
+    }
+
+    private GraphService.DeltaPage decode(JsonParser source, byte[] page) throws IOException {
+        List<MessageRecord> messages = new ArrayList<>();
+        String nextLink = null;
+        String deltaLink = null;
+
+        try (JsonParser parser = source) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object in the Graph response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "value" -> readMessages(parser, value, messages, page);
+                    case "@odata.nextLink" -> nextLink = parser.getValueAsString();
+                    case "@odata.deltaLink" -> deltaLink = parser.getValueAsString();
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+
+        return new GraphService.DeltaPage(messages, nextLink, deltaLink);
+    }
+
+    private void readMessages(JsonParser parser, JsonToken value, List<MessageRecord> messages,
+                              byte[] page) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        JsonToken element;
+        while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (element == JsonToken.START_OBJECT) {
+                messages.add(readMessage(parser, page));
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private MessageRecord readMessage(JsonParser parser, byte[] page) throws IOException {
+        long start = parser.currentTokenLocation().getByteOffset();
+        String id = null;
+        String subject = null;
+        String[] sender = new String[2];
+        String recipients = null;
+        Instant receivedDateTime = null;
+        boolean hasAttachments = false;
+        boolean isRead = false;
+        String importance = null;
+        String bodyPreview = null;
+        String[] body = null;
+        String categories = null;
+        String conversationId = null;
+        boolean removed = false;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getValueAsString();
+                case "subject" -> subject = parser.getValueAsString();
+                case "from" -> readSender(parser, value, sender);
+                case "toRecipients" -> recipients = readRecipients(parser, value);
+                case "receivedDateTime" -> {
+                    String text = parser.getValueAsString();
+                    receivedDateTime = text != null ? OffsetDateTime.parse(text).toInstant() : null;
+                }
+                case "hasAttachments" -> hasAttachments = parser.getValueAsBoolean();
+                case "isRead" -> isRead = parser.getValueAsBoolean();
+                case "importance" -> importance = enumName(parser.getValueAsString());
+                case "bodyPreview" -> bodyPreview = parser.getValueAsString();
+                case "body" -> body = readBody(parser, value);
+                case "categories" -> categories = readCategories(parser, value);
+                case "conversationId" -> conversationId = parser.getValueAsString();
+                case "@removed" -> {
+                    removed = true;
+                    parser.skipChildren();
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        // Positioned on the message's END_OBJECT, so this is just past it
+        String rawData = page != null
+                ? rawSlice(page, start, parser.currentLocation().getByteOffset())
+                : null;
+
+        return new MessageRecord(id, subject, sender[0], sender[1], recipients,
+                receivedDateTime, hasAttachments, isRead, importance, bodyPreview,
+                body != null ? body[0] : null, body != null ? body[1] : null, body != null,
+                categories, conversationId, removed, rawData);
+    }
+
+    private static String rawSlice(byte[] page, long start, long end) {
+        if (start < 0 || end > page.length || end <= start) {
+            return null;
+        }
+        return new String(page, (int) start, (int) (end - start), StandardCharsets.UTF_8);
+    }
+
+    // from: { emailAddress: { name, address } } into {address, name}
+    private void readSender(JsonParser parser, JsonToken value, String[] sender) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (parser.nextToken() == JsonToken.START_OBJECT && "emailAddress".equals(field)) {
+                String[] address = readEmailAddress(parser);
+                if (address[0] != null) {
+                    sender[0] = address[0];
+                    sender[1] = address[1];
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private String readRecipients(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        StringBuilder joined = new StringBuilder();
+        boolean any = false;
+        JsonToken element;
+        while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (element != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            any = true;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() == JsonToken.START_OBJECT && "emailAddress".equals(field)) {
+                    String address = readEmailAddress(parser)[0];
+                    if (address != null) {
+                        if (!joined.isEmpty()) {
+                            joined.append(", ");
+                        }
+                        joined.append(address);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return any ? joined.toString() : null;
+    }
+
+    // Positioned on START_OBJECT of emailAddress; returns {address, name}
+    private String[] readEmailAddress(JsonParser parser) throws IOException {
+        String[] address = new String[2];
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "address" -> address[0] = parser.getValueAsString();
+                case "name" -> address[1] = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
+        return address;
+    }
+
+    // body: { contentType, content } into {content, contentType}
+    private String[] readBody(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String[] body = new String[2];
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "content" -> body[0] = parser.getValueAsString();
+                case "contentType" -> body[1] = enumName(parser.getValueAsString());
+                default -> parser.skipChildren();
+            }
+        }
+        return body;
+    }
+
+    private String readCategories(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        StringBuilder joined = new StringBuilder();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            String category = parser.getValueAsString();
+            if (category != null) {
+                if (!joined.isEmpty()) {
+                    joined.append(", ");
+                }
+                joined.append(category);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return joined.isEmpty() ? null : joined.toString();
+    }
+
+    // Graph sends "html"/"normal"; the SDK path stores the enum names
+    private static String enumName(String value) {
+        return value != null ? value.toUpperCase(Locale.ROOT) : null;
+    }
+}
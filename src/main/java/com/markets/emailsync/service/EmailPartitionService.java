@@ -0,0 +1,126 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.config.EmailPersistenceProperties;
+import com.markets.emailsync.repository.EmailBulkRepository;
+import com.markets.emailsync.repository.EmailPartitionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps the monthly partitions of {@code emails} ahead of incoming mail and,
+ * with a retention set, drops whole partitions once they have aged out, which
+ * costs a catalog change instead of a large DELETE. Each partition is handled
+ * in its own transaction with a lock timeout; one that cannot get its lock is
+ * retried on the next run. Bodies only the dropped rows referenced are swept
+ * afterwards.
+ */
+@Slf4j
+@Service
+public class EmailPartitionService {
+
+    private final EmailPartitionRepository partitionRepository;
+    private final EmailBulkRepository bulkRepository;
+    private final MessageIdIndex messageIndex;
+    private final BodyDeduplicationService bodyDeduplication;
+    private final EmailPersistenceProperties.PartitionProperties settings;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter createdCounter;
+    private final Counter droppedCounter;
+    private final Counter droppedRowsCounter;
+
+    public EmailPartitionService(
+            EmailPartitionRepository partitionRepository,
+            EmailBulkRepository bulkRepository,
+            MessageIdIndex messageIndex,
+            BodyDeduplicationService bodyDeduplication,
+            EmailPersistenceProperties properties,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.partitionRepository = partitionRepository;
+        this.bulkRepository = bulkRepository;
+        this.messageIndex = messageIndex;
+        this.bodyDeduplication = bodyDeduplication;
+        this.settings = properties.getPartitions();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.createdCounter = Counter.builder("email.partitions.created")
+                .description("Monthly partitions of emails created")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("email.partitions.dropped")
+                .description("Monthly partitions of emails dropped after the retention period")
+                .register(meterRegistry);
+        this.droppedRowsCounter = Counter.builder("email.partitions.dropped.rows")
+                .description("Emails removed with dropped partitions")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${email.persistence.partitions.maintenance-interval-ms:21600000}")
+    public void maintain() {
+        if (!settings.isMaintenanceEnabled() || !bulkRepository.isSupported()) {
+            return;
+        }
+        try {
+            if (!partitionRepository.isPartitioned()) {
+                return;
+            }
+            Set<YearMonth> existing = new HashSet<>(partitionRepository.findMonthlyPartitions());
+            YearMonth current = YearMonth.now();
+            createMissing(existing, current);
+            if (settings.getRetentionMonths() > 0) {
+                dropExpired(existing, current.minusMonths(settings.getRetentionMonths()));
+            }
+            bodyDeduplication.sweepOrphans();
+        } catch (Exception e) {
+            log.error("Email partition maintenance failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void createMissing(Set<YearMonth> existing, YearMonth current) {
+        int behind = settings.getRetentionMonths() > 0
+                ? Math.min(settings.getMonthsBehind(), settings.getRetentionMonths())
+                : settings.getMonthsBehind();
+        YearMonth last = current.plusMonths(settings.getMonthsAhead());
+        for (YearMonth month = current.minusMonths(behind); !month.isAfter(last); month = month.plusMonths(1)) {
+            if (existing.contains(month)) {
+                continue;
+            }
+            YearMonth target = month;
+            try {
+                Integer moved = transactionTemplate.execute(status ->
+                        partitionRepository.createPartition(target, settings.getLockTimeoutMs()));
+                createdCounter.increment();
+                log.info("Created emails partition for {} ({} rows moved from the default partition)",
+                        target, moved);
+            } catch (Exception e) {
+                log.warn("Could not create emails partition for {}: {}", target, e.getMessage());
+            }
+        }
+    }
+
+    private void dropExpired(Set<YearMonth> existing, YearMonth oldestKept) {
+        for (YearMonth month : existing) {
+            if (!month.isBefore(oldestKept)) {
+                continue;
+            }
+            try {
+                Integer rows = transactionTemplate.execute(status ->
+                        partitionRepository.dropPartition(month, settings.getLockTimeoutMs()));
+                droppedCounter.increment();
+                droppedRowsCounter.increment(rows != null ? rows : 0);
+                messageIndex.clearRecent();
+                bodyDeduplication.requestSweep();
+                log.info("Dropped emails partition for {} with {} emails", month, rows);
+            } catch (Exception e) {
+                log.warn("Could not drop emails partition for {}: {}", month, e.getMessage());
+            }
+        }
+    }
+}
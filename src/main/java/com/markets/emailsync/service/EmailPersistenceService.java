@@ -0,0 +1,571 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.config.EmailPersistenceProperties;
+import com.markets.emailsync.entity.EmailEntity;
+import com.markets.emailsync.entity.MailboxEntity;
+import com.markets.emailsync.entity.SyncCheckpointEntity;
+import com.markets.emailsync.repository.BackfillSliceRepository;
+import com.markets.emailsync.repository.EmailBatchWriter;
+import com.markets.emailsync.repository.EmailBulkRepository;
+import com.markets.emailsync.repository.EmailRepository;
+import com.markets.emailsync.repository.MailFolderRepository;
+import com.markets.emailsync.repository.MailboxRepository;
+import com.markets.emailsync.repository.SyncCheckpointRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Writes delta pages to the database. Every page runs in its own transaction
+ * so a sync commits incrementally and only one page is held in memory.
+ */
+@Slf4j
+@Service
+public class EmailPersistenceService {
+
+    private final EmailRepository emailRepository;
+    private final MailboxRepository mailboxRepository;
+    private final SyncCheckpointRepository checkpointRepository;
+    private final MailFolderRepository folderRepository;
+    private final BackfillSliceRepository backfillSliceRepository;
+    private final BodyHydrationService hydrationService;
+    private final EmailBulkRepository bulkRepository;
+    private final EmailPersistenceProperties settings;
+    private final RawPayloadService rawPayloadService;
+    private final BodyDeduplicationService bodyDeduplication;
+    private final EmailBatchWriter batchWriter;
+    private final MessageIdIndex messageIndex;
+
+    public EmailPersistenceService(
+            EmailRepository emailRepository,
+            MailboxRepository mailboxRepository,
+            SyncCheckpointRepository checkpointRepository,
+            MailFolderRepository folderRepository,
+            BackfillSliceRepository backfillSliceRepository,
+            BodyHydrationService hydrationService,
+            EmailBulkRepository bulkRepository,
+            EmailPersistenceProperties settings,
+            RawPayloadService rawPayloadService,
+            BodyDeduplicationService bodyDeduplication,
+            EmailBatchWriter batchWriter,
+            MessageIdIndex messageIndex) {
+        this.emailRepository = emailRepository;
+        this.mailboxRepository = mailboxRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.folderRepository = folderRepository;
+        this.backfillSliceRepository = backfillSliceRepository;
+        this.hydrationService = hydrationService;
+        this.bulkRepository = bulkRepository;
+        this.settings = settings;
+        this.rawPayloadService = rawPayloadService;
+        this.bodyDeduplication = bodyDeduplication;
+        this.batchWriter = batchWriter;
+        this.messageIndex = messageIndex;
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int persistPage(MailboxEntity mailbox, List<MessageRecord> messages, boolean isInitialSync) {
+        return processMessages(messages, mailbox, isInitialSync ?
+                BodyHydrationService.Priority.INITIAL : BodyHydrationService.Priority.LIVE, false);
+    }
+
+    /**
+     * Whether an initial sync of the mailbox should load its pages with
+     * {@code COPY}: only when no rows are stored for it yet, so that almost
+     * every write is an insert. Decided once, before the first page.
+     */
+    @Transactional(readOnly = true)
+    public boolean shouldBulkLoad(MailboxEntity mailbox) {
+        return settings.isCopyLoad() && bulkRepository.isSupported()
+                && !emailRepository.existsByMailboxId(mailbox.getId());
+    }
+
+    /**
+     * Persists an initial-sync page and records the link of the following page
+     * in the same transaction, so a restarted sync resumes after the last
+     * committed page.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int persistPageWithCheckpoint(MailboxEntity mailbox, List<MessageRecord> messages,
+                                         String nextLink, boolean bulkLoad) {
+        int processed = processMessages(messages, mailbox,
+                BodyHydrationService.Priority.INITIAL, bulkLoad);
+
+        SyncCheckpointEntity checkpoint = checkpointRepository.findByMailboxId(mailbox.getId())
+                .orElseGet(() -> SyncCheckpointEntity.builder()
+                        .mailboxId(mailbox.getId())
+                        .build());
+        checkpoint.setCheckpointLink(nextLink);
+        checkpoint.setPagesCommitted(checkpoint.getPagesCommitted() + 1);
+        checkpoint.setMessagesCommitted(checkpoint.getMessagesCommitted() + processed);
+        checkpointRepository.save(checkpoint);
+
+        return processed;
+    }
+
+    /**
+     * Folder-sharded variant of {@link #persistPageWithCheckpoint}: the
+     * resume link is kept on the folder's row.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int persistFolderPageWithCheckpoint(MailboxEntity mailbox, Long folderRowId,
+                                               List<MessageRecord> messages, String nextLink,
+                                               boolean bulkLoad) {
+        int processed = processMessages(messages, mailbox,
+                BodyHydrationService.Priority.INITIAL, bulkLoad);
+        folderRepository.updateCheckpointLink(folderRowId, nextLink);
+        return processed;
+    }
+
+    /**
+     * Persists a historical backfill page. Messages already stored are left
+     * untouched, since the live sync always holds the newer state; the
+     * slice's resume link is advanced in the same transaction.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int persistBackfillPage(MailboxEntity mailbox, Long sliceId,
+                                   List<MessageRecord> messages, String nextLink) {
+        MailboxEntity mailboxRef = mailboxRepository.getReferenceById(mailbox.getId());
+        List<MessageRecord> headersOnly = new ArrayList<>();
+        List<MessageRecord> written = new ArrayList<>();
+        Map<String, String> bodies = new HashMap<>();
+
+        List<MessageRecord> additions = new ArrayList<>(latestById(
+                messages.stream().filter(message -> !message.removed()).toList()));
+        int chunkSize = settings.getWriteChunkSize();
+        for (int from = 0; from < additions.size(); from += chunkSize) {
+            List<MessageRecord> chunk = additions.subList(from, Math.min(from + chunkSize, additions.size()));
+            MessageIdIndex.Membership membership = messageIndex.lookup(ids(chunk));
+            Set<String> existing = new HashSet<>(membership.known());
+            if (!membership.unknown().isEmpty()) {
+                existing.addAll(emailRepository.findExistingMessageIds(membership.unknown()));
+            }
+            List<EmailEntity> created = new ArrayList<>();
+            for (MessageRecord message : chunk) {
+                if (existing.contains(message.id())) {
+                    continue;
+                }
+                try {
+                    EmailEntity email = createEmailFromMessage(message, mailboxRef, bodies);
+                    email.setChangeType(EmailEntity.ChangeType.CREATED);
+                    created.add(email);
+                } catch (Exception e) {
+                    log.error("Failed to backfill message {}: {}", message.id(), e.getMessage(), e);
+                }
+            }
+            // A failed insert is a message stored since the index last caught up
+            insertCreated(created, chunk, written, headersOnly);
+        }
+
+        int inserted = written.size();
+        messageIndex.recordWritten(ids(written));
+        bodyDeduplication.store(bodies);
+        rawPayloadService.store(written);
+        backfillSliceRepository.recordProgress(sliceId, nextLink, inserted);
+        hydrationService.enqueueAfterCommit(mailbox.getEmailAddress(), headersOnly,
+                BodyHydrationService.Priority.BACKFILL);
+        return inserted;
+    }
+
+    /**
+     * Writes the page's changes, then applies its {@code @removed} entries
+     * as one set-based soft delete.
+     */
+    private int processMessages(List<MessageRecord> messages, MailboxEntity mailbox,
+                                BodyHydrationService.Priority hydrationPriority, boolean bulkLoad) {
+        List<MessageRecord> changes = new ArrayList<>(messages.size());
+        List<String> removedIds = new ArrayList<>();
+        for (MessageRecord message : messages) {
+            if (!message.removed()) {
+                changes.add(message);
+            } else if (message.id() != null) {
+                removedIds.add(message.id());
+            }
+        }
+
+        int processed;
+        if (bulkLoad && bulkRepository.isSupported()) {
+            processed = copyMessages(changes, mailbox, hydrationPriority);
+        } else if (settings.isBulkUpsert() && bulkRepository.isSupported()) {
+            processed = upsertMessages(changes, mailbox, hydrationPriority);
+        } else {
+            processed = saveMessages(changes, mailbox, hydrationPriority);
+        }
+        return processed + applyRemovals(removedIds);
+    }
+
+    // Removed entries carry nothing but the id; rows already deleted are skipped
+    private int applyRemovals(List<String> removedIds) {
+        if (removedIds.isEmpty()) {
+            return 0;
+        }
+        int deleted = emailRepository.markDeleted(removedIds, receivedTimes(removedIds), Instant.now());
+        messageIndex.recordRemoved(removedIds);
+        log.debug("Marked {} of {} removed emails as deleted", deleted, removedIds.size());
+        return removedIds.size();
+    }
+
+    /**
+     * Per-message JPA path, for databases without the bulk path. The page is
+     * written in chunks: existing rows come from one lookup of the ids the
+     * {@link MessageIdIndex} cannot rule out, new rows go
+     * through the stateless {@link EmailBatchWriter}, and the persistence
+     * context is flushed and cleared after every chunk, so a chunk costs the
+     * same however many came before it.
+     */
+    private int saveMessages(List<MessageRecord> messages, MailboxEntity mailbox,
+                             BodyHydrationService.Priority hydrationPriority) {
+
+        MailboxEntity mailboxRef = mailboxRepository.getReferenceById(mailbox.getId());
+        List<MessageRecord> headersOnly = new ArrayList<>();
+        List<MessageRecord> written = new ArrayList<>();
+        Map<String, String> bodies = new HashMap<>();
+        int unchanged = 0;
+
+        List<MessageRecord> latest = new ArrayList<>(latestById(messages));
+        int chunkSize = settings.getWriteChunkSize();
+        for (int from = 0; from < latest.size(); from += chunkSize) {
+            List<MessageRecord> chunk = latest.subList(from, Math.min(from + chunkSize, latest.size()));
+            Set<String> candidates = messageIndex.lookup(ids(chunk)).all();
+            Map<String, EmailEntity> existing = candidates.isEmpty() ? Map.of()
+                    : byMessageId(emailRepository.findByMessageIds(candidates, receivedTimes(candidates)));
+
+            List<EmailEntity> created = new ArrayList<>();
+            for (MessageRecord message : chunk) {
+                try {
+                    EmailEntity email = existing.get(message.id());
+                    if (email == null) {
+                        email = createEmailFromMessage(message, mailboxRef, bodies);
+                        email.setChangeType(EmailEntity.ChangeType.CREATED);
+                        created.add(email);
+                        continue;
+                    }
+                    if (applyUpdate(email, message, bodies)) {
+                        written.add(message);
+                    } else {
+                        unchanged++;
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to process message {}: {}",
+                            message.id(), e.getMessage(), e);
+                }
+            }
+
+            Set<String> failed = insertCreated(created, chunk, written, headersOnly);
+            if (!failed.isEmpty()) {
+                // Stored by another node since the index last caught up
+                Map<String, EmailEntity> stored = byMessageId(
+                        emailRepository.findByMessageIds(failed, receivedTimes(failed)));
+                for (MessageRecord message : chunk) {
+                    EmailEntity email = stored.get(message.id());
+                    if (email == null) {
+                        continue;
+                    }
+                    if (applyUpdate(email, message, bodies)) {
+                        written.add(message);
+                    } else {
+                        unchanged++;
+                    }
+                }
+            }
+            batchWriter.flushAndClear();
+        }
+
+        bodyDeduplication.store(bodies);
+        rawPayloadService.store(written);
+        messageIndex.recordWritten(ids(written));
+        hydrationService.enqueueAfterCommit(mailbox.getEmailAddress(), headersOnly,
+                hydrationPriority);
+        if (unchanged > 0) {
+            log.debug("Skipped {} unchanged emails", unchanged);
+        }
+        return written.size() + unchanged;
+    }
+
+    /**
+     * Applies a change to a stored, managed row; the flush at the end of the
+     * chunk writes it.
+     *
+     * @return false if the change is the one applied last time
+     */
+    private boolean applyUpdate(EmailEntity email, MessageRecord message, Map<String, String> bodies) {
+        if (Objects.equals(email.getContentFingerprint(), MessageFingerprint.of(message))) {
+            return false;
+        }
+        updateEmailFromMessage(email, message, bodies);
+        email.setChangeType(EmailEntity.ChangeType.UPDATED);
+        email.setDeleted(false);
+        email.setDeletedAt(null);
+        log.debug("Updated existing email: {}", message.id());
+        return true;
+    }
+
+    /**
+     * Inserts a chunk's new rows and records the messages that were written.
+     *
+     * @return message ids of the rows that could not be inserted
+     */
+    private Set<String> insertCreated(List<EmailEntity> created, List<MessageRecord> chunk,
+                                      List<MessageRecord> written, List<MessageRecord> headersOnly) {
+        if (created.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> failed = batchWriter.insert(created);
+        Map<String, EmailEntity> createdById = byMessageId(created);
+        for (MessageRecord message : chunk) {
+            EmailEntity email = createdById.get(message.id());
+            if (email == null || failed.contains(message.id())) {
+                continue;
+            }
+            written.add(message);
+            if (!email.isBodyHydrated()) {
+                headersOnly.add(message);
+            }
+            log.debug("Created new email: {}", message.id());
+        }
+        return failed;
+    }
+
+    private static Map<String, EmailEntity> byMessageId(List<EmailEntity> emails) {
+        Map<String, EmailEntity> byId = new HashMap<>();
+        for (EmailEntity email : emails) {
+            byId.put(email.getMessageId(), email);
+        }
+        return byId;
+    }
+
+    // Last occurrence of a message wins, so each row is written once per page
+    private static Collection<MessageRecord> latestById(List<MessageRecord> messages) {
+        Map<String, MessageRecord> latest = new LinkedHashMap<>();
+        for (MessageRecord message : messages) {
+            if (message.id() == null) {
+                log.warn("Skipping message with null ID");
+                continue;
+            }
+            latest.put(message.id(), message);
+        }
+        return latest.values();
+    }
+
+    // Partitions holding the messages; ids without a stored row add none
+    private Set<Instant> receivedTimes(Collection<String> messageIds) {
+        Set<Instant> times = new HashSet<>(bulkRepository.findReceivedTimes(messageIds).values());
+        times.remove(null);
+        return times;
+    }
+
+    private static List<String> ids(List<MessageRecord> messages) {
+        List<String> ids = new ArrayList<>(messages.size());
+        for (MessageRecord message : messages) {
+            ids.add(message.id());
+        }
+        return ids;
+    }
+
+    /**
+     * Bulk variant of {@link #saveMessages}: one lookup for the page's
+     * existing ids, then a batched upsert. Rows that fail are skipped like a
+     * failed message on the per-message path, and rows whose fingerprint is
+     * unchanged are left alone by the upsert itself.
+     */
+    private int upsertMessages(List<MessageRecord> messages, MailboxEntity mailbox,
+                               BodyHydrationService.Priority hydrationPriority) {
+        MailboxEntity mailboxRef = mailboxRepository.getReferenceById(mailbox.getId());
+        List<String> ids = new ArrayList<>(messages.size());
+        for (MessageRecord message : messages) {
+            if (message.id() != null) {
+                ids.add(message.id());
+            }
+        }
+        MessageIdIndex.Membership membership = messageIndex.lookup(ids);
+        Set<String> existing = new HashSet<>(membership.known());
+        existing.addAll(bulkRepository.findExistingMessageIds(new ArrayList<>(membership.unknown())));
+
+        List<EmailBulkRepository.UpsertRow> rows = new ArrayList<>(ids.size());
+        List<MessageRecord> created = new ArrayList<>();
+        Map<String, String> bodies = new HashMap<>();
+        for (MessageRecord message : messages) {
+            if (message.id() == null) {
+                log.warn("Skipping message with null ID");
+                continue;
+            }
+            try {
+                EmailEntity email = createEmailFromMessage(message, mailboxRef, bodies);
+                rows.add(new EmailBulkRepository.UpsertRow(email, message.hasBody()));
+                if (!existing.contains(message.id()) && !email.isBodyHydrated()) {
+                    created.add(message);
+                }
+            } catch (Exception e) {
+                log.error("Failed to process message {}: {}", message.id(), e.getMessage(), e);
+            }
+        }
+
+        EmailBulkRepository.UpsertResult result = bulkRepository.upsert(rows);
+        Set<String> failed = result.failed();
+
+        storeContent(messages, rows, bodies, result.written());
+        messageIndex.recordWritten(ids(written(messages, failed)));
+        List<MessageRecord> headersOnly = failed.isEmpty() ? created : created.stream()
+                .filter(message -> !failed.contains(message.id()))
+                .toList();
+        hydrationService.enqueueAfterCommit(mailbox.getEmailAddress(), headersOnly,
+                hydrationPriority);
+        log.debug("Upserted {} emails ({} new)", rows.size() - failed.size(), ids.size() - existing.size());
+        return rows.size() - failed.size();
+    }
+
+    /**
+     * Initial load of a mailbox without stored rows: the page is streamed
+     * through {@code COPY} into a staging table and merged in one
+     * statement. If that fails the page is written with the batched upsert,
+     * which isolates failing rows.
+     */
+    private int copyMessages(List<MessageRecord> messages, MailboxEntity mailbox,
+                             BodyHydrationService.Priority hydrationPriority) {
+        MailboxEntity mailboxRef = mailboxRepository.getReferenceById(mailbox.getId());
+        List<EmailBulkRepository.UpsertRow> rows = new ArrayList<>(messages.size());
+        List<MessageRecord> headersOnly = new ArrayList<>();
+        Map<String, String> bodies = new HashMap<>();
+        for (MessageRecord message : messages) {
+            if (message.id() == null) {
+                log.warn("Skipping message with null ID");
+                continue;
+            }
+            try {
+                EmailEntity email = createEmailFromMessage(message, mailboxRef, bodies);
+                rows.add(new EmailBulkRepository.UpsertRow(email, message.hasBody()));
+                if (!email.isBodyHydrated()) {
+                    headersOnly.add(message);
+                }
+            } catch (Exception e) {
+                log.error("Failed to process message {}: {}", message.id(), e.getMessage(), e);
+            }
+        }
+
+        EmailBulkRepository.UpsertResult result = copyOrUpsert(rows);
+        Set<String> failed = result.failed();
+
+        storeContent(messages, rows, bodies, result.written());
+        messageIndex.recordWritten(ids(written(messages, failed)));
+        if (!failed.isEmpty()) {
+            headersOnly = headersOnly.stream()
+                    .filter(message -> !failed.contains(message.id()))
+                    .toList();
+        }
+        hydrationService.enqueueAfterCommit(mailbox.getEmailAddress(), headersOnly,
+                hydrationPriority);
+        log.debug("Loaded {} emails with COPY", rows.size() - failed.size());
+        return rows.size() - failed.size();
+    }
+
+    // Messages of a bulk-written page whose row made it to the database
+    private static List<MessageRecord> written(List<MessageRecord> messages, Set<String> failed) {
+        return messages.stream()
+                .filter(message -> message.id() != null && !failed.contains(message.id()))
+                .toList();
+    }
+
+    // Bodies and raw payloads of the rows the bulk write changed; a row the
+    // fingerprint check skipped already has both
+    private void storeContent(List<MessageRecord> messages, List<EmailBulkRepository.UpsertRow> rows,
+                              Map<String, String> bodies, Set<String> written) {
+        Map<String, String> writtenBodies = new HashMap<>();
+        for (EmailBulkRepository.UpsertRow row : rows) {
+            String hash = row.email().getBodyHash();
+            if (hash != null && bodies.containsKey(hash) && written.contains(row.email().getMessageId())) {
+                writtenBodies.put(hash, bodies.get(hash));
+            }
+        }
+        bodyDeduplication.store(writtenBodies);
+        rawPayloadService.store(messages.stream()
+                .filter(message -> message.id() != null && written.contains(message.id()))
+                .toList());
+    }
+
+    private EmailBulkRepository.UpsertResult copyOrUpsert(List<EmailBulkRepository.UpsertRow> rows) {
+        try {
+            bulkRepository.copyLoad(rows);
+            Set<String> written = new HashSet<>();
+            for (EmailBulkRepository.UpsertRow row : rows) {
+                written.add(row.email().getMessageId());
+            }
+            return new EmailBulkRepository.UpsertResult(written, Set.of());
+        } catch (DataAccessException e) {
+            log.warn("COPY load of {} emails failed, falling back to upsert: {}",
+                    rows.size(), e.getMessage());
+            return bulkRepository.upsert(rows);
+        }
+    }
+
+    private EmailEntity createEmailFromMessage(MessageRecord message, MailboxEntity mailbox,
+                                               Map<String, String> bodies) {
+        EmailEntity email = new EmailEntity();
+        email.setMessageId(message.id());
+        email.setMailbox(mailbox);
+        // Headers-first pages come without a body, the hydration queue adds it
+        email.setBodyHydrated(message.hasBody() || !hydrationService.isEnabled());
+        updateEmailFromMessage(email, message, bodies);
+        return email;
+    }
+
+    /**
+     * Maps the message onto the row. Bodies that are deduplicated are only
+     * referenced by hash and collected in {@code bodies} for the page to
+     * store.
+     */
+    private void updateEmailFromMessage(EmailEntity email, MessageRecord message,
+                                        Map<String, String> bodies) {
+        email.setSubject(message.subject());
+
+        if (message.senderEmail() != null) {
+            email.setSenderEmail(message.senderEmail());
+            email.setSenderName(message.senderName());
+        }
+
+        if (message.recipientEmails() != null) {
+            email.setRecipientEmails(message.recipientEmails());
+        }
+
+        if (message.receivedDateTime() != null) {
+            email.setReceivedDateTime(message.receivedDateTime());
+        }
+
+        email.setHasAttachments(message.hasAttachments());
+        email.setRead(message.isRead());
+        email.setImportance(message.importance());
+        email.setBodyPreview(message.bodyPreview());
+
+        if (message.hasBody()) {
+            if (bodyDeduplication.shouldDeduplicate(message.bodyContent())) {
+                String hash = bodyDeduplication.hash(message.bodyContent());
+                bodies.put(hash, message.bodyContent());
+                email.setBodyHash(hash);
+                email.setBodyContent(null);
+            } else {
+                email.setBodyHash(null);
+                email.setBodyContent(message.bodyContent());
+            }
+            email.setBodyContentType(message.bodyContentType());
+        }
+
+        if (message.categories() != null) {
+            email.setCategories(message.categories());
+        }
+
+        email.setConversationId(message.conversationId());
+        email.setContentFingerprint(MessageFingerprint.of(message));
+    }
+}
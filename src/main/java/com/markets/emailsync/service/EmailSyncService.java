@@ -1,43 +1,52 @@
 package com.markets.emailsync.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.markets.emailsync.entity.EmailEntity;
 import com.markets.emailsync.entity.MailboxEntity;
-import com.markets.emailsync.repository.EmailRepository;
+import com.markets.emailsync.entity.SyncCheckpointEntity;
 import com.markets.emailsync.repository.MailboxRepository;
-import com.microsoft.graph.models.Message;
-import com.microsoft.graph.models.Recipient;
+import com.markets.emailsync.repository.SyncCheckpointRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
-import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
-
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs initial and delta syncs of one mailbox. Not transactional on purpose:
+ * pages commit in their own transactions and mailbox state is written in
+ * short ones, so a running sync holds at most one pooled connection.
+ */
 @Slf4j
 @Service
 public class EmailSyncService {
 
     private final GraphService graphService;
     private final MailboxRepository mailboxRepository;
-    private final EmailRepository emailRepository;
-    private final ObjectMapper objectMapper;
+    private final SyncCheckpointRepository checkpointRepository;
+    private final EmailPersistenceService persistenceService;
+    private final MailboxConcurrencyLimiter concurrencyLimiter;
+    private final FolderShardSyncService folderShardSyncService;
+    private final TransactionTemplate transactionTemplate;
 
     public EmailSyncService(
             GraphService graphService,
             MailboxRepository mailboxRepository,
-            EmailRepository emailRepository,
-            ObjectMapper objectMapper) {
+            SyncCheckpointRepository checkpointRepository,
+            EmailPersistenceService persistenceService,
+            MailboxConcurrencyLimiter concurrencyLimiter,
+            FolderShardSyncService folderShardSyncService,
+            PlatformTransactionManager transactionManager) {
         this.graphService = graphService;
         this.mailboxRepository = mailboxRepository;
-        this.emailRepository = emailRepository;
-        this.objectMapper = objectMapper;
+        this.checkpointRepository = checkpointRepository;
+        this.persistenceService = persistenceService;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.folderShardSyncService = folderShardSyncService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
-    @Transactional
     public void performInitialSyncForMailbox(String emailAddress) {
         log.info("Starting initial sync for mailbox: {}", emailAddress);
 
@@ -46,20 +55,47 @@ public class EmailSyncService {
                         "Mailbox not found: " + emailAddress));
 
         try {
-            mailbox.setSyncStatus(MailboxEntity.SyncStatus.INITIALIZING);
-            mailboxRepository.save(mailbox);
+            updateMailbox(mailbox.getId(),
+                    current -> current.setSyncStatus(MailboxEntity.SyncStatus.INITIALIZING));
+
+            int processed;
+            String deltaLink;
+            if (folderShardSyncService.isEnabled()) {
+                // Delta links are kept per folder in mail_folders
+                processed = folderShardSyncService.syncFolders(mailbox, true);
+                deltaLink = null;
+            } else {
+                // Pages are committed one by one; a checkpoint left by an
+                // interrupted run lets us continue after the last committed page
+                String resumeLink = checkpointRepository.findByMailboxId(mailbox.getId())
+                        .map(SyncCheckpointEntity::getCheckpointLink)
+                        .orElse(null);
+
+                boolean bulkLoad = persistenceService.shouldBulkLoad(mailbox);
+                if (bulkLoad) {
+                    log.info("No stored emails for {}, loading pages with COPY", emailAddress);
+                }
 
-            GraphService.DeltaResult result = graphService.performInitialSync(emailAddress);
+                AtomicInteger pageTotal = new AtomicInteger();
+                GraphService.DeltaResult result = concurrencyLimiter.call(emailAddress, () ->
+                        graphService.performInitialSync(emailAddress, resumeLink,
+                                (messages, nextLink) -> pageTotal.addAndGet(
+                                        persistenceService.persistPageWithCheckpoint(
+                                                mailbox, messages, nextLink, bulkLoad))));
 
-            int processed = processMessages(result.messages(), mailbox, true);
+                checkpointRepository.deleteByMailboxId(mailbox.getId());
+                deltaLink = result.deltaLink();
+                processed = pageTotal.get();
+            }
 
-            mailbox.setDeltaLink(result.deltaLink());
-            mailbox.setInitialSyncCompleted(true);
-            mailbox.setSyncStatus(MailboxEntity.SyncStatus.ACTIVE);
-            mailbox.setLastSyncTime(Instant.now());
-            mailbox.setErrorMessage(null);
-            mailbox.setRetryCount(0);
-            mailboxRepository.save(mailbox);
+            updateMailbox(mailbox.getId(), current -> {
+                current.setDeltaLink(deltaLink);
+                current.setInitialSyncCompleted(true);
+                current.setSyncStatus(MailboxEntity.SyncStatus.ACTIVE);
+                current.setLastSyncTime(Instant.now());
+                current.setErrorMessage(null);
+                current.setRetryCount(0);
+            });
 
             log.info("Initial sync completed for {}. Processed {} messages",
                     emailAddress, processed);
@@ -67,15 +103,15 @@ public class EmailSyncService {
         } catch (Exception e) {
             log.error("Failed to perform initial sync for {}: {}",
                     emailAddress, e.getMessage(), e);
-            mailbox.setSyncStatus(MailboxEntity.SyncStatus.ERROR);
-            mailbox.setErrorMessage(e.getMessage());
-            mailbox.setRetryCount(mailbox.getRetryCount() + 1);
-            mailboxRepository.save(mailbox);
+            updateMailbox(mailbox.getId(), current -> {
+                current.setSyncStatus(MailboxEntity.SyncStatus.ERROR);
+                current.setErrorMessage(e.getMessage());
+                current.setRetryCount(current.getRetryCount() + 1);
+            });
             throw new RuntimeException("Initial sync failed", e);
         }
     }
 
-    @Transactional
     public void performDeltaSyncForMailbox(String emailAddress) {
         log.info("Starting delta sync for mailbox: {}", emailAddress);
 
@@ -83,6 +119,11 @@ public class EmailSyncService {
                 .orElseThrow(() -> new IllegalStateException(
                         "Mailbox not found: " + emailAddress));
 
+        if (folderShardSyncService.isEnabled() && mailbox.isInitialSyncCompleted()) {
+            performFolderDeltaSync(mailbox);
+            return;
+        }
+
         if (mailbox.getDeltaLink() == null) {
             log.warn("No delta link found for {}. Performing initial sync instead.",
                     emailAddress);
@@ -91,18 +132,20 @@ public class EmailSyncService {
         }
 
         try {
-            GraphService.DeltaResult result = graphService.performDeltaSync(
-                    mailbox.getDeltaLink());
-
-            int processed = processMessages(result.messages(), mailbox, false);
-
-            if (result.deltaLink() != null) {
-                mailbox.setDeltaLink(result.deltaLink());
-            }
-            mailbox.setLastSyncTime(Instant.now());
-            mailbox.setErrorMessage(null);
-            mailbox.setRetryCount(0);
-            mailboxRepository.save(mailbox);
+            AtomicInteger processed = new AtomicInteger();
+            GraphService.DeltaResult result = concurrencyLimiter.call(emailAddress, () ->
+                    graphService.performDeltaSync(mailbox.getDeltaLink(),
+                            (messages, nextLink) -> processed.addAndGet(
+                                    persistenceService.persistPage(mailbox, messages, false))));
+
+            updateMailbox(mailbox.getId(), current -> {
+                if (result.deltaLink() != null) {
+                    current.setDeltaLink(result.deltaLink());
+                }
+                current.setLastSyncTime(Instant.now());
+                current.setErrorMessage(null);
+                current.setRetryCount(0);
+            });
 
             log.info("Delta sync completed for {}. Processed {} changes",
                     emailAddress, processed);
@@ -110,109 +153,51 @@ public class EmailSyncService {
         } catch (Exception e) {
             log.error("Failed to perform delta sync for {}: {}",
                     emailAddress, e.getMessage(), e);
-            mailbox.setErrorMessage(e.getMessage());
-            mailbox.setRetryCount(mailbox.getRetryCount() + 1);
-
-            if (mailbox.getRetryCount() >= 5) {
-                mailbox.setSyncStatus(MailboxEntity.SyncStatus.ERROR);
-            }
-
-            mailboxRepository.save(mailbox);
+            recordDeltaFailure(mailbox, e);
             throw new RuntimeException("Delta sync failed", e);
         }
     }
 
-    private int processMessages(List<Message> messages, MailboxEntity mailbox,
-                                boolean isInitialSync) {
-        int processed = 0;
-
-        for (Message message : messages) {
-            try {
-                if (message.id == null) {
-                    log.warn("Skipping message with null ID");
-                    continue;
-                }
+    private void performFolderDeltaSync(MailboxEntity mailbox) {
+        try {
+            int processed = folderShardSyncService.syncFolders(mailbox, false);
 
-                Optional<EmailEntity> existing = emailRepository.findByMessageId(message.id);
-
-                if (existing.isPresent()) {
-                    // Update existing message
-                    EmailEntity email = existing.get();
-                    updateEmailFromMessage(email, message);
-                    email.setChangeType(EmailEntity.ChangeType.UPDATED);
-                    emailRepository.save(email);
-                    log.debug("Updated existing email: {}", message.id);
-                } else {
-                    // Create new message
-                    EmailEntity email = createEmailFromMessage(message, mailbox);
-                    email.setChangeType(EmailEntity.ChangeType.CREATED);
-                    emailRepository.save(email);
-                    log.debug("Created new email: {}", message.id);
-                }
+            updateMailbox(mailbox.getId(), current -> {
+                current.setLastSyncTime(Instant.now());
+                current.setErrorMessage(null);
+                current.setRetryCount(0);
+            });
 
-                processed++;
+            log.info("Folder delta sync completed for {}. Processed {} changes",
+                    mailbox.getEmailAddress(), processed);
 
-            } catch (Exception e) {
-                log.error("Failed to process message {}: {}",
-                        message.id, e.getMessage(), e);
-            }
+        } catch (Exception e) {
+            log.error("Failed to perform folder delta sync for {}: {}",
+                    mailbox.getEmailAddress(), e.getMessage(), e);
+            recordDeltaFailure(mailbox, e);
+            throw new RuntimeException("Delta sync failed", e);
         }
-
-        return processed;
     }
 
-    private EmailEntity createEmailFromMessage(Message message, MailboxEntity mailbox) {
-        EmailEntity email = new EmailEntity();
-        email.setMessageId(message.id);
-        email.setMailbox(mailbox);
-        updateEmailFromMessage(email, message);
-        return email;
-    }
-
-    private void updateEmailFromMessage(EmailEntity email, Message message) {
-        email.setSubject(message.subject);
-
-        if (message.from != null && message.from.emailAddress != null
-                && message.from.emailAddress.address != null) {
-            email.setSenderEmail(message.from.emailAddress.address);
-            email.setSenderName(message.from.emailAddress.name);
-        }
-
-        if (message.toRecipients != null && !message.toRecipients.isEmpty()) {
-            String recipients = message.toRecipients.stream()
-                    .filter(r -> r.emailAddress != null && r.emailAddress.address != null)
-                    .map(r -> r.emailAddress.address)
-                    .collect(Collectors.joining(", "));
-            email.setRecipientEmails(recipients);
-        }
-
-        if (message.receivedDateTime != null) {
-            email.setReceivedDateTime(message.receivedDateTime.toInstant());
-        }
+    private void recordDeltaFailure(MailboxEntity mailbox, Exception e) {
+        updateMailbox(mailbox.getId(), current -> {
+            current.setErrorMessage(e.getMessage());
+            current.setRetryCount(current.getRetryCount() + 1);
 
-        email.setHasAttachments(message.hasAttachments != null && message.hasAttachments);
-        email.setRead(message.isRead != null && message.isRead);
-        email.setImportance(message.importance != null ?
-                message.importance.name() : null);
-        email.setBodyPreview(message.bodyPreview);
-
-        if (message.body != null) {
-            email.setBodyContent(message.body.content);
-            email.setBodyContentType(message.body.contentType != null ?
-                    message.body.contentType.name() : null);
-        }
-
-        if (message.categories != null && !message.categories.isEmpty()) {
-            email.setCategories(String.join(", ", message.categories));
-        }
-
-        email.setConversationId(message.conversationId);
+            if (current.getRetryCount() >= 5) {
+                current.setSyncStatus(MailboxEntity.SyncStatus.ERROR);
+            }
+        });
+    }
 
-        // Store raw message data (optional, can be large)
-        try {
-            email.setRawData(objectMapper.writeValueAsString(message));
-        } catch (JsonProcessingException e) {
-            log.warn("Failed to serialize message to JSON: {}", e.getMessage());
-        }
+    // Re-reads the row, so the write neither carries a stale version nor
+    // overwrites what others changed while the sync ran
+    private void updateMailbox(Long mailboxId, Consumer<MailboxEntity> change) {
+        transactionTemplate.executeWithoutResult(status -> {
+            MailboxEntity current = mailboxRepository.findById(mailboxId)
+                    .orElseThrow(() -> new IllegalStateException("Mailbox not found: " + mailboxId));
+            change.accept(current);
+            mailboxRepository.save(current);
+        });
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,220 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.config.MicrosoftGraphProperties;
+import com.markets.emailsync.entity.MailFolderEntity;
+import com.markets.emailsync.entity.MailboxEntity;
+import com.markets.emailsync.repository.MailFolderRepository;
+import com.microsoft.graph.models.MailFolder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Folder-sharded sync: one delta stream per mail folder, stored in
+ * {@code mail_folders}. A folder sync of a mailbox takes one of its sync
+ * slots and runs up to {@code folder-sharding.folders-per-mailbox} folders
+ * in parallel, and a busy folder only re-walks its own delta instead of the
+ * whole mailbox.
+ */
+@Slf4j
+@Service
+public class FolderShardSyncService {
+
+    private final GraphService graphService;
+    private final MailFolderRepository folderRepository;
+    private final EmailPersistenceService persistenceService;
+    private final MailboxConcurrencyLimiter concurrencyLimiter;
+    private final MicrosoftGraphProperties properties;
+    private final ExecutorService executor;
+
+    private final Map<Long, Instant> lastFolderRefresh = new ConcurrentHashMap<>();
+
+    public FolderShardSyncService(
+            GraphService graphService,
+            MailFolderRepository folderRepository,
+            EmailPersistenceService persistenceService,
+            MailboxConcurrencyLimiter concurrencyLimiter,
+            MicrosoftGraphProperties properties) {
+        this.graphService = graphService;
+        this.folderRepository = folderRepository;
+        this.persistenceService = persistenceService;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.properties = properties;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(
+                properties.getDelta().getFolderSharding().getMaxParallelFolders(), runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "folder-sync-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public boolean isEnabled() {
+        return properties.getDelta().getFolderSharding().isEnabled();
+    }
+
+    /**
+     * Syncs every folder of the mailbox: folders without a delta link get
+     * their initial round (resuming from their checkpoint), the others a
+     * delta round. A failing folder does not stop the others; the first
+     * failure is rethrown once all folders have finished.
+     *
+     * @return number of messages processed
+     */
+    public int syncFolders(MailboxEntity mailbox, boolean refreshFolders) {
+        String emailAddress = mailbox.getEmailAddress();
+        List<MailFolderEntity> folders = refreshFolders || isFolderListStale(mailbox)
+                ? refreshFolders(mailbox)
+                : folderRepository.findByMailboxId(mailbox.getId());
+
+        log.info("Syncing {} folders for mailbox: {}", folders.size(), emailAddress);
+
+        // Only an initial sync can bulk load; decided before any folder
+        // writes, so every folder loads the same way
+        boolean bulkLoad = refreshFolders && persistenceService.shouldBulkLoad(mailbox);
+
+        // Each worker drains the shared queue, so a mailbox never occupies
+        // more pool threads than its folder parallelism. The whole round
+        // holds one sync slot, so two rounds never walk the same folder
+        Queue<MailFolderEntity> pending = new ConcurrentLinkedQueue<>(folders);
+        List<RuntimeException> failures = new CopyOnWriteArrayList<>();
+        AtomicInteger processed = new AtomicInteger();
+        int workers = Math.min(folders.size(),
+                properties.getDelta().getFolderSharding().getFoldersPerMailbox());
+
+        concurrencyLimiter.call(emailAddress, () -> {
+            CompletableFuture<?>[] tasks = new CompletableFuture[workers];
+            for (int i = 0; i < workers; i++) {
+                tasks[i] = CompletableFuture.runAsync(() -> {
+                    MailFolderEntity folder;
+                    while ((folder = pending.poll()) != null) {
+                        try {
+                            processed.addAndGet(syncFolder(mailbox, folder, bulkLoad));
+                        } catch (RuntimeException e) {
+                            failures.add(e);
+                        }
+                    }
+                }, executor);
+            }
+            return CompletableFuture.allOf(tasks).join();
+        });
+
+        if (!failures.isEmpty()) {
+            log.warn("{} of {} folders failed to sync for {}",
+                    failures.size(), folders.size(), emailAddress);
+            throw failures.get(0);
+        }
+        return processed.get();
+    }
+
+    private int syncFolder(MailboxEntity mailbox, MailFolderEntity folder, boolean bulkLoad) {
+        AtomicInteger processed = new AtomicInteger();
+
+        try {
+            GraphService.DeltaResult result;
+            if (folder.getDeltaLink() == null) {
+                result = graphService.performFolderInitialSync(mailbox.getEmailAddress(),
+                        folder.getFolderId(), folder.getCheckpointLink(),
+                        (messages, nextLink) -> processed.addAndGet(
+                                persistenceService.persistFolderPageWithCheckpoint(
+                                        mailbox, folder.getId(), messages, nextLink, bulkLoad)));
+            } else {
+                result = graphService.performDeltaSync(folder.getDeltaLink(),
+                        (messages, nextLink) -> processed.addAndGet(
+                                persistenceService.persistPage(mailbox, messages, false)));
+            }
+
+            if (result.deltaLink() != null) {
+                folder.setDeltaLink(result.deltaLink());
+            }
+            folder.setCheckpointLink(null);
+            folder.setLastSyncTime(Instant.now());
+            folder.setErrorMessage(null);
+            folderRepository.save(folder);
+
+            log.debug("Folder {} of {} synced, {} messages processed",
+                    folder.getDisplayName(), mailbox.getEmailAddress(), processed.get());
+            return processed.get();
+
+        } catch (Exception e) {
+            log.error("Failed to sync folder {} of {}: {}",
+                    folder.getDisplayName(), mailbox.getEmailAddress(), e.getMessage());
+            // Keep the checkpoint written by the committed pages
+            folderRepository.findById(folder.getId()).ifPresent(current -> {
+                current.setErrorMessage(e.getMessage());
+                folderRepository.save(current);
+            });
+            throw e;
+        }
+    }
+
+    private boolean isFolderListStale(MailboxEntity mailbox) {
+        Instant refreshed = lastFolderRefresh.get(mailbox.getId());
+        return refreshed == null || refreshed.isBefore(Instant.now().minus(
+                properties.getDelta().getFolderSharding().getFolderRefreshMinutes(),
+                ChronoUnit.MINUTES));
+    }
+
+    /**
+     * Aligns {@code mail_folders} with the folders currently in the mailbox:
+     * new folders are added without a delta link, vanished ones are dropped.
+     */
+    private List<MailFolderEntity> refreshFolders(MailboxEntity mailbox) {
+        List<MailFolder> remoteFolders = graphService.listMailFolders(mailbox.getEmailAddress());
+        Map<String, MailFolderEntity> known = folderRepository.findByMailboxId(mailbox.getId())
+                .stream()
+                .collect(Collectors.toMap(MailFolderEntity::getFolderId, Function.identity()));
+
+        List<MailFolderEntity> folders = new ArrayList<>();
+        for (MailFolder remote : remoteFolders) {
+            MailFolderEntity folder = known.remove(remote.id);
+            if (folder == null) {
+                folder = MailFolderEntity.builder()
+                        .mailboxId(mailbox.getId())
+                        .folderId(remote.id)
+                        .build();
+            }
+            folder.setDisplayName(remote.displayName);
+            folders.add(folderRepository.save(folder));
+        }
+
+        Set<String> removed = known.keySet();
+        if (!removed.isEmpty()) {
+            log.info("Dropping {} folders no longer present in {}",
+                    removed.size(), mailbox.getEmailAddress());
+            folderRepository.deleteAll(known.values());
+        }
+
+        lastFolderRefresh.put(mailbox.getId(), Instant.now());
+        return folders;
+    }
+
+    public void resetFolders(MailboxEntity mailbox) {
+        folderRepository.deleteByMailboxId(mailbox.getId());
+        lastFolderRefresh.remove(mailbox.getId());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -1,34 +1,82 @@
 package com.markets.emailsync.service;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.markets.emailsync.config.GraphThrottlingGovernor;
 import com.markets.emailsync.config.MicrosoftGraphProperties;
+import com.microsoft.graph.content.BatchRequestContent;
+import com.microsoft.graph.content.BatchResponseContent;
+import com.microsoft.graph.content.BatchResponseStep;
+import com.microsoft.graph.http.GraphError;
+import com.microsoft.graph.http.GraphErrorResponse;
 import com.microsoft.graph.http.GraphServiceException;
+import com.microsoft.graph.http.HttpMethod;
+import com.microsoft.graph.http.IHttpRequest;
+import com.microsoft.graph.models.MailFolder;
 import com.microsoft.graph.models.Message;
 import com.microsoft.graph.models.Subscription;
 import com.microsoft.graph.requests.GraphServiceClient;
+import com.microsoft.graph.requests.MailFolderCollectionPage;
 import com.microsoft.graph.requests.MessageCollectionPage;
+import com.microsoft.graph.requests.MessageCollectionRequest;
+import com.microsoft.graph.requests.MessageCollectionRequestBuilder;
 import com.microsoft.graph.requests.MessageDeltaCollectionPage;
+import com.microsoft.graph.requests.MessageDeltaCollectionRequest;
+import com.microsoft.graph.requests.MessageDeltaCollectionRequestBuilder;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @Service
 public class GraphService {
 
+    // Graph rejects $batch payloads with more than 20 requests
+    private static final int MAX_BATCH_SIZE = 20;
+
+    private static final String HEADER_FIELDS = "id,subject,from,toRecipients,receivedDateTime," +
+            "hasAttachments,isRead,importance,bodyPreview,categories,conversationId";
+
     private final GraphServiceClient<okhttp3.Request> graphClient;
     private final MicrosoftGraphProperties properties;
+    private final GraphThrottlingGovernor throttlingGovernor;
+    private final OkHttpClient httpClient;
+    private final DeltaPageDecoder pageDecoder;
+    private final MessageRecordMapper recordMapper;
 
     public GraphService(
             GraphServiceClient<okhttp3.Request> graphClient,
-            MicrosoftGraphProperties properties) {
+            MicrosoftGraphProperties properties,
+            GraphThrottlingGovernor throttlingGovernor,
+            OkHttpClient graphHttpClient,
+            DeltaPageDecoder pageDecoder,
+            MessageRecordMapper recordMapper) {
         this.graphClient = graphClient;
         this.properties = properties;
+        this.throttlingGovernor = throttlingGovernor;
+        this.httpClient = graphHttpClient;
+        this.pageDecoder = pageDecoder;
+        this.recordMapper = recordMapper;
     }
 
     @CircuitBreaker(name = "graphApi", fallbackMethod = "createSubscriptionFallback")
@@ -36,17 +84,9 @@ public class GraphService {
     public Subscription createSubscription(String userEmail) {
         log.info("Creating subscription for mailbox: {}", userEmail);
 
-        Subscription subscription = new Subscription();
-        subscription.changeType = "created,updated,deleted";
-        subscription.notificationUrl = properties.getSubscription().getNotificationUrl();
-        subscription.resource = String.format("users/%s/messages", userEmail);
-        subscription.expirationDateTime = OffsetDateTime.now(ZoneOffset.UTC)
-                .plusHours(properties.getSubscription().getExpirationHours());
-        subscription.clientState = properties.getSubscription().getClientState();
-
         Subscription created = graphClient.subscriptions()
                 .buildRequest()
-                .post(subscription);
+                .post(newSubscription(userEmail));
 
         log.info("Subscription created successfully: {} for mailbox: {}",
                 created.id, userEmail);
@@ -58,13 +98,9 @@ public class GraphService {
     public Subscription renewSubscription(String subscriptionId) {
         log.info("Renewing subscription: {}", subscriptionId);
 
-        Subscription subscription = new Subscription();
-        subscription.expirationDateTime = OffsetDateTime.now(ZoneOffset.UTC)
-                .plusHours(properties.getSubscription().getExpirationHours());
-
         Subscription renewed = graphClient.subscriptions(subscriptionId)
                 .buildRequest()
-                .patch(subscription);
+                .patch(renewalPatch());
 
         log.info("Subscription renewed successfully: {}", subscriptionId);
         return renewed;
@@ -89,56 +125,103 @@ public class GraphService {
         }
     }
 
+    /**
+     * Creates subscriptions for several mailboxes through JSON batching.
+     * Outcomes are keyed by mailbox; a failed step does not fail the others.
+     */
+    @CircuitBreaker(name = "graphApi")
+    public Map<String, BatchOutcome<Subscription>> createSubscriptions(List<String> userEmails) {
+        log.info("Creating {} subscriptions in batches", userEmails.size());
+
+        Map<String, BatchStep> steps = new LinkedHashMap<>();
+        for (String userEmail : userEmails) {
+            steps.put(userEmail, new BatchStep(
+                    graphClient.subscriptions().buildRequest(),
+                    HttpMethod.POST, newSubscription(userEmail)));
+        }
+        return executeBatch(steps, Subscription.class);
+    }
+
+    @CircuitBreaker(name = "graphApi")
+    public Map<String, BatchOutcome<Subscription>> renewSubscriptions(List<String> subscriptionIds) {
+        log.info("Renewing {} subscriptions in batches", subscriptionIds.size());
+
+        Map<String, BatchStep> steps = new LinkedHashMap<>();
+        for (String subscriptionId : subscriptionIds) {
+            steps.put(subscriptionId, new BatchStep(
+                    graphClient.subscriptions(subscriptionId).buildRequest(),
+                    HttpMethod.PATCH, renewalPatch()));
+        }
+        return executeBatch(steps, Subscription.class);
+    }
+
+    @CircuitBreaker(name = "graphApi")
+    public Map<String, BatchOutcome<Void>> deleteSubscriptions(List<String> subscriptionIds) {
+        log.info("Deleting {} subscriptions in batches", subscriptionIds.size());
+
+        Map<String, BatchStep> steps = new LinkedHashMap<>();
+        for (String subscriptionId : subscriptionIds) {
+            steps.put(subscriptionId, new BatchStep(
+                    graphClient.subscriptions(subscriptionId).buildRequest(),
+                    HttpMethod.DELETE, null));
+        }
+
+        Map<String, BatchOutcome<Void>> outcomes = executeBatch(steps, Void.class);
+        // Treat "already deleted" like deleteSubscription does
+        outcomes.replaceAll((subscriptionId, outcome) -> outcome.status() == 404
+                ? new BatchOutcome<>(404, null, null) : outcome);
+        return outcomes;
+    }
+
+    /**
+     * Fetches the bodies of several messages through JSON batching. Keys are
+     * message ids, values the mailbox each message belongs to.
+     */
+    @CircuitBreaker(name = "graphApi")
+    public Map<String, BatchOutcome<Message>> fetchMessageBodies(Map<String, String> mailboxByMessageId) {
+        log.debug("Fetching {} message bodies in batches", mailboxByMessageId.size());
+
+        Map<String, BatchStep> steps = new LinkedHashMap<>();
+        mailboxByMessageId.forEach((messageId, userEmail) -> steps.put(messageId, new BatchStep(
+                graphClient.users(userEmail).messages(messageId).buildRequest().select("id,body"),
+                HttpMethod.GET, null)));
+        return executeBatch(steps, Message.class);
+    }
+
+    /**
+     * Streams the initial delta round page by page into {@code handler}.
+     * When {@code resumeLink} is set the round continues from that page
+     * instead of issuing the filtered bootstrap query.
+     */
     @CircuitBreaker(name = "graphApi", fallbackMethod = "performInitialSyncFallback")
     @Retry(name = "graphApi")
-    public DeltaResult performInitialSync(String userEmail) {
+    public DeltaResult performInitialSync(String userEmail, String resumeLink,
+                                          DeltaPageHandler handler) {
         log.info("Performing initial sync for mailbox: {}", userEmail);
 
-        List<Message> allMessages = new ArrayList<>();
-        String deltaLink = null;
-
         try {
-            // Initial delta query with filter for recent messages
-            OffsetDateTime since = OffsetDateTime.now(ZoneOffset.UTC)
-                    .minusDays(properties.getDelta().getInitialSyncDaysBack());
+            CompletableFuture<DeltaPage> firstPage;
 
-            String filter = String.format("receivedDateTime ge %s",
-                    since.toString());
-
-            MessageDeltaCollectionPage deltaPage = graphClient
-                    .users(userEmail)
-                    .messages()
-                    .delta()
-                    .buildRequest()
-                    .select("id,subject,from,toRecipients,receivedDateTime," +
-                            "hasAttachments,isRead,importance,bodyPreview," +
-                            "body,categories,conversationId")
-                    .top(properties.getDelta().getPageSize())
-                    .filter(filter)
-                    .get();
-
-            while (deltaPage != null) {
-                List<Message> messages = deltaPage.getCurrentPage();
-                allMessages.addAll(messages);
-                log.debug("Fetched {} messages in this page", messages.size());
+            if (resumeLink != null) {
+                log.info("Resuming initial sync for {} from checkpoint", userEmail);
+                firstPage = fetchDeltaPage(resumeLink);
+            } else {
+                firstPage = fetchFirstDeltaPage(initialDeltaRequest(graphClient
+                        .users(userEmail)
+                        .messages()
+                        .delta()));
+            }
 
-                if (deltaPage.deltaLink() != null) {
-                    deltaLink = deltaPage.deltaLink();
-                    log.info("Delta link obtained: {}", deltaLink.substring(0,
-                            Math.min(100, deltaLink.length())));
-                    break;
-                }
+            DeltaResult result = streamDeltaPages(firstPage, handler);
 
-                if (deltaPage.getNextPage() != null) {
-                    deltaPage = deltaPage.getNextPage().buildRequest().get();
-                } else {
-                    break;
-                }
+            if (result.deltaLink() != null) {
+                log.info("Delta link obtained: {}", result.deltaLink().substring(0,
+                        Math.min(100, result.deltaLink().length())));
             }
 
             log.info("Initial sync completed. Retrieved {} messages for: {}",
-                    allMessages.size(), userEmail);
-            return new DeltaResult(allMessages, deltaLink);
+                    result.messageCount(), userEmail);
+            return result;
 
         } catch (Exception e) {
             log.error("Error during initial sync for {}: {}", userEmail, e.getMessage(), e);
@@ -146,40 +229,132 @@ public class GraphService {
         }
     }
 
-    @CircuitBreaker(name = "graphApi", fallbackMethod = "performDeltaSyncFallback")
+    /**
+     * Streams the initial delta round of a single mail folder. Same contract
+     * as {@link #performInitialSync}, scoped to {@code folderId}.
+     */
+    @CircuitBreaker(name = "graphApi")
     @Retry(name = "graphApi")
-    public DeltaResult performDeltaSync(String deltaLink) {
-        log.info("Performing delta sync with delta link");
+    public DeltaResult performFolderInitialSync(String userEmail, String folderId,
+                                                String resumeLink, DeltaPageHandler handler) {
+        log.info("Performing initial sync for folder {} of mailbox: {}", folderId, userEmail);
+
+        try {
+            CompletableFuture<DeltaPage> firstPage = resumeLink != null
+                    ? fetchDeltaPage(resumeLink)
+                    : fetchFirstDeltaPage(initialDeltaRequest(graphClient
+                            .users(userEmail)
+                            .mailFolders(folderId)
+                            .messages()
+                            .delta()));
 
-        List<Message> changedMessages = new ArrayList<>();
-        String newDeltaLink = null;
+            DeltaResult result = streamDeltaPages(firstPage, handler);
+
+            log.info("Initial sync completed for folder {}. Retrieved {} messages for: {}",
+                    folderId, result.messageCount(), userEmail);
+            return result;
+
+        } catch (Exception e) {
+            log.error("Error during initial sync of folder {} for {}: {}",
+                    folderId, userEmail, e.getMessage(), e);
+            throw new GraphSyncException("Failed to perform folder initial sync", e);
+        }
+    }
+
+    /**
+     * Pages through the messages received in [{@code from}, {@code to}) with a
+     * plain list query, used for history older than the delta window. The
+     * handler gets the link of the following page, {@code null} after the
+     * last one; {@code resumeLink} continues a previously stored link.
+     */
+    @CircuitBreaker(name = "graphApi")
+    @Retry(name = "graphApi")
+    public long performHistoricalSync(String userEmail, Instant from, Instant to,
+                                      String resumeLink, DeltaPageHandler handler) {
+        log.debug("Backfilling {} between {} and {}", userEmail, from, to);
 
         try {
-            MessageDeltaCollectionPage deltaPage = graphClient
-                    .customRequest(deltaLink, MessageDeltaCollectionPage.class)
+            MessageCollectionRequest firstRequest = graphClient.users(userEmail)
+                    .messages()
                     .buildRequest()
-                    .get();
+                    .select(messageFields())
+                    .filter(String.format(
+                            "receivedDateTime ge %s and receivedDateTime lt %s", from, to))
+                    .orderBy("receivedDateTime desc")
+                    .top(properties.getDelta().getPageSize());
+
+            DeltaPage page = (resumeLink != null
+                    ? fetchListPage(resumeLink)
+                    : isStreamingDecoder()
+                            ? fetchDecodedPage(firstRequest.getRequestUrl().toString())
+                            : firstRequest.getAsync().thenApply(this::toPage))
+                    .join();
+
+            long messageCount = 0;
+            while (page != null) {
+                handler.onPage(page.messages(), page.nextLink());
+                messageCount += page.messages().size();
+
+                page = page.nextLink() != null ? fetchListPage(page.nextLink()).join() : null;
+            }
+            return messageCount;
 
-            while (deltaPage != null) {
-                List<Message> messages = deltaPage.getCurrentPage();
-                changedMessages.addAll(messages);
-                log.debug("Fetched {} changed messages in this page", messages.size());
+        } catch (Exception e) {
+            log.error("Error during historical sync for {}: {}", userEmail, e.getMessage(), e);
+            throw new GraphSyncException("Failed to perform historical sync", e);
+        }
+    }
 
-                if (deltaPage.deltaLink() != null) {
-                    newDeltaLink = deltaPage.deltaLink();
-                    break;
-                }
+    /**
+     * Lists all mail folders of the mailbox, including nested ones.
+     */
+    @CircuitBreaker(name = "graphApi")
+    @Retry(name = "graphApi")
+    public List<MailFolder> listMailFolders(String userEmail) {
+        log.debug("Listing mail folders for mailbox: {}", userEmail);
 
-                if (deltaPage.getNextPage() != null) {
-                    deltaPage = deltaPage.getNextPage().buildRequest().get();
-                } else {
-                    break;
+        List<MailFolder> folders = new ArrayList<>();
+        collectFolders(userEmail, graphClient.users(userEmail)
+                .mailFolders()
+                .buildRequest()
+                .select("id,displayName,childFolderCount")
+                .top(100)
+                .get(), folders);
+
+        log.debug("Found {} mail folders for {}", folders.size(), userEmail);
+        return folders;
+    }
+
+    private void collectFolders(String userEmail, MailFolderCollectionPage page,
+                                List<MailFolder> folders) {
+        while (page != null) {
+            for (MailFolder folder : page.getCurrentPage()) {
+                folders.add(folder);
+                if (folder.childFolderCount != null && folder.childFolderCount > 0) {
+                    collectFolders(userEmail, graphClient.users(userEmail)
+                            .mailFolders(folder.id)
+                            .childFolders()
+                            .buildRequest()
+                            .select("id,displayName,childFolderCount")
+                            .top(100)
+                            .get(), folders);
                 }
             }
+            page = page.getNextPage() != null ? page.getNextPage().buildRequest().get() : null;
+        }
+    }
+
+    @CircuitBreaker(name = "graphApi", fallbackMethod = "performDeltaSyncFallback")
+    @Retry(name = "graphApi")
+    public DeltaResult performDeltaSync(String deltaLink, DeltaPageHandler handler) {
+        log.info("Performing delta sync with delta link");
+
+        try {
+            DeltaResult result = streamDeltaPages(fetchDeltaPage(deltaLink), handler);
 
             log.info("Delta sync completed. Retrieved {} changed messages",
-                    changedMessages.size());
-            return new DeltaResult(changedMessages, newDeltaLink);
+                    result.messageCount());
+            return result;
 
         } catch (Exception e) {
             log.error("Error during delta sync: {}", e.getMessage(), e);
@@ -187,6 +362,289 @@ public class GraphService {
         }
     }
 
+    /**
+     * Hands each page to the handler while up to {@code delta.prefetch-depth}
+     * following pages are already being fetched through the async request
+     * path. Only the current page and the prefetched ones are referenced.
+     */
+    private DeltaResult streamDeltaPages(CompletableFuture<DeltaPage> firstPage,
+                                         DeltaPageHandler handler) {
+        int prefetchDepth = properties.getDelta().getPrefetchDepth();
+        Deque<CompletableFuture<DeltaPage>> pending = new ArrayDeque<>();
+        CompletableFuture<DeltaPage> tail = firstPage;
+        pending.add(tail);
+
+        long messageCount = 0;
+        String deltaLink = null;
+
+        try {
+            while (!pending.isEmpty()) {
+                DeltaPage deltaPage = pending.poll().join();
+                if (deltaPage == null) {
+                    break;
+                }
+
+                // Keep the pipeline full before handing this page to the writer
+                while (pending.size() < prefetchDepth) {
+                    tail = tail.thenCompose(this::fetchNextPage);
+                    pending.add(tail);
+                }
+
+                List<MessageRecord> messages = deltaPage.messages();
+                handler.onPage(messages, deltaPage.nextLink());
+                messageCount += messages.size();
+                log.debug("Processed {} messages in this page", messages.size());
+
+                if (deltaPage.deltaLink() != null) {
+                    deltaLink = deltaPage.deltaLink();
+                    break;
+                }
+
+                if (pending.isEmpty()) {
+                    tail = tail.thenCompose(this::fetchNextPage);
+                    pending.add(tail);
+                }
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+        }
+
+        return new DeltaResult(messageCount, deltaLink);
+    }
+
+    private CompletableFuture<DeltaPage> fetchNextPage(DeltaPage page) {
+        if (page == null || page.deltaLink() != null || page.nextLink() == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return fetchDeltaPage(page.nextLink());
+    }
+
+    private CompletableFuture<DeltaPage> fetchFirstDeltaPage(MessageDeltaCollectionRequest request) {
+        return isStreamingDecoder()
+                ? fetchDecodedPage(request.getRequestUrl().toString())
+                : request.getAsync().thenApply(this::toPage);
+    }
+
+    private CompletableFuture<DeltaPage> fetchDeltaPage(String link) {
+        return isStreamingDecoder()
+                ? fetchDecodedPage(link)
+                : deltaRequest(link).buildRequest().getAsync().thenApply(this::toPage);
+    }
+
+    private CompletableFuture<DeltaPage> fetchListPage(String link) {
+        return isStreamingDecoder()
+                ? fetchDecodedPage(link)
+                : new MessageCollectionRequestBuilder(link, graphClient, Collections.emptyList())
+                        .buildRequest().getAsync().thenApply(this::toPage);
+    }
+
+    private boolean isStreamingDecoder() {
+        return properties.getDelta().isStreamingDecoder();
+    }
+
+    /**
+     * Fetches a page with a plain GET on the shared transport and decodes it
+     * while it is read from the socket, bypassing the SDK serializer. An
+     * error response fails the page with the {@link GraphServiceException}
+     * the SDK would have thrown, status, headers and Graph error code
+     * included, so throttling and an expired delta link (410
+     * syncStateNotFound) look the same on both paths.
+     */
+    private CompletableFuture<DeltaPage> fetchDecodedPage(String url) {
+        CompletableFuture<DeltaPage> page = new CompletableFuture<>();
+        Call call = httpClient.newCall(new Request.Builder()
+                .url(url)
+                .header("Accept", "application/json")
+                .get()
+                .build());
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call failedCall, IOException e) {
+                page.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call completedCall, Response response) {
+                try (response) {
+                    if (!response.isSuccessful()) {
+                        page.completeExceptionally(toServiceException(url, response));
+                        return;
+                    }
+                    page.complete(pageDecoder.decode(response.body().byteStream()));
+                } catch (Exception e) {
+                    page.completeExceptionally(e);
+                }
+            }
+        });
+
+        // Prefetched pages are cancelled when the stream stops early
+        page.whenComplete((result, error) -> {
+            if (page.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return page;
+    }
+
+    private GraphServiceException toServiceException(String url, Response response) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (String name : response.headers().names()) {
+            headers.put(name, String.join(", ", response.headers(name)));
+        }
+        String body = response.body() != null ? response.body().string() : "";
+        GraphErrorResponse error = null;
+        try {
+            error = graphClient.getSerializer().deserializeObject(body, GraphErrorResponse.class);
+        } catch (RuntimeException e) {
+            log.debug("Graph error response could not be parsed: {}", e.getMessage());
+        }
+        if (error == null || error.error == null) {
+            error = new GraphErrorResponse();
+            error.error = new GraphError();
+            error.error.code = String.valueOf(response.code());
+            error.error.message = response.message();
+        }
+        return GraphServiceException.createFromResponse(url, "GET", List.of(), null, headers,
+                response.message(), response.code(), error, false);
+    }
+
+    private DeltaPage toPage(MessageDeltaCollectionPage page) {
+        return new DeltaPage(toRecords(page.getCurrentPage()),
+                page.getNextPage() != null ? page.getNextPage().getRequestUrl() : null,
+                page.deltaLink());
+    }
+
+    private DeltaPage toPage(MessageCollectionPage page) {
+        return new DeltaPage(toRecords(page.getCurrentPage()),
+                page.getNextPage() != null ? page.getNextPage().getRequestUrl() : null,
+                null);
+    }
+
+    private List<MessageRecord> toRecords(List<Message> messages) {
+        List<MessageRecord> records = new ArrayList<>(messages.size());
+        messages.forEach(message -> records.add(recordMapper.fromMessage(message)));
+        return records;
+    }
+
+    // Initial delta query with filter for recent messages
+    private MessageDeltaCollectionRequest initialDeltaRequest(
+            MessageDeltaCollectionRequestBuilder builder) {
+        OffsetDateTime since = OffsetDateTime.now(ZoneOffset.UTC)
+                .minusDays(properties.getDelta().getInitialSyncDaysBack());
+
+        String filter = String.format("receivedDateTime ge %s",
+                since.toString());
+
+        return builder
+                .buildRequest()
+                .select(messageFields())
+                .top(properties.getDelta().getPageSize())
+                .filter(filter);
+    }
+
+    // Bodies are left to the hydration queue in headers-first mode
+    private String messageFields() {
+        return properties.getHydration().isEnabled() ? HEADER_FIELDS : HEADER_FIELDS + ",body";
+    }
+
+    private MessageDeltaCollectionRequestBuilder deltaRequest(String link) {
+        return new MessageDeltaCollectionRequestBuilder(link, graphClient,
+                Collections.emptyList());
+    }
+
+    private Subscription newSubscription(String userEmail) {
+        Subscription subscription = new Subscription();
+        subscription.changeType = "created,updated,deleted";
+        subscription.notificationUrl = properties.getSubscription().getNotificationUrl();
+        subscription.resource = String.format("users/%s/messages", userEmail);
+        subscription.expirationDateTime = OffsetDateTime.now(ZoneOffset.UTC)
+                .plusHours(properties.getSubscription().getExpirationHours());
+        subscription.clientState = properties.getSubscription().getClientState();
+        return subscription;
+    }
+
+    private Subscription renewalPatch() {
+        Subscription subscription = new Subscription();
+        subscription.expirationDateTime = OffsetDateTime.now(ZoneOffset.UTC)
+                .plusHours(properties.getSubscription().getExpirationHours());
+        return subscription;
+    }
+
+    /**
+     * Sends the steps as $batch requests of at most {@value #MAX_BATCH_SIZE}
+     * and maps every step response back to its key. A batch call that fails
+     * as a whole is reported as a failure for each of its steps.
+     */
+    private <T> Map<String, BatchOutcome<T>> executeBatch(Map<String, BatchStep> steps,
+                                                          Class<T> resultType) {
+        Map<String, BatchOutcome<T>> outcomes = new LinkedHashMap<>();
+        List<Map.Entry<String, BatchStep>> entries = new ArrayList<>(steps.entrySet());
+
+        for (int from = 0; from < entries.size(); from += MAX_BATCH_SIZE) {
+            List<Map.Entry<String, BatchStep>> chunk = entries.subList(from,
+                    Math.min(from + MAX_BATCH_SIZE, entries.size()));
+
+            BatchRequestContent content = new BatchRequestContent();
+            Map<String, String> keysByStepId = new LinkedHashMap<>();
+            Map<String, String> mailboxesByStepId = new HashMap<>();
+            for (Map.Entry<String, BatchStep> entry : chunk) {
+                BatchStep step = entry.getValue();
+                String stepId = content.addBatchRequestStep(
+                        step.request(), step.method(), step.body());
+                keysByStepId.put(stepId, entry.getKey());
+                mailboxesByStepId.put(stepId,
+                        GraphThrottlingGovernor.mailboxOf(step.request().getRequestUrl()));
+            }
+
+            try {
+                BatchResponseContent response = graphClient.batch()
+                        .buildRequest()
+                        .post(content);
+
+                keysByStepId.forEach((stepId, key) -> outcomes.put(key,
+                        toOutcome(response.getResponseById(stepId), mailboxesByStepId.get(stepId),
+                                resultType)));
+
+            } catch (Exception e) {
+                log.error("Batch request with {} steps failed: {}", chunk.size(), e.getMessage());
+                int status = e instanceof GraphServiceException gse ? gse.getResponseCode() : 0;
+                keysByStepId.values().forEach(key ->
+                        outcomes.put(key, new BatchOutcome<>(status, null, e.getMessage())));
+            }
+        }
+
+        long failed = outcomes.values().stream().filter(o -> !o.isSuccess()).count();
+        log.info("Batch completed: {} steps, {} failed", outcomes.size(), failed);
+        return outcomes;
+    }
+
+    // A step's throttling is booked against its mailbox, so one hot mailbox
+    // does not slow down the whole tenant
+    private <T> BatchOutcome<T> toOutcome(BatchResponseStep<JsonElement> step, String mailbox,
+                                          Class<T> resultType) {
+        if (step == null) {
+            return new BatchOutcome<>(0, null, "No response returned for batch step");
+        }
+
+        throttlingGovernor.recordResponse(mailbox, step.status,
+                step.headers != null ? step.headers.get("Retry-After") : null, null);
+
+        if (step.status >= 200 && step.status < 300) {
+            T result = resultType == Void.class || step.body == null
+                    ? null : step.getDeserializedBody(resultType);
+            return new BatchOutcome<>(step.status, result, null);
+        }
+
+        String error = "HTTP " + step.status;
+        if (step.body != null && step.body.isJsonObject()
+                && step.body.getAsJsonObject().has("error")) {
+            JsonObject graphError = step.body.getAsJsonObject().getAsJsonObject("error");
+            error = graphError.has("message") ? graphError.get("message").getAsString() : error;
+        }
+        return new BatchOutcome<>(step.status, null, error);
+    }
+
     // Fallback methods
     private Subscription createSubscriptionFallback(String userEmail, Exception e) {
         log.error("Failed to create subscription for {} after retries: {}",
@@ -194,19 +652,39 @@ public class GraphService {
         throw new GraphSyncException("Subscription creation failed", e);
     }
 
-    private DeltaResult performInitialSyncFallback(String userEmail, Exception e) {
+    private DeltaResult performInitialSyncFallback(String userEmail, String resumeLink,
+                                                   DeltaPageHandler handler, Exception e) {
         log.error("Failed to perform initial sync for {} after retries: {}",
                 userEmail, e.getMessage());
         throw new GraphSyncException("Initial sync failed", e);
     }
 
-    private DeltaResult performDeltaSyncFallback(String deltaLink, Exception e) {
+    private DeltaResult performDeltaSyncFallback(String deltaLink, DeltaPageHandler handler,
+                                                 Exception e) {
         log.error("Failed to perform delta sync after retries: {}", e.getMessage());
         throw new GraphSyncException("Delta sync failed", e);
     }
 
+    // Receives each delta page as soon as it has been fetched
+    @FunctionalInterface
+    public interface DeltaPageHandler {
+        void onPage(List<MessageRecord> messages, String nextLink);
+    }
+
     // Result wrapper
-    public record DeltaResult(List<Message> messages, String deltaLink) {}
+    public record DeltaResult(long messageCount, String deltaLink) {}
+
+    // One page of a message collection, however it was decoded
+    public record DeltaPage(List<MessageRecord> messages, String nextLink, String deltaLink) {}
+
+    // Per-step result of a batched call; error is null on success
+    public record BatchOutcome<T>(int status, T result, String error) {
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    private record BatchStep(IHttpRequest request, HttpMethod method, Object body) {}
 
     // Custom exception
     public static class GraphSyncException extends RuntimeException {
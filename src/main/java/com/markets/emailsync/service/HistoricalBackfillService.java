@@ -0,0 +1,246 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.config.GraphThrottlingGovernor;
+import com.markets.emailsync.config.MicrosoftGraphProperties;
+import com.markets.emailsync.entity.BackfillSliceEntity;
+import com.markets.emailsync.entity.MailboxEntity;
+import com.markets.emailsync.repository.BackfillSliceRepository;
+import com.markets.emailsync.repository.MailboxRepository;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports mail older than {@code delta.initial-sync-days-back} once a mailbox
+ * is live. The history is cut into time slices stored in
+ * {@code backfill_slices}, newest first, which are fetched in parallel on a
+ * small low-priority pool with their own request budget. A slice pauses while
+ * Graph pushes back on its mailbox and resumes from its stored page link.
+ * Nodes share the slices: each one is claimed under a lease that every page
+ * renews, and a slice whose lease runs out, because its node stopped, is
+ * picked up again by any node.
+ */
+@Slf4j
+@Service
+public class HistoricalBackfillService {
+
+    private final GraphService graphService;
+    private final EmailPersistenceService persistenceService;
+    private final MailboxRepository mailboxRepository;
+    private final BackfillSliceRepository sliceRepository;
+    private final GraphThrottlingGovernor throttlingGovernor;
+    private final MicrosoftGraphProperties properties;
+    private final RateLimiter rateLimiter;
+    private final ExecutorService executor;
+
+    private final Set<Long> runningSlices = ConcurrentHashMap.newKeySet();
+    // Lease owner for claimed slices
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName();
+
+    public HistoricalBackfillService(
+            GraphService graphService,
+            EmailPersistenceService persistenceService,
+            MailboxRepository mailboxRepository,
+            BackfillSliceRepository sliceRepository,
+            GraphThrottlingGovernor throttlingGovernor,
+            MicrosoftGraphProperties properties) {
+        this.graphService = graphService;
+        this.persistenceService = persistenceService;
+        this.mailboxRepository = mailboxRepository;
+        this.sliceRepository = sliceRepository;
+        this.throttlingGovernor = throttlingGovernor;
+        this.properties = properties;
+
+        MicrosoftGraphProperties.BackfillProperties backfill = properties.getBackfill();
+        this.rateLimiter = RateLimiter.of("graphBackfill", RateLimiterConfig.custom()
+                .limitForPeriod(backfill.getRequestsPerSecond())
+                .limitRefreshPeriod(Duration.ofSeconds(1))
+                .timeoutDuration(Duration.ofMinutes(5))
+                .build());
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(backfill.getMaxParallelSlices(), runnable -> {
+            Thread thread = new Thread(runnable, "backfill-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${microsoft.graph.backfill.poll-interval-ms:60000}")
+    public void runBackfill() {
+        MicrosoftGraphProperties.BackfillProperties backfill = properties.getBackfill();
+        if (!backfill.isEnabled()) {
+            return;
+        }
+
+        try {
+            planSlices();
+
+            int freeSlots = backfill.getMaxParallelSlices() - runningSlices.size();
+            if (freeSlots <= 0) {
+                return;
+            }
+
+            List<BackfillSliceEntity> slices = sliceRepository.findClaimable(
+                    Instant.now(), PageRequest.of(0, freeSlots));
+            for (BackfillSliceEntity slice : slices) {
+                if (runningSlices.add(slice.getId())) {
+                    executor.submit(() -> {
+                        try {
+                            processSlice(slice.getId());
+                        } finally {
+                            runningSlices.remove(slice.getId());
+                        }
+                    });
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error scheduling historical backfill: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates the slices of every live mailbox that has none yet, covering
+     * {@code history-days} before the start of the delta window.
+     */
+    private void planSlices() {
+        MicrosoftGraphProperties.BackfillProperties backfill = properties.getBackfill();
+
+        for (MailboxEntity mailbox : mailboxRepository.findBySyncStatus(
+                MailboxEntity.SyncStatus.ACTIVE)) {
+            if (!mailbox.isInitialSyncCompleted()
+                    || sliceRepository.existsByMailboxId(mailbox.getId())) {
+                continue;
+            }
+
+            // The initial sync reached back from the moment it ran, which is
+            // earlier than now. Rounding up to the next midnight overlaps its
+            // window instead of leaving a gap; messages it already stored are
+            // skipped
+            Instant windowStart = Instant.now()
+                    .minus(properties.getDelta().getInitialSyncDaysBack(), ChronoUnit.DAYS)
+                    .truncatedTo(ChronoUnit.DAYS)
+                    .plus(1, ChronoUnit.DAYS);
+            Instant historyStart = windowStart.minus(backfill.getHistoryDays(), ChronoUnit.DAYS);
+
+            List<BackfillSliceEntity> slices = new ArrayList<>();
+            for (Instant end = windowStart; end.isAfter(historyStart); ) {
+                Instant start = end.minus(backfill.getSliceDays(), ChronoUnit.DAYS);
+                if (start.isBefore(historyStart)) {
+                    start = historyStart;
+                }
+                slices.add(BackfillSliceEntity.builder()
+                        .mailboxId(mailbox.getId())
+                        .sliceStart(start)
+                        .sliceEnd(end)
+                        .status(BackfillSliceEntity.Status.PENDING)
+                        .build());
+                end = start;
+            }
+
+            sliceRepository.saveAll(slices);
+            log.info("Planned {} backfill slices for {} back to {}",
+                    slices.size(), mailbox.getEmailAddress(), historyStart);
+        }
+    }
+
+    private void processSlice(Long sliceId) {
+        BackfillSliceEntity pending = sliceRepository.findById(sliceId).orElse(null);
+        MailboxEntity mailbox = pending != null
+                ? mailboxRepository.findById(pending.getMailboxId()).orElse(null) : null;
+        if (mailbox == null || mailbox.getSyncStatus() != MailboxEntity.SyncStatus.ACTIVE) {
+            return;
+        }
+        String emailAddress = mailbox.getEmailAddress();
+
+        // Live sync first: leave the slice pending while Graph pushes back
+        if (throttlingGovernor.isUnderPressure(emailAddress)) {
+            log.debug("Deferring backfill slice {} of {}, Graph is throttling",
+                    sliceId, emailAddress);
+            return;
+        }
+
+        Instant now = Instant.now();
+        if (sliceRepository.claim(sliceId, nodeId, now, leaseUntil(now)) == 0) {
+            log.debug("Backfill slice {} of {} was claimed by another node", sliceId, emailAddress);
+            return;
+        }
+        BackfillSliceEntity slice = sliceRepository.findById(sliceId).orElseThrow();
+
+        try {
+            rateLimiter.acquirePermission();
+            long fetched = graphService.performHistoricalSync(emailAddress,
+                    slice.getSliceStart(), slice.getSliceEnd(), slice.getNextLink(),
+                    (messages, nextLink) -> {
+                        persistenceService.persistBackfillPage(mailbox, sliceId, messages, nextLink);
+                        renewLease(sliceId);
+                        if (nextLink != null) {
+                            awaitBudget(emailAddress, sliceId);
+                        }
+                    });
+
+            sliceRepository.complete(sliceId, nodeId);
+
+            log.info("Backfill slice {} - {} of {} completed, {} messages fetched",
+                    slice.getSliceStart(), slice.getSliceEnd(), emailAddress, fetched);
+
+        } catch (Exception e) {
+            log.warn("Backfill slice {} of {} failed: {}", sliceId, emailAddress, e.getMessage());
+            sliceRepository.release(sliceId, nodeId,
+                    slice.getAttempts() >= properties.getBackfill().getMaxAttempts()
+                            ? BackfillSliceEntity.Status.FAILED
+                            : BackfillSliceEntity.Status.PENDING,
+                    e.getMessage());
+        }
+    }
+
+    // Stops the slice once another node has taken it over
+    private void renewLease(Long sliceId) {
+        if (sliceRepository.renewLease(sliceId, nodeId, leaseUntil(Instant.now())) == 0) {
+            throw new IllegalStateException("Lease on backfill slice " + sliceId + " was lost");
+        }
+    }
+
+    private Instant leaseUntil(Instant now) {
+        return now.plusMillis(properties.getBackfill().getLeaseMs());
+    }
+
+    /**
+     * Waits for the backfill budget and for Graph pressure on the mailbox to
+     * ease before the next page is requested.
+     */
+    private void awaitBudget(String emailAddress, Long sliceId) {
+        rateLimiter.acquirePermission();
+        try {
+            while (throttlingGovernor.isUnderPressure(emailAddress)) {
+                Thread.sleep(properties.getThrottling().getDefaultRetryAfterMs());
+                renewLease(sliceId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Backfill interrupted", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
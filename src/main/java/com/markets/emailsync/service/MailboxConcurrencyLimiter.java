@@ -0,0 +1,49 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.config.MicrosoftGraphProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caps how many Graph sync streams run at the same time for one mailbox,
+ * whichever path started them (startup, webhook, admin).
+ */
+@Slf4j
+@Component
+public class MailboxConcurrencyLimiter {
+
+    private final MicrosoftGraphProperties.InitializationProperties settings;
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    public MailboxConcurrencyLimiter(MicrosoftGraphProperties properties) {
+        this.settings = properties.getInitialization();
+    }
+
+    public <T> T call(String emailAddress, Supplier<T> work) {
+        Semaphore semaphore = permits.computeIfAbsent(emailAddress.toLowerCase(),
+                key -> new Semaphore(settings.getPerMailboxConcurrency(), true));
+
+        try {
+            if (!semaphore.tryAcquire(settings.getMailboxSlotTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException(
+                        "Timed out waiting for a sync slot for mailbox: " + emailAddress);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(
+                    "Interrupted while waiting for a sync slot for mailbox: " + emailAddress, e);
+        }
+
+        try {
+            return work.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+}
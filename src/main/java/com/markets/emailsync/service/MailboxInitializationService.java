@@ -1,60 +1,66 @@
 package com.markets.emailsync.service;
 
-import com.markets.emailsync.config.MicrosoftGraphProperties;
 import com.markets.emailsync.entity.MailboxEntity;
 import com.markets.emailsync.repository.MailboxRepository;
+import com.markets.emailsync.repository.SyncCheckpointRepository;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.boot.context.event.ApplicationReadyEvent;
-import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
-
-import java.util.List;
 
 @Slf4j
 @Service
 public class MailboxInitializationService {
 
     private final MailboxRepository mailboxRepository;
-    private final MicrosoftGraphProperties properties;
+    private final SyncCheckpointRepository checkpointRepository;
     private final EmailSyncService emailSyncService;
     private final SubscriptionService subscriptionService;
+    private final FolderShardSyncService folderShardSyncService;
 
     public MailboxInitializationService(
             MailboxRepository mailboxRepository,
-            MicrosoftGraphProperties properties,
+            SyncCheckpointRepository checkpointRepository,
             EmailSyncService emailSyncService,
-            SubscriptionService subscriptionService) {
+            SubscriptionService subscriptionService,
+            FolderShardSyncService folderShardSyncService) {
         this.mailboxRepository = mailboxRepository;
-        this.properties = properties;
+        this.checkpointRepository = checkpointRepository;
         this.emailSyncService = emailSyncService;
         this.subscriptionService = subscriptionService;
+        this.folderShardSyncService = folderShardSyncService;
     }
 
-    @EventListener(ApplicationReadyEvent.class)
-    @Transactional
-    public void initializeMailboxes() {
-        log.info("Initializing mailboxes from configuration");
-
-        List<String> configuredMailboxes = properties.getMailboxes();
-        log.info("Found {} configured mailboxes", configuredMailboxes.size());
+    /**
+     * Not transactional on purpose: the mailbox row must be committed before
+     * the initial sync writes its pages in their own transactions.
+     */
+    public void initializeMailbox(String emailAddress) {
+        log.info("Initializing mailbox: {}", emailAddress);
 
-        for (String emailAddress : configuredMailboxes) {
-            try {
-                initializeMailbox(emailAddress);
-            } catch (Exception e) {
-                log.error("Failed to initialize mailbox {}: {}",
-                        emailAddress, e.getMessage(), e);
-            }
+        if (!syncMailbox(emailAddress)) {
+            return;
         }
 
-        log.info("Mailbox initialization completed");
-    }
+        try {
+            // Step 2: Create subscription
+            log.info("Creating subscription for {}", emailAddress);
+            subscriptionService.createSubscriptionForMailbox(emailAddress);
 
-    @Transactional
-    public void initializeMailbox(String emailAddress) {
-        log.info("Initializing mailbox: {}", emailAddress);
+            log.info("Mailbox {} initialized successfully", emailAddress);
+
+        } catch (Exception e) {
+            log.error("Failed to initialize mailbox {}: {}",
+                    emailAddress, e.getMessage(), e);
+            markFailed(emailAddress, e.getMessage());
+            throw new RuntimeException("Mailbox initialization failed", e);
+        }
+    }
 
+    /**
+     * Registers the mailbox if needed and performs its initial sync.
+     *
+     * @return false when the mailbox is already initialized and active
+     */
+    public boolean syncMailbox(String emailAddress) {
         MailboxEntity mailbox = mailboxRepository.findByEmailAddress(emailAddress)
                 .orElseGet(() -> {
                     MailboxEntity newMailbox = MailboxEntity.builder()
@@ -67,7 +73,7 @@ public class MailboxInitializationService {
         if (mailbox.getSyncStatus() == MailboxEntity.SyncStatus.ACTIVE
                 && mailbox.isInitialSyncCompleted()) {
             log.info("Mailbox {} is already initialized and active", emailAddress);
-            return;
+            return false;
         }
 
         try {
@@ -76,26 +82,24 @@ public class MailboxInitializationService {
                 log.info("Performing initial sync for {}", emailAddress);
                 emailSyncService.performInitialSyncForMailbox(emailAddress);
             }
-
-            // Step 2: Create subscription
-            log.info("Creating subscription for {}", emailAddress);
-            subscriptionService.createSubscriptionForMailbox(emailAddress);
-
-            log.info("Mailbox {} initialized successfully", emailAddress);
+            return true;
 
         } catch (Exception e) {
-            log.error("Failed to initialize mailbox {}: {}",
-                    emailAddress, e.getMessage(), e);
+            log.error("Failed to sync mailbox {}: {}", emailAddress, e.getMessage(), e);
+            markFailed(emailAddress, e.getMessage());
+            throw new RuntimeException("Mailbox initialization failed", e);
+        }
+    }
 
+    public void markFailed(String emailAddress, String errorMessage) {
+        // Reload, the sync may have committed a newer version meanwhile
+        mailboxRepository.findByEmailAddress(emailAddress).ifPresent(mailbox -> {
             mailbox.setSyncStatus(MailboxEntity.SyncStatus.ERROR);
-            mailbox.setErrorMessage(e.getMessage());
+            mailbox.setErrorMessage(errorMessage);
             mailboxRepository.save(mailbox);
-
-            throw new RuntimeException("Mailbox initialization failed", e);
-        }
+        });
     }
 
-    @Transactional
     public void reinitializeMailbox(String emailAddress) {
         log.info("Re-initializing mailbox: {}", emailAddress);
 
@@ -113,7 +117,10 @@ public class MailboxInitializationService {
             }
         }
 
-        // Reset mailbox state
+        // Reset mailbox state, reloading after the subscription change above
+        mailbox = mailboxRepository.findByEmailAddress(emailAddress).orElseThrow();
+        checkpointRepository.deleteByMailboxId(mailbox.getId());
+        folderShardSyncService.resetFolders(mailbox);
         mailbox.setDeltaLink(null);
         mailbox.setSubscriptionId(null);
         mailbox.setSubscriptionExpiration(null);
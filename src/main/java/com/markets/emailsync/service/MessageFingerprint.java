@@ -0,0 +1,66 @@
+package com.markets.emailsync.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 64-bit fingerprint of the fields of a {@link MessageRecord} that are
+ * mapped onto an {@code EmailEntity}. Stored with the row, it lets a write
+ * of an unchanged message be skipped: equal fingerprints mean the change
+ * carries exactly what was applied last time. Only ever compared with the
+ * same row's previous value, so 64 bits leave collisions out of reach.
+ */
+final class MessageFingerprint {
+
+    private static final byte FIELD_END = 0x1f;
+    private static final byte NULL_FIELD = 0x00;
+
+    private MessageFingerprint() {
+    }
+
+    static long of(MessageRecord message) {
+        MessageDigest digest = sha256();
+        update(digest, message.subject());
+        update(digest, message.senderEmail());
+        update(digest, message.senderName());
+        update(digest, message.recipientEmails());
+        update(digest, message.receivedDateTime() != null
+                ? message.receivedDateTime().toString() : null);
+        update(digest, message.hasAttachments() ? "1" : "0");
+        update(digest, message.isRead() ? "1" : "0");
+        update(digest, message.importance());
+        update(digest, message.bodyPreview());
+        update(digest, message.hasBody() ? "1" : "0");
+        if (message.hasBody()) {
+            update(digest, message.bodyContent());
+            update(digest, message.bodyContentType());
+        }
+        update(digest, message.categories());
+        update(digest, message.conversationId());
+
+        byte[] hash = digest.digest();
+        long fingerprint = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            fingerprint = (fingerprint << 8) | (hash[i] & 0xff);
+        }
+        return fingerprint;
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value == null) {
+            digest.update(NULL_FIELD);
+        } else {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update(FIELD_END);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.markets.emailsync.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size Bloom filter over message ids. Adding is lock-free, so page
+ * transactions on several threads can record their writes concurrently.
+ * Bits are never cleared: {@link #mightContain} is exact for "no" and may
+ * be wrong for "yes".
+ */
+final class MessageIdBloomFilter {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    MessageIdBloomFilter(long expectedEntries, double falsePositiveRate) {
+        long entries = Math.max(1, expectedEntries);
+        long bits = (long) Math.ceil(-entries * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / entries * Math.log(2)));
+    }
+
+    void add(String messageId) {
+        long hash = hash(messageId);
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ FNV_PRIME);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((words.get(word) & mask) == 0) {
+                words.getAndAccumulate(word, mask, (current, set) -> current | set);
+            }
+        }
+    }
+
+    boolean mightContain(String messageId) {
+        long hash = hash(messageId);
+        long h1 = mix(hash);
+        long h2 = mix(hash ^ FNV_PRIME);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long sizeInBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    // FNV-1a over the UTF-8 bytes; ids are long, so all of them count
+    private static long hash(String messageId) {
+        long hash = FNV_OFFSET;
+        for (byte b : messageId.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // MurmurHash3 finalizer, spreads FNV's weak low bits
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb93fe53a87cdL;
+        value ^= value >>> 33;
+        return value;
+    }
+}
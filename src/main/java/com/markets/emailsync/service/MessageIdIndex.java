@@ -0,0 +1,241 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.config.EmailPersistenceProperties;
+import com.markets.emailsync.repository.EmailRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-node index of stored message ids, so pages of mostly new mail skip
+ * most existence lookups. A Bloom filter answers "not stored"; a bounded set
+ * of recently written ids answers "stored"; anything else still goes to the
+ * database. The filter is loaded from {@code emails} in keyset pages by id
+ * after startup, every id is looked up until that is done, and afterwards
+ * it follows new rows, also those written by other nodes. Ids can commit
+ * after higher ones, so each refresh reads the last
+ * {@code overlap-rows} below its cursor again.
+ *
+ * <p>"Not stored" is therefore not exact: a row another node wrote since
+ * the last refresh, or one that committed further behind the cursor than
+ * the overlap, is missed. Correctness rests on the writers, which treat a
+ * duplicate insert as an update; the index only saves lookups.
+ */
+@Slf4j
+@Service
+public class MessageIdIndex {
+
+    // Keyset pages per refresh, so the initial load does not hold the
+    // shared scheduler thread
+    private static final int MAX_BATCHES_PER_RUN = 20;
+
+    private final EmailRepository emailRepository;
+    private final EmailPersistenceProperties.MessageIndexProperties settings;
+    private final Map<String, Boolean> recent;
+    private final Counter skippedCounter;
+    private final Counter lookedUpCounter;
+    private volatile MessageIdBloomFilter filter;
+    private volatile boolean ready;
+    // Only touched by the refresh job
+    private long capacity;
+    private long loaded;
+    private long lastRowId;
+
+    public MessageIdIndex(
+            EmailRepository emailRepository,
+            EmailPersistenceProperties properties,
+            MeterRegistry meterRegistry) {
+        this.emailRepository = emailRepository;
+        this.settings = properties.getMessageIndex();
+        int recentCapacity = settings.getRecentCapacity();
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > recentCapacity;
+            }
+        };
+        this.skippedCounter = Counter.builder("email.message.index.skipped")
+                .description("Message existence lookups answered by the in-memory index")
+                .register(meterRegistry);
+        this.lookedUpCounter = Counter.builder("email.message.index.lookups")
+                .description("Message ids the in-memory index could not answer, looked up in the database")
+                .register(meterRegistry);
+        Gauge.builder("email.message.index.ready", () -> ready ? 1 : 0)
+                .description("Whether the in-memory message id index is loaded")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Splits the ids into those known to be stored and those that have to be
+     * looked up; ids that are certainly not stored are in neither set.
+     */
+    public Membership lookup(Collection<String> messageIds) {
+        MessageIdBloomFilter current = filter;
+        if (!settings.isEnabled() || !ready || current == null) {
+            return new Membership(Set.of(), new HashSet<>(messageIds));
+        }
+        Set<String> known = new HashSet<>();
+        Set<String> unknown = new HashSet<>();
+        for (String messageId : messageIds) {
+            if (!current.mightContain(messageId)) {
+                continue;
+            }
+            if (isRecent(messageId)) {
+                known.add(messageId);
+            } else {
+                unknown.add(messageId);
+            }
+        }
+        skippedCounter.increment(messageIds.size() - unknown.size());
+        lookedUpCounter.increment(unknown.size());
+        return new Membership(known, unknown);
+    }
+
+    /**
+     * Records ids of rows written in the caller's transaction once it has
+     * committed. Recent ids are reported as stored without a lookup, so ids
+     * of a page that rolls back must never get there: a backfill retry would
+     * skip them and the mail would not be stored at all.
+     */
+    public void recordWritten(Collection<String> messageIds) {
+        if (!settings.isEnabled() || messageIds.isEmpty()) {
+            return;
+        }
+        List<String> written = List.copyOf(messageIds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addWritten(written);
+                }
+            });
+        } else {
+            addWritten(written);
+        }
+    }
+
+    private void addWritten(List<String> messageIds) {
+        MessageIdBloomFilter current = filter;
+        if (current == null) {
+            return;
+        }
+        synchronized (recent) {
+            for (String messageId : messageIds) {
+                current.add(messageId);
+                recent.put(messageId, Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * Forgets soft-deleted ids as recent, since the tombstone purge removes
+     * their rows later. They stay in the filter as false positives.
+     */
+    public void recordRemoved(Collection<String> messageIds) {
+        synchronized (recent) {
+            for (String messageId : messageIds) {
+                recent.remove(messageId);
+            }
+        }
+    }
+
+    /**
+     * Forgets every recent id, after rows were removed in bulk (tombstone
+     * purge, dropped partitions) without their ids being known here.
+     */
+    public void clearRecent() {
+        synchronized (recent) {
+            recent.clear();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${email.persistence.message-index.refresh-interval-ms:5000}")
+    public void refresh() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        try {
+            if (filter == null || loaded > capacity) {
+                rebuild();
+            } else if (ready) {
+                rereadOverlap();
+            }
+            for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+                List<EmailRepository.MessageKey> keys = emailRepository.findMessageKeysAfter(
+                        lastRowId, PageRequest.of(0, settings.getBatchSize()));
+                MessageIdBloomFilter current = filter;
+                for (EmailRepository.MessageKey key : keys) {
+                    current.add(key.getMessageId());
+                    lastRowId = key.getId();
+                }
+                loaded += keys.size();
+                if (keys.size() < settings.getBatchSize()) {
+                    if (!ready) {
+                        ready = true;
+                        log.info("Message id index loaded: {} ids in {} KB",
+                                loaded, current.sizeInBytes() / 1024);
+                    }
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Message id index refresh failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // Adding is idempotent, so ids seen before cost nothing but the read
+    private void rereadOverlap() {
+        long from = Math.max(0, lastRowId - settings.getOverlapRows());
+        List<EmailRepository.MessageKey> keys = emailRepository.findMessageKeysAfter(
+                from, PageRequest.of(0, settings.getOverlapRows()));
+        MessageIdBloomFilter current = filter;
+        for (EmailRepository.MessageKey key : keys) {
+            current.add(key.getMessageId());
+        }
+    }
+
+    // Sized for twice the stored rows, so it is rebuilt rarely as mail grows
+    private void rebuild() {
+        ready = false;
+        long stored = emailRepository.count();
+        capacity = Math.max(settings.getExpectedMessages(), stored * 2);
+        filter = new MessageIdBloomFilter(capacity, settings.getFalsePositiveRate());
+        loaded = 0;
+        lastRowId = 0;
+        synchronized (recent) {
+            recent.clear();
+        }
+        log.info("Loading message id index for {} stored emails (capacity {})", stored, capacity);
+    }
+
+    private boolean isRecent(String messageId) {
+        synchronized (recent) {
+            return recent.get(messageId) != null;
+        }
+    }
+
+    /**
+     * Ids known to be stored, and ids that need a database lookup.
+     */
+    public record Membership(Set<String> known, Set<String> unknown) {
+
+        public Set<String> all() {
+            Set<String> all = new HashSet<>(known);
+            all.addAll(unknown);
+            return all;
+        }
+    }
+}
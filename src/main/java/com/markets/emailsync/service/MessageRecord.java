@@ -0,0 +1,30 @@
+package com.markets.emailsync.service;
+
+import java.time.Instant;
+
+/**
+ * The fields of a Graph message that end up in {@code EmailEntity}, and
+ * nothing else. Produced either from SDK {@code Message} objects or directly
+ * by {@link DeltaPageDecoder}; {@code rawData} is null when raw payloads
+ * are switched off on the decoder path.
+ * {@code bodyContentType} and {@code importance} use the SDK enum names.
+ */
+public record MessageRecord(
+        String id,
+        String subject,
+        String senderEmail,
+        String senderName,
+        String recipientEmails,
+        Instant receivedDateTime,
+        boolean hasAttachments,
+        boolean isRead,
+        String importance,
+        String bodyPreview,
+        String bodyContent,
+        String bodyContentType,
+        boolean hasBody,
+        String categories,
+        String conversationId,
+        boolean removed,
+        String rawData) {
+}
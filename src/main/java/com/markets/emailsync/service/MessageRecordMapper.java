@@ -0,0 +1,73 @@
+package com.markets.emailsync.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.graph.models.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.stream.Collectors;
+
+/**
+ * Converts SDK {@link Message} objects into {@link MessageRecord}s, keeping
+ * the serialized message as raw data.
+ */
+@Slf4j
+@Component
+public class MessageRecordMapper {
+
+    private final ObjectMapper objectMapper;
+
+    public MessageRecordMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public MessageRecord fromMessage(Message message) {
+        String senderEmail = null;
+        String senderName = null;
+        if (message.from != null && message.from.emailAddress != null
+                && message.from.emailAddress.address != null) {
+            senderEmail = message.from.emailAddress.address;
+            senderName = message.from.emailAddress.name;
+        }
+
+        String recipients = null;
+        if (message.toRecipients != null && !message.toRecipients.isEmpty()) {
+            recipients = message.toRecipients.stream()
+                    .filter(r -> r.emailAddress != null && r.emailAddress.address != null)
+                    .map(r -> r.emailAddress.address)
+                    .collect(Collectors.joining(", "));
+        }
+
+        String categories = message.categories != null && !message.categories.isEmpty()
+                ? String.join(", ", message.categories) : null;
+
+        // Store raw message data (optional, can be large)
+        String rawData = null;
+        try {
+            rawData = objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            log.warn("Failed to serialize message to JSON: {}", e.getMessage());
+        }
+
+        return new MessageRecord(
+                message.id,
+                message.subject,
+                senderEmail,
+                senderName,
+                recipients,
+                message.receivedDateTime != null ? message.receivedDateTime.toInstant() : null,
+                message.hasAttachments != null && message.hasAttachments,
+                message.isRead != null && message.isRead,
+                message.importance != null ? message.importance.name() : null,
+                message.bodyPreview,
+                message.body != null ? message.body.content : null,
+                message.body != null && message.body.contentType != null
+                        ? message.body.contentType.name() : null,
+                message.body != null,
+                categories,
+                message.conversationId,
+                message.additionalDataManager().get("@removed") != null,
+                rawData);
+    }
+}
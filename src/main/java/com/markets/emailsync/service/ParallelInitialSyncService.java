@@ -0,0 +1,241 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.config.MicrosoftGraphProperties;
+import com.markets.emailsync.repository.EmailRepository;
+import com.markets.emailsync.repository.MailboxRepository;
+import com.markets.emailsync.repository.SyncCheckpointRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Onboards many mailboxes at once. Initial syncs run on a bounded pool
+ * ({@code initialization.max-concurrent-mailboxes}); a failing mailbox only
+ * marks its own progress entry. Synced mailboxes get their subscriptions in
+ * batches of 20 as they complete, not after the whole run. The pool is kept
+ * to half the database connection pool, leaving the rest to webhook delta
+ * syncs and scheduled jobs.
+ */
+@Slf4j
+@Service
+public class ParallelInitialSyncService {
+
+    private static final int SUBSCRIPTION_BATCH_SIZE = 20;
+
+    private final MailboxInitializationService initializationService;
+    private final SubscriptionService subscriptionService;
+    private final MailboxRepository mailboxRepository;
+    private final EmailRepository emailRepository;
+    private final SyncCheckpointRepository checkpointRepository;
+    private final MicrosoftGraphProperties properties;
+    private final int concurrency;
+    private final ExecutorService executor;
+
+    private final Map<String, MailboxProgress> progress = new ConcurrentHashMap<>();
+    private final List<String> awaitingSubscription = new ArrayList<>();
+
+    public ParallelInitialSyncService(
+            MailboxInitializationService initializationService,
+            SubscriptionService subscriptionService,
+            MailboxRepository mailboxRepository,
+            EmailRepository emailRepository,
+            SyncCheckpointRepository checkpointRepository,
+            MicrosoftGraphProperties properties,
+            DataSource dataSource) {
+        this.initializationService = initializationService;
+        this.subscriptionService = subscriptionService;
+        this.mailboxRepository = mailboxRepository;
+        this.emailRepository = emailRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.properties = properties;
+        this.concurrency = syncConcurrency(properties, dataSource);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable,
+                    "initial-sync-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeConfiguredMailboxes() {
+        log.info("Initializing mailboxes from configuration");
+        initializeMailboxes(properties.getMailboxes());
+    }
+
+    /**
+     * Queues the mailboxes for initialization and returns immediately.
+     */
+    public CompletableFuture<Void> initializeMailboxes(List<String> emailAddresses) {
+        log.info("Queueing {} mailboxes for initialization with concurrency {}",
+                emailAddresses.size(), concurrency);
+
+        CompletableFuture<?>[] tasks = emailAddresses.stream()
+                .filter(emailAddress -> {
+                    MailboxProgress current = progress.get(emailAddress);
+                    if (current != null && !current.isFinished()) {
+                        log.info("Mailbox {} is already queued for initialization", emailAddress);
+                        return false;
+                    }
+                    progress.put(emailAddress, new MailboxProgress(emailAddress));
+                    return true;
+                })
+                .map(emailAddress -> CompletableFuture.runAsync(
+                        () -> initialize(emailAddress), executor))
+                .toArray(CompletableFuture[]::new);
+
+        return CompletableFuture.allOf(tasks).whenComplete((ignored, error) -> {
+            flushSubscriptions(true);
+
+            long failed = progress.values().stream()
+                    .filter(p -> p.getState() == State.FAILED)
+                    .count();
+            log.info("Mailbox initialization completed: {} mailboxes, {} failed",
+                    tasks.length, failed);
+        });
+    }
+
+    public List<MailboxProgress> getProgress() {
+        List<MailboxProgress> snapshot = new ArrayList<>(progress.values());
+        for (MailboxProgress entry : snapshot) {
+            if (entry.getState() == State.SYNCING) {
+                // Live page/message counts come from the resumable checkpoint
+                mailboxRepository.findByEmailAddress(entry.getEmailAddress())
+                        .flatMap(mailbox -> checkpointRepository.findByMailboxId(mailbox.getId()))
+                        .ifPresent(checkpoint -> {
+                            entry.setPagesCommitted(checkpoint.getPagesCommitted());
+                            entry.setMessagesCommitted(checkpoint.getMessagesCommitted());
+                        });
+            }
+        }
+        snapshot.sort(Comparator.comparing(MailboxProgress::getEmailAddress));
+        return snapshot;
+    }
+
+    private void initialize(String emailAddress) {
+        MailboxProgress entry = progress.get(emailAddress);
+        entry.setState(State.SYNCING);
+        entry.setStartedAt(Instant.now());
+
+        try {
+            if (!initializationService.syncMailbox(emailAddress)) {
+                entry.finish(State.COMPLETED, null);
+                return;
+            }
+
+            recordStoredMessages(entry);
+            entry.setState(State.SUBSCRIBING);
+            synchronized (awaitingSubscription) {
+                awaitingSubscription.add(emailAddress);
+            }
+            flushSubscriptions(false);
+
+        } catch (Exception e) {
+            log.error("Failed to initialize mailbox {}: {}", emailAddress, e.getMessage());
+            entry.finish(State.FAILED, e.getMessage());
+        }
+    }
+
+    private void flushSubscriptions(boolean force) {
+        List<String> batch;
+        synchronized (awaitingSubscription) {
+            if (awaitingSubscription.isEmpty()
+                    || (!force && awaitingSubscription.size() < SUBSCRIPTION_BATCH_SIZE)) {
+                return;
+            }
+            batch = new ArrayList<>(awaitingSubscription);
+            awaitingSubscription.clear();
+        }
+
+        List<String> failed;
+        try {
+            failed = subscriptionService.createSubscriptionsForMailboxes(batch);
+        } catch (Exception e) {
+            log.error("Failed to create subscriptions: {}", e.getMessage(), e);
+            failed = batch;
+        }
+
+        for (String emailAddress : batch) {
+            MailboxProgress entry = progress.get(emailAddress);
+            if (failed.contains(emailAddress)) {
+                initializationService.markFailed(emailAddress, "Subscription creation failed");
+                entry.finish(State.FAILED, "Subscription creation failed");
+            } else {
+                entry.finish(State.COMPLETED, null);
+            }
+        }
+    }
+
+    private static int syncConcurrency(MicrosoftGraphProperties properties, DataSource dataSource) {
+        int configured = properties.getInitialization().getMaxConcurrentMailboxes();
+        if (!(dataSource instanceof HikariDataSource hikari)) {
+            return configured;
+        }
+        int limit = Math.max(1, hikari.getMaximumPoolSize() / 2);
+        if (configured > limit) {
+            log.warn("max-concurrent-mailboxes {} exceeds half the connection pool ({}), using {}",
+                    configured, hikari.getMaximumPoolSize(), limit);
+            return limit;
+        }
+        return configured;
+    }
+
+    private void recordStoredMessages(MailboxProgress entry) {
+        mailboxRepository.findByEmailAddress(entry.getEmailAddress())
+                .ifPresent(mailbox -> entry.setMessagesCommitted(
+                        emailRepository.countByMailboxId(mailbox.getId())));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public enum State {
+        QUEUED,
+        SYNCING,
+        SUBSCRIBING,
+        COMPLETED,
+        FAILED
+    }
+
+    @Data
+    public static class MailboxProgress {
+        private final String emailAddress;
+        private volatile State state = State.QUEUED;
+        private volatile long pagesCommitted;
+        private volatile long messagesCommitted;
+        private volatile Instant queuedAt = Instant.now();
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile String errorMessage;
+
+        boolean isFinished() {
+            return state == State.COMPLETED || state == State.FAILED;
+        }
+
+        void finish(State finalState, String error) {
+            this.errorMessage = error;
+            this.finishedAt = Instant.now();
+            this.state = finalState;
+        }
+    }
+}
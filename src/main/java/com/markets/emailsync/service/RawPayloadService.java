@@ -0,0 +1,217 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.config.EmailPersistenceProperties;
+import com.markets.emailsync.repository.EmailRawDataRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps the raw Graph JSON of messages out of the {@code emails} row:
+ * payloads are deflated at the fastest level into {@code email_raw_data}
+ * according to {@code email.persistence.raw-data.mode}, read back only on
+ * demand, and purged after the retention period. Rows written before the
+ * table existed are moved over in the background.
+ */
+@Slf4j
+@Service
+public class RawPayloadService {
+
+    static final String CODEC = "deflate";
+
+    // Batches per maintenance run, so a large backlog does not hold the
+    // shared scheduler thread
+    private static final int MAX_BATCHES_PER_RUN = 20;
+
+    private final EmailRawDataRepository rawDataRepository;
+    private final EmailPersistenceProperties.RawDataProperties settings;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter storedCounter;
+    private final Counter rawBytesCounter;
+    private final Counter storedBytesCounter;
+    private final Counter purgedCounter;
+    private volatile boolean legacyMigrated;
+
+    public RawPayloadService(
+            EmailRawDataRepository rawDataRepository,
+            EmailPersistenceProperties properties,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.rawDataRepository = rawDataRepository;
+        this.settings = properties.getRawData();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.storedCounter = Counter.builder("email.raw.stored")
+                .description("Raw message payloads written to email_raw_data")
+                .register(meterRegistry);
+        this.rawBytesCounter = Counter.builder("email.raw.bytes.uncompressed")
+                .description("Uncompressed size of the raw payloads written")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.storedBytesCounter = Counter.builder("email.raw.bytes.stored")
+                .description("Compressed size of the raw payloads written")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.purgedCounter = Counter.builder("email.raw.purged")
+                .description("Raw message payloads deleted after the retention period")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Stores the payloads of written messages that the policy keeps. Runs in
+     * the page's transaction; a failure only loses the payloads, never the
+     * page.
+     */
+    public void store(List<MessageRecord> written) {
+        if (settings.getMode() == EmailPersistenceProperties.RawDataProperties.Mode.NEVER) {
+            return;
+        }
+        List<EmailRawDataRepository.RawPayload> payloads = new ArrayList<>();
+        long rawBytes = 0;
+        long storedBytes = 0;
+        for (MessageRecord message : written) {
+            if (message.rawData() != null && shouldKeep(message)) {
+                EmailRawDataRepository.EncodedPayload encoded = encode(message.rawData());
+                payloads.add(new EmailRawDataRepository.RawPayload(message.id(), encoded));
+                rawBytes += encoded.rawSize();
+                storedBytes += encoded.bytes().length;
+            }
+        }
+        if (payloads.isEmpty()) {
+            return;
+        }
+        try {
+            rawDataRepository.store(payloads);
+            storedCounter.increment(payloads.size());
+            rawBytesCounter.increment(rawBytes);
+            storedBytesCounter.increment(storedBytes);
+        } catch (Exception e) {
+            log.warn("Failed to store {} raw payloads: {}", payloads.size(), e.getMessage());
+        }
+    }
+
+    public Optional<String> load(Long emailId) {
+        return rawDataRepository.findByEmailId(emailId).map(RawPayloadService::decode);
+    }
+
+    @Scheduled(fixedDelayString = "${email.persistence.raw-data.maintenance-interval-ms:60000}")
+    public void maintain() {
+        try {
+            if (!legacyMigrated) {
+                migrateLegacy();
+            }
+            purgeExpired();
+        } catch (Exception e) {
+            log.error("Raw payload maintenance failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void migrateLegacy() {
+        int moved = 0;
+        for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+            Integer count = transactionTemplate.execute(status -> {
+                List<EmailRawDataRepository.LegacyPayload> rows =
+                        rawDataRepository.findLegacy(settings.getBatchSize());
+                List<EmailRawDataRepository.MovedPayload> payloads = new ArrayList<>(rows.size());
+                for (EmailRawDataRepository.LegacyPayload row : rows) {
+                    payloads.add(new EmailRawDataRepository.MovedPayload(
+                            row.emailId(), row.updatedAt(), encode(row.rawData())));
+                }
+                rawDataRepository.moveLegacy(payloads);
+                return rows.size();
+            });
+            moved += count;
+            if (count < settings.getBatchSize()) {
+                legacyMigrated = true;
+                break;
+            }
+        }
+        if (moved > 0) {
+            log.info("Moved {} legacy raw payloads to email_raw_data", moved);
+        }
+    }
+
+    private void purgeExpired() {
+        if (settings.getRetentionDays() == 0) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(Duration.ofDays(settings.getRetentionDays()));
+        int purged = 0;
+        for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+            int deleted = rawDataRepository.deleteOlderThan(cutoff, settings.getBatchSize());
+            purged += deleted;
+            if (deleted < settings.getBatchSize()) {
+                break;
+            }
+        }
+        if (purged > 0) {
+            purgedCounter.increment(purged);
+            log.info("Purged {} raw payloads older than {} days", purged, settings.getRetentionDays());
+        }
+    }
+
+    private boolean shouldKeep(MessageRecord message) {
+        return switch (settings.getMode()) {
+            case ALWAYS -> true;
+            case ON_ERROR -> message.senderEmail() == null || message.receivedDateTime() == null;
+            // Hash of the id, so a message is either always or never sampled
+            case SAMPLE -> Math.floorMod(message.id().hashCode(), 10000) < settings.getSamplePercent() * 100;
+            case NEVER -> false;
+        };
+    }
+
+    static EmailRawDataRepository.EncodedPayload encode(String rawData) {
+        byte[] raw = rawData.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return new EmailRawDataRepository.EncodedPayload(CODEC, raw.length, out.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String decode(EmailRawDataRepository.EncodedPayload payload) {
+        if (!CODEC.equals(payload.codec())) {
+            throw new IllegalStateException("Unknown raw payload codec: " + payload.codec());
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload.bytes());
+            byte[] raw = new byte[payload.rawSize()];
+            int length = 0;
+            while (!inflater.finished() && length < raw.length) {
+                int inflated = inflater.inflate(raw, length, raw.length - length);
+                if (inflated == 0 && inflater.needsInput()) {
+                    throw new IllegalStateException("Truncated raw payload");
+                }
+                length += inflated;
+            }
+            return new String(raw, 0, length, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt raw payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
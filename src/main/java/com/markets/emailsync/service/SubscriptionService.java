@@ -11,7 +11,11 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 
 @Slf4j
 @Service
@@ -121,7 +125,28 @@ public class SubscriptionService {
 
         log.info("Found {} subscriptions needing renewal", mailboxes.size());
 
+        List<String> subscriptionIds = mailboxes.stream()
+                .map(MailboxEntity::getSubscriptionId)
+                .filter(Objects::nonNull)
+                .toList();
+
+        Map<String, GraphService.BatchOutcome<Subscription>> outcomes = subscriptionIds.isEmpty()
+                ? Map.of() : graphService.renewSubscriptions(subscriptionIds);
+
         for (MailboxEntity mailbox : mailboxes) {
+            GraphService.BatchOutcome<Subscription> outcome =
+                    mailbox.getSubscriptionId() != null
+                            ? outcomes.get(mailbox.getSubscriptionId()) : null;
+
+            if (outcome != null && outcome.isSuccess() && outcome.result() != null) {
+                mailbox.setSubscriptionExpiration(
+                        outcome.result().expirationDateTime.toInstant());
+                mailboxRepository.save(mailbox);
+                log.debug("Subscription renewed in batch for {}", mailbox.getEmailAddress());
+                continue;
+            }
+
+            // Fall back to the single-mailbox path, which retries and recreates
             try {
                 renewSubscriptionForMailbox(mailbox.getEmailAddress());
             } catch (Exception e) {
@@ -131,6 +156,76 @@ public class SubscriptionService {
         }
     }
 
+    /**
+     * Replaces the subscriptions of several mailboxes using batched Graph
+     * calls. Mailboxes whose batch step failed go through
+     * {@link #createSubscriptionForMailbox(String)} individually.
+     *
+     * @return the mailboxes for which no subscription could be created
+     */
+    @Transactional
+    public List<String> createSubscriptionsForMailboxes(List<String> emailAddresses) {
+        log.info("Creating subscriptions for {} mailboxes", emailAddresses.size());
+
+        List<MailboxEntity> mailboxes = new ArrayList<>(emailAddresses.size());
+        List<String> failed = new ArrayList<>();
+        for (String emailAddress : emailAddresses) {
+            Optional<MailboxEntity> mailbox = mailboxRepository.findByEmailAddress(emailAddress);
+            if (mailbox.isPresent()) {
+                mailboxes.add(mailbox.get());
+            } else {
+                log.error("Mailbox not found, no subscription created: {}", emailAddress);
+                failed.add(emailAddress);
+            }
+        }
+
+        // Delete existing subscriptions if any
+        List<String> existing = mailboxes.stream()
+                .map(MailboxEntity::getSubscriptionId)
+                .filter(Objects::nonNull)
+                .toList();
+        if (!existing.isEmpty()) {
+            graphService.deleteSubscriptions(existing).forEach((subscriptionId, outcome) -> {
+                if (!outcome.isSuccess()) {
+                    log.warn("Failed to delete existing subscription {}: {}",
+                            subscriptionId, outcome.error());
+                }
+            });
+        }
+
+        Map<String, GraphService.BatchOutcome<Subscription>> outcomes =
+                graphService.createSubscriptions(mailboxes.stream()
+                        .map(MailboxEntity::getEmailAddress)
+                        .toList());
+
+        for (MailboxEntity mailbox : mailboxes) {
+            GraphService.BatchOutcome<Subscription> outcome =
+                    outcomes.get(mailbox.getEmailAddress());
+
+            if (outcome != null && outcome.isSuccess() && outcome.result() != null) {
+                mailbox.setSubscriptionId(outcome.result().id);
+                mailbox.setSubscriptionExpiration(
+                        outcome.result().expirationDateTime.toInstant());
+                mailboxRepository.save(mailbox);
+                log.info("Subscription created successfully for {}: {}",
+                        mailbox.getEmailAddress(), outcome.result().id);
+                continue;
+            }
+
+            log.warn("Batched subscription creation failed for {}: {}",
+                    mailbox.getEmailAddress(), outcome != null ? outcome.error() : "no response");
+            mailbox.setSubscriptionId(null);
+            mailboxRepository.save(mailbox);
+            try {
+                createSubscriptionForMailbox(mailbox.getEmailAddress());
+            } catch (Exception e) {
+                failed.add(mailbox.getEmailAddress());
+            }
+        }
+
+        return failed;
+    }
+
     @Transactional
     public void deleteSubscriptionForMailbox(String emailAddress) {
         log.info("Deleting subscription for mailbox: {}", emailAddress);
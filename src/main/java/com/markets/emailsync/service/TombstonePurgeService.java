@@ -0,0 +1,80 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.config.EmailPersistenceProperties;
+import com.markets.emailsync.repository.EmailBulkRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compacts soft-deleted emails: rows removed longer ago than the retention
+ * period are hard-deleted, or archived, in small batches. Every batch is
+ * its own short transaction, so no lock is held for long and live sync
+ * writes keep going in between. Bodies left without an email are swept
+ * afterwards.
+ */
+@Slf4j
+@Service
+public class TombstonePurgeService {
+
+    private final EmailBulkRepository bulkRepository;
+    private final MessageIdIndex messageIndex;
+    private final BodyDeduplicationService bodyDeduplication;
+    private final EmailPersistenceProperties.TombstoneProperties settings;
+    private final Counter purgedCounter;
+
+    public TombstonePurgeService(
+            EmailBulkRepository bulkRepository,
+            MessageIdIndex messageIndex,
+            BodyDeduplicationService bodyDeduplication,
+            EmailPersistenceProperties properties,
+            MeterRegistry meterRegistry) {
+        this.bulkRepository = bulkRepository;
+        this.messageIndex = messageIndex;
+        this.bodyDeduplication = bodyDeduplication;
+        this.settings = properties.getTombstones();
+        this.purgedCounter = Counter.builder("email.tombstones.purged")
+                .description("Soft-deleted emails removed by the tombstone purge")
+                .tag("mode", settings.getMode().name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${email.persistence.tombstones.purge-interval-ms:600000}")
+    public void purge() {
+        if (!settings.isPurgeEnabled()) {
+            return;
+        }
+        boolean archive = settings.getMode() == EmailPersistenceProperties.TombstoneProperties.Mode.ARCHIVE;
+        Instant cutoff = Instant.now().minus(Duration.ofDays(settings.getRetentionDays()));
+        int purged = 0;
+
+        try {
+            for (int batch = 0; batch < settings.getMaxBatchesPerRun(); batch++) {
+                int removed = bulkRepository.purgeTombstones(cutoff, settings.getBatchSize(), archive);
+                purged += removed;
+                purgedCounter.increment(removed);
+                if (removed < settings.getBatchSize()) {
+                    break;
+                }
+                TimeUnit.MILLISECONDS.sleep(settings.getPauseBetweenBatchesMs());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Tombstone purge failed after {} rows: {}", purged, e.getMessage(), e);
+        }
+
+        if (purged > 0) {
+            messageIndex.clearRecent();
+            bodyDeduplication.requestSweep();
+            log.info("{} {} emails deleted before {}", archive ? "Archived" : "Purged", purged, cutoff);
+        }
+        bodyDeduplication.sweepOrphans();
+    }
+}
@@ -1,44 +1,105 @@
 package com.markets.emailsync.service;
 
+import com.markets.emailsync.config.WebhookProperties;
 import com.markets.emailsync.entity.MailboxEntity;
 import com.markets.emailsync.entity.WebhookNotificationEntity;
 import com.markets.emailsync.repository.MailboxRepository;
+import com.markets.emailsync.repository.WebhookNotificationBulkRepository;
 import com.markets.emailsync.repository.WebhookNotificationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Service
 public class WebhookProcessingService {
 
+    // Length of the processing_error column
+    private static final int MAX_ERROR_LENGTH = 2000;
+
     private final WebhookNotificationRepository notificationRepository;
     private final MailboxRepository mailboxRepository;
     private final EmailSyncService emailSyncService;
+    private final WebhookNotificationBulkRepository bulkRepository;
+    private final WebhookProperties webhookProperties;
+    private final Counter deletedCounter;
+    private final Counter succeededCounter;
+    private final Counter failedCounter;
+    private final Counter deadLetteredCounter;
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLong oldestAgeSeconds = new AtomicLong();
+    private final AtomicLong deadLetters = new AtomicLong();
+    // Lease owner for claimed notifications
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName();
 
     public WebhookProcessingService(
             WebhookNotificationRepository notificationRepository,
             MailboxRepository mailboxRepository,
-            EmailSyncService emailSyncService) {
+            EmailSyncService emailSyncService,
+            WebhookNotificationBulkRepository bulkRepository,
+            WebhookProperties webhookProperties,
+            MeterRegistry meterRegistry) {
         this.notificationRepository = notificationRepository;
         this.mailboxRepository = mailboxRepository;
         this.emailSyncService = emailSyncService;
+        this.bulkRepository = bulkRepository;
+        this.webhookProperties = webhookProperties;
+        this.deletedCounter = Counter.builder("webhook.notifications.deleted")
+                .description("Processed webhook notifications deleted after the retention period")
+                .register(meterRegistry);
+        this.succeededCounter = attemptCounter(meterRegistry, "success");
+        this.failedCounter = attemptCounter(meterRegistry, "failure");
+        this.deadLetteredCounter = attemptCounter(meterRegistry, "dead_letter");
+        Gauge.builder("webhook.queue.depth", queueDepth, AtomicLong::get)
+                .description("Unprocessed webhook notifications still being retried")
+                .register(meterRegistry);
+        Gauge.builder("webhook.queue.oldest.age", oldestAgeSeconds, AtomicLong::get)
+                .description("Age of the oldest notification still being retried")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("webhook.queue.dead.letters", deadLetters, AtomicLong::get)
+                .description("Webhook notifications that ran out of attempts")
+                .register(meterRegistry);
+    }
+
+    private static Counter attemptCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("webhook.queue.attempts")
+                .description("Webhook notification processing attempts by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
     }
 
+    // Not transactional: the delta sync commits its own pages, and an outer
+    // transaction would hold a second pooled connection for its whole run
     @Async
-    @Transactional
     public void processNotification(String subscriptionId, String changeType,
                                     String resource, String clientState,
                                     String rawPayload) {
         log.info("Processing webhook notification for subscription: {}", subscriptionId);
 
-        // Persist notification for idempotency and audit - keep reference for error handling
+        // Persist notification for idempotency and audit. It is stored
+        // already leased to this node, so the retry worker of no node
+        // claims it while the first attempt is still running
+        Instant now = Instant.now();
         WebhookNotificationEntity notification = WebhookNotificationEntity.builder()
                 .subscriptionId(subscriptionId)
                 .changeType(changeType)
@@ -46,9 +107,18 @@ public class WebhookProcessingService {
                 .clientState(clientState)
                 .rawPayload(rawPayload)
                 .processed(false)
+                .nextAttemptAt(now)
+                .lockedBy(nodeId)
+                .lockedUntil(now.plusMillis(webhookProperties.getRetry().getLeaseMs()))
                 .build();
 
         notification = notificationRepository.save(notification);
+        // Outcomes go through the owner-checked statements of the retry
+        // queue, never a save of this entity, so a lease that ran out and
+        // went to another node is left alone
+        List<WebhookNotificationBulkRepository.ClaimedNotification> claimed = List.of(
+                new WebhookNotificationBulkRepository.ClaimedNotification(
+                        notification.getId(), subscriptionId, notification.getRetryCount()));
 
         try {
             // Find the mailbox for this subscription
@@ -57,9 +127,7 @@ public class WebhookProcessingService {
 
             if (mailboxOpt.isEmpty()) {
                 log.error("No mailbox found for subscription: {}", subscriptionId);
-                notification.setProcessingError("Mailbox not found");
-                notification.setRetryCount(notification.getRetryCount() + 1);
-                notificationRepository.save(notification);
+                recordFailures(claimed, "Mailbox not found");
                 return;
             }
 
@@ -70,82 +138,182 @@ public class WebhookProcessingService {
             emailSyncService.performDeltaSyncForMailbox(mailbox.getEmailAddress());
 
             // Mark notification as processed
-            notification.setProcessed(true);
-            notification.setProcessedAt(Instant.now());
-            notificationRepository.save(notification);
+            bulkRepository.complete(List.of(notification.getId()), nodeId, Instant.now());
+            succeededCounter.increment();
 
             log.info("Webhook notification processed successfully for: {}",
                     mailbox.getEmailAddress());
 
         } catch (Exception e) {
             log.error("Error processing webhook notification: {}", e.getMessage(), e);
-
-            // Update notification with error using the reference we already have
-            notification.setProcessingError(e.getMessage());
-            notification.setRetryCount(notification.getRetryCount() + 1);
-            notificationRepository.save(notification);
+            recordFailures(claimed, e.getMessage());
         }
     }
 
     /**
-     * Scheduled task to retry failed webhook notifications
+     * Works the retry queue. Due notifications are claimed in bounded
+     * batches under a lease, so nodes share the queue without doing the same
+     * work twice; a batch gets one delta sync per mailbox, however many
+     * notifications it holds. Failures come back with exponential backoff
+     * and jitter until they run out of attempts and are dead-lettered.
      */
-    @Scheduled(fixedDelayString = "${webhook.retry.interval:300000}") // 5 minutes
-    @Transactional
+    @Scheduled(fixedDelayString = "${webhook.retry.interval:15000}")
     public void retryFailedNotifications() {
-        log.debug("Checking for failed webhook notifications to retry");
-
-        List<WebhookNotificationEntity> failedNotifications =
-                notificationRepository.findUnprocessedWithRetriesAvailable(5);
-
-        if (failedNotifications.isEmpty()) {
-            return;
+        WebhookProperties.RetryProperties retry = webhookProperties.getRetry();
+        try {
+            for (int batch = 0; batch < retry.getMaxBatchesPerRun(); batch++) {
+                Instant now = Instant.now();
+                List<WebhookNotificationBulkRepository.ClaimedNotification> claimed = bulkRepository.claimDue(
+                        nodeId, now, now.plusMillis(retry.getLeaseMs()), retry.getBatchSize());
+                if (claimed.isEmpty()) {
+                    break;
+                }
+                log.info("Claimed {} webhook notifications to retry", claimed.size());
+                retryClaimed(claimed);
+                if (claimed.size() < retry.getBatchSize()) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Webhook notification retry failed: {}", e.getMessage(), e);
         }
+        refreshQueueStats();
+    }
 
-        log.info("Found {} failed notifications to retry", failedNotifications.size());
+    private void retryClaimed(List<WebhookNotificationBulkRepository.ClaimedNotification> claimed) {
+        Map<String, List<WebhookNotificationBulkRepository.ClaimedNotification>> bySubscription =
+                new LinkedHashMap<>();
+        for (WebhookNotificationBulkRepository.ClaimedNotification notification : claimed) {
+            bySubscription.computeIfAbsent(notification.subscriptionId(), id -> new ArrayList<>())
+                    .add(notification);
+        }
 
-        for (WebhookNotificationEntity notification : failedNotifications) {
+        for (Map.Entry<String, List<WebhookNotificationBulkRepository.ClaimedNotification>> entry
+                : bySubscription.entrySet()) {
+            List<WebhookNotificationBulkRepository.ClaimedNotification> notifications = entry.getValue();
             try {
-                Optional<MailboxEntity> mailboxOpt = mailboxRepository
-                        .findBySubscriptionId(notification.getSubscriptionId());
-
-                if (mailboxOpt.isPresent()) {
-                    MailboxEntity mailbox = mailboxOpt.get();
-                    emailSyncService.performDeltaSyncForMailbox(
-                            mailbox.getEmailAddress());
-
-                    notification.setProcessed(true);
-                    notification.setProcessedAt(Instant.now());
-                    notification.setProcessingError(null);
-                } else {
-                    notification.setProcessingError("Mailbox not found");
-                    notification.setRetryCount(notification.getRetryCount() + 1);
+                Optional<MailboxEntity> mailboxOpt = mailboxRepository.findBySubscriptionId(entry.getKey());
+                if (mailboxOpt.isEmpty()) {
+                    recordFailures(notifications, "Mailbox not found");
+                    continue;
                 }
-
-                notificationRepository.save(notification);
-
+                // The delta sync picks up every change the notifications announced
+                emailSyncService.performDeltaSyncForMailbox(mailboxOpt.get().getEmailAddress());
+                List<Long> ids = notifications.stream()
+                        .map(WebhookNotificationBulkRepository.ClaimedNotification::id)
+                        .toList();
+                bulkRepository.complete(ids, nodeId, Instant.now());
+                succeededCounter.increment(ids.size());
             } catch (Exception e) {
-                log.error("Failed to retry notification {}: {}",
-                        notification.getId(), e.getMessage());
-                notification.setProcessingError(e.getMessage());
-                notification.setRetryCount(notification.getRetryCount() + 1);
-                notificationRepository.save(notification);
+                log.error("Failed to retry notifications for subscription {}: {}",
+                        entry.getKey(), e.getMessage());
+                recordFailures(notifications, e.getMessage());
             }
         }
     }
 
+    private void recordFailures(List<WebhookNotificationBulkRepository.ClaimedNotification> notifications,
+                                String error) {
+        int maxAttempts = webhookProperties.getRetry().getMaxAttempts();
+        Instant now = Instant.now();
+        List<WebhookNotificationBulkRepository.FailedAttempt> failures = new ArrayList<>(notifications.size());
+        for (WebhookNotificationBulkRepository.ClaimedNotification notification : notifications) {
+            int attempts = notification.retryCount() + 1;
+            if (attempts >= maxAttempts) {
+                log.warn("Webhook notification {} dead-lettered after {} attempts: {}",
+                        notification.id(), attempts, error);
+                failures.add(new WebhookNotificationBulkRepository.FailedAttempt(
+                        notification.id(), attempts, truncate(error), null, now));
+                deadLetteredCounter.increment();
+            } else {
+                failures.add(new WebhookNotificationBulkRepository.FailedAttempt(
+                        notification.id(), attempts, truncate(error), now.plus(backoff(attempts)), null));
+                failedCounter.increment();
+            }
+        }
+        bulkRepository.reschedule(failures, nodeId);
+    }
+
+    private Duration backoff(int attempts) {
+        return backoff(attempts, webhookProperties.getRetry(), ThreadLocalRandom.current());
+    }
+
+    // Doubles per attempt up to the maximum; half of it is random, so a
+    // burst of failures does not come back all at once
+    static Duration backoff(int attempts, WebhookProperties.RetryProperties retry, Random random) {
+        long delay = Math.min(retry.getMaxBackoffMs(),
+                retry.getInitialBackoffMs() << Math.min(attempts - 1, 30));
+        long half = delay / 2;
+        return Duration.ofMillis(half + random.nextLong(half + 1));
+    }
+
+    private void refreshQueueStats() {
+        try {
+            WebhookNotificationBulkRepository.QueueStats stats = bulkRepository.queueStats();
+            queueDepth.set(stats.depth());
+            deadLetters.set(stats.deadLettered());
+            oldestAgeSeconds.set(stats.oldestReceivedAt() != null
+                    ? Duration.between(stats.oldestReceivedAt(), Instant.now()).toSeconds() : 0);
+        } catch (Exception e) {
+            log.warn("Could not read webhook queue statistics: {}", e.getMessage());
+        }
+    }
+
+    private static String truncate(String error) {
+        return error != null && error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
     /**
-     * Clean up old processed notifications
+     * Deletes notifications processed longer ago than the retention period,
+     * raw payloads included, in small batches that each commit on their own,
+     * so no lock is held for long. Runs only outside business hours and stops
+     * when they begin or the run's time is up; the rest waits for the next
+     * run.
      */
-    @Scheduled(cron = "${webhook.cleanup.cron:0 0 2 * * ?}") // 2 AM daily
-    @Transactional
+    @Scheduled(cron = "${webhook.cleanup.cron:0 */15 * * * ?}")
     public void cleanupOldNotifications() {
-        log.info("Cleaning up old processed webhook notifications");
+        WebhookProperties.CleanupProperties cleanup = webhookProperties.getCleanup();
+        if (!cleanup.isEnabled()) {
+            return;
+        }
+        if (isBusinessHours(Instant.now())) {
+            log.debug("Skipping webhook notification cleanup during business hours");
+            return;
+        }
+
+        Instant cutoff = Instant.now().minus(Duration.ofDays(cleanup.getRetentionDays()));
+        Instant deadline = Instant.now().plusMillis(cleanup.getMaxRunMs());
+        int deleted = 0;
+        try {
+            while (true) {
+                int removed = bulkRepository.deleteProcessedBefore(cutoff, cleanup.getBatchSize());
+                deleted += removed;
+                deletedCounter.increment(removed);
+                if (removed < cleanup.getBatchSize()) {
+                    break;
+                }
+                Instant now = Instant.now();
+                if (now.isAfter(deadline) || isBusinessHours(now)) {
+                    log.info("Webhook notification cleanup stopped early, the rest is left to the next run");
+                    break;
+                }
+                TimeUnit.MILLISECONDS.sleep(cleanup.getPauseBetweenBatchesMs());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Webhook notification cleanup failed after {} rows: {}", deleted, e.getMessage(), e);
+        }
 
-        // Delete notifications older than 30 days
-        Instant cutoff = Instant.now().minus(30, java.time.temporal.ChronoUnit.DAYS);
+        log.info("Deleted {} webhook notifications processed before {}", deleted, cutoff);
+    }
 
-        // Implementation would depend on adding a custom query method
-        log.info("Cleanup task executed (implement custom query if needed)");
+    private boolean isBusinessHours(Instant instant) {
+        WebhookProperties.CleanupProperties cleanup = webhookProperties.getCleanup();
+        ZonedDateTime local = instant.atZone(cleanup.getZone());
+        LocalTime time = local.toLocalTime();
+        return cleanup.getBusinessDays().contains(local.getDayOfWeek())
+                && !time.isBefore(cleanup.getBusinessHoursStart())
+                && time.isBefore(cleanup.getBusinessHoursEnd());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,314 @@
+package com.markets.emailsync.simulator;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * State and behaviour of the local Graph stand-in: synthetic mailboxes,
+ * subscriptions, the change generator that drives webhook callbacks, and
+ * fault injection. Mailboxes are created on first access.
+ */
+@Slf4j
+@Component
+@Profile("simulator")
+public class GraphSimulator {
+
+    private final GraphSimulatorProperties settings;
+    private final MeterRegistry meterRegistry;
+    private final RestClient restClient = RestClient.create();
+    private final Map<String, SyntheticMailbox> mailboxes = new ConcurrentHashMap<>();
+    private final Map<String, SimSubscription> subscriptions = new ConcurrentHashMap<>();
+    private final Map<String, Double> pendingChanges = new ConcurrentHashMap<>();
+    private final ExecutorService notifier = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "simulator-notify");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public GraphSimulator(GraphSimulatorProperties settings, MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public GraphSimulatorProperties.FaultProperties faults() {
+        return settings.getFaults();
+    }
+
+    SyntheticMailbox mailbox(String address) {
+        return mailboxes.computeIfAbsent(address.toLowerCase(), key -> {
+            log.info("Simulator: generating {} messages for {}", settings.getMessagesPerMailbox(), key);
+            return new SyntheticMailbox(key, settings);
+        });
+    }
+
+    Collection<SyntheticMailbox> mailboxes() {
+        return mailboxes.values();
+    }
+
+    /**
+     * Applies the configured latency, then decides whether the request is
+     * answered with an injected 429 or 503.
+     */
+    Optional<ResponseEntity<Object>> injectFault(String endpoint) {
+        GraphSimulatorProperties.FaultProperties faults = settings.getFaults();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        long latency = faults.getLatencyMs()
+                + (faults.getLatencyJitterMs() > 0 ? random.nextLong(faults.getLatencyJitterMs()) : 0);
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        int status = 0;
+        if (random.nextDouble() < faults.getThrottleRate()) {
+            status = 429;
+        } else if (random.nextDouble() < faults.getUnavailableRate()) {
+            status = 503;
+        }
+        if (status == 0) {
+            count(endpoint, 200);
+            return Optional.empty();
+        }
+
+        count(endpoint, status);
+        return Optional.of(ResponseEntity.status(status)
+                .header("Retry-After", String.valueOf(faults.getRetryAfterSeconds()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(error(status == 429 ? "TooManyRequests" : "ServiceUnavailable",
+                        "Injected by the Graph simulator")));
+    }
+
+    boolean expireDeltaToken() {
+        return ThreadLocalRandom.current().nextDouble() < settings.getFaults().getExpiredDeltaTokenRate();
+    }
+
+    void count(String endpoint, int status) {
+        meterRegistry.counter("simulator.requests",
+                "endpoint", endpoint, "status", String.valueOf(status)).increment();
+    }
+
+    static Map<String, Object> error(String code, String message) {
+        return Map.of("error", Map.of("code", code, "message", message));
+    }
+
+    // Subscriptions
+
+    /**
+     * Creates a subscription after the validation handshake with the
+     * notification URL, like Graph does.
+     */
+    SimSubscription createSubscription(Map<String, Object> request) {
+        String notificationUrl = (String) request.get("notificationUrl");
+        String validationToken = UUID.randomUUID().toString();
+
+        String echoed = restClient.get()
+                .uri(UriComponentsBuilder.fromHttpUrl(notificationUrl)
+                        .queryParam("validationToken", validationToken)
+                        .build().toUri())
+                .retrieve()
+                .body(String.class);
+        if (!validationToken.equals(echoed)) {
+            throw new IllegalArgumentException("Subscription validation request failed");
+        }
+
+        String resource = (String) request.get("resource");
+        SimSubscription subscription = new SimSubscription(
+                UUID.randomUUID().toString(),
+                resource,
+                mailboxOf(resource),
+                (String) request.getOrDefault("changeType", "created,updated,deleted"),
+                notificationUrl,
+                (String) request.get("clientState"),
+                parseExpiration(request.get("expirationDateTime")));
+        subscriptions.put(subscription.id(), subscription);
+        mailbox(subscription.mailbox());
+        return subscription;
+    }
+
+    SimSubscription renewSubscription(String id, Map<String, Object> patch) {
+        SimSubscription current = subscriptions.get(id);
+        if (current == null) {
+            return null;
+        }
+        SimSubscription renewed = current.withExpiration(parseExpiration(patch.get("expirationDateTime")));
+        subscriptions.put(id, renewed);
+        return renewed;
+    }
+
+    boolean deleteSubscription(String id) {
+        return subscriptions.remove(id) != null;
+    }
+
+    Collection<SimSubscription> subscriptions() {
+        return subscriptions.values();
+    }
+
+    private static String mailboxOf(String resource) {
+        String[] segments = resource.split("/");
+        for (int i = 0; i < segments.length - 1; i++) {
+            if ("users".equalsIgnoreCase(segments[i])) {
+                return segments[i + 1].toLowerCase();
+            }
+        }
+        throw new IllegalArgumentException("Unsupported subscription resource: " + resource);
+    }
+
+    private static OffsetDateTime parseExpiration(Object value) {
+        return value != null
+                ? OffsetDateTime.parse(value.toString())
+                : OffsetDateTime.now(ZoneOffset.UTC).plusDays(2);
+    }
+
+    // Change generation
+
+    @Scheduled(fixedRate = 1000)
+    public void generateChanges() {
+        double perSecond = settings.getChangesPerMinute() / 60.0;
+        if (perSecond <= 0) {
+            return;
+        }
+        for (SyntheticMailbox mailbox : mailboxes.values()) {
+            double due = pendingChanges.merge(mailbox.address(), perSecond, Double::sum);
+            int count = (int) due;
+            if (count > 0) {
+                pendingChanges.put(mailbox.address(), due - count);
+                applyChanges(mailbox, count);
+            }
+        }
+    }
+
+    /**
+     * Applies {@code count} random changes to the mailbox and notifies its
+     * subscribers. Used by the generator and for on-demand bursts.
+     */
+    int applyChanges(SyntheticMailbox mailbox, int count) {
+        List<SyntheticMailbox.Change> applied = mutate(mailbox, count);
+        for (SimSubscription subscription : subscriptions.values()) {
+            if (subscription.mailbox().equals(mailbox.address())) {
+                notify(subscription, applied);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Applies {@code count} random changes without sending notifications.
+     */
+    List<SyntheticMailbox.Change> mutate(SyntheticMailbox mailbox, int count) {
+        List<SyntheticMailbox.Change> applied = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            applied.add(mailbox.randomChange());
+        }
+        meterRegistry.counter("simulator.changes").increment(count);
+        return applied;
+    }
+
+    private void notify(SimSubscription subscription, List<SyntheticMailbox.Change> changes) {
+        int batchSize = settings.getNotificationBatchSize();
+        for (int from = 0; from < changes.size(); from += batchSize) {
+            Map<String, Object> payload = notificationPayload(subscription,
+                    changes.subList(from, Math.min(from + batchSize, changes.size())));
+            int size = ((List<?>) payload.get("value")).size();
+            if (size == 0) {
+                continue;
+            }
+
+            notifier.submit(() -> {
+                try {
+                    restClient.post()
+                            .uri(subscription.notificationUrl())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(payload)
+                            .retrieve()
+                            .toBodilessEntity();
+                    meterRegistry.counter("simulator.notifications", "result", "delivered")
+                            .increment(size);
+                } catch (Exception e) {
+                    meterRegistry.counter("simulator.notifications", "result", "failed")
+                            .increment(size);
+                    log.debug("Simulator: notification delivery failed: {}", e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Change notification body for the changes the subscription asked for.
+     */
+    static Map<String, Object> notificationPayload(SimSubscription subscription,
+                                                   List<SyntheticMailbox.Change> changes) {
+        List<Map<String, Object>> value = new ArrayList<>();
+        for (SyntheticMailbox.Change change : changes) {
+            if (!subscription.changeType().contains(change.changeType())) {
+                continue;
+            }
+            value.add(Map.of(
+                    "subscriptionId", subscription.id(),
+                    "subscriptionExpirationDateTime", subscription.expiration().toString(),
+                    "changeType", change.changeType(),
+                    "resource", "Users/" + subscription.mailbox() + "/Messages/" + change.message().id,
+                    "clientState", subscription.clientState() != null ? subscription.clientState() : "",
+                    "tenantId", "00000000-0000-0000-0000-000000000000",
+                    "resourceData", Map.of(
+                            "@odata.type", "#Microsoft.Graph.Message",
+                            "@odata.id", "Users/" + subscription.mailbox() + "/Messages/" + change.message().id,
+                            "id", change.message().id)));
+        }
+        return Map.of("value", value);
+    }
+
+    public void reset() {
+        mailboxes.clear();
+        subscriptions.clear();
+        pendingChanges.clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        notifier.shutdownNow();
+    }
+
+    record SimSubscription(String id, String resource, String mailbox, String changeType,
+                           String notificationUrl, String clientState, OffsetDateTime expiration) {
+
+        SimSubscription withExpiration(OffsetDateTime newExpiration) {
+            return new SimSubscription(id, resource, mailbox, changeType, notificationUrl,
+                    clientState, newExpiration);
+        }
+
+        Map<String, Object> toJson() {
+            return Map.of(
+                    "id", id,
+                    "resource", resource,
+                    "changeType", changeType,
+                    "notificationUrl", notificationUrl,
+                    "clientState", clientState != null ? clientState : "",
+                    "expirationDateTime", expiration.toString());
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.markets.emailsync.simulator;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The subset of Microsoft Graph v1.0 this service calls, served from the
+ * synthetic mailboxes of {@link GraphSimulator}. Point
+ * {@code microsoft.graph.service-root} at {@code /simulator/v1.0} to use it.
+ */
+@Slf4j
+@RestController
+@Profile("simulator")
+@RequestMapping("/simulator/v1.0")
+public class GraphSimulatorController {
+
+    // Graph's default page size for message collections
+    private static final int DEFAULT_PAGE_SIZE = 10;
+
+    private static final Pattern SINCE = Pattern.compile("receivedDateTime ge (\\S+)");
+    private static final Pattern UNTIL = Pattern.compile("receivedDateTime lt (\\S+)");
+
+    private final GraphSimulator simulator;
+
+    public GraphSimulatorController(GraphSimulator simulator) {
+        this.simulator = simulator;
+    }
+
+    // Messages
+
+    @GetMapping("/users/{user}/messages/delta")
+    public ResponseEntity<Object> messagesDelta(
+            @PathVariable String user,
+            @RequestParam MultiValueMap<String, String> query) {
+        return delta(user, null, query);
+    }
+
+    @GetMapping("/users/{user}/mailFolders/{folderId}/messages/delta")
+    public ResponseEntity<Object> folderMessagesDelta(
+            @PathVariable String user,
+            @PathVariable String folderId,
+            @RequestParam MultiValueMap<String, String> query) {
+        return delta(user, folderId, query);
+    }
+
+    /**
+     * Plain message listing, used by the historical backfill. Supports the
+     * {@code receivedDateTime ge/lt} filter; results are in creation order.
+     */
+    @GetMapping("/users/{user}/messages")
+    public ResponseEntity<Object> listMessages(
+            @PathVariable String user,
+            @RequestParam MultiValueMap<String, String> query) {
+        Optional<ResponseEntity<Object>> fault = simulator.injectFault("messages");
+        if (fault.isPresent()) {
+            return fault.get();
+        }
+
+        SyntheticMailbox mailbox = simulator.mailbox(user);
+        int limit = pageSize(query);
+        String skipToken = query.getFirst("$skiptoken");
+
+        int cursor;
+        Instant since;
+        Instant until;
+        if (skipToken != null) {
+            String[] token = skipToken.split("\\.");
+            cursor = Integer.parseInt(token[1]);
+            since = "-".equals(token[2]) ? null : Instant.ofEpochMilli(Long.parseLong(token[2]));
+            until = "-".equals(token[3]) ? null : Instant.ofEpochMilli(Long.parseLong(token[3]));
+        } else {
+            cursor = 0;
+            since = filterBound(query.getFirst("$filter"), SINCE);
+            until = filterBound(query.getFirst("$filter"), UNTIL);
+        }
+
+        SyntheticMailbox.Page page = mailbox.snapshotPage(null, since, until,
+                mailbox.currentSequence(), cursor, limit);
+
+        Map<String, Object> body = collection(page.items().stream()
+                .<Object>map(message -> SyntheticMailbox.toJson(message, includeBody(query)))
+                .toList());
+        if (page.nextCursor() >= 0) {
+            body.put("@odata.nextLink", link(query, "$skiptoken",
+                    "L." + page.nextCursor() + "." + millis(since) + "." + millis(until)));
+        }
+        return ResponseEntity.ok(body);
+    }
+
+    @GetMapping("/users/{user}/messages/{messageId}")
+    public ResponseEntity<Object> getMessage(
+            @PathVariable String user,
+            @PathVariable String messageId,
+            @RequestParam MultiValueMap<String, String> query) {
+        Optional<ResponseEntity<Object>> fault = simulator.injectFault("message");
+        if (fault.isPresent()) {
+            return fault.get();
+        }
+
+        SyntheticMailbox.SimMessage message = simulator.mailbox(user).find(messageId);
+        if (message == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(GraphSimulator.error("ErrorItemNotFound", "The specified object was not found"));
+        }
+        return ResponseEntity.ok(SyntheticMailbox.toJson(message, includeBody(query)));
+    }
+
+    @GetMapping("/users/{user}/mailFolders")
+    public ResponseEntity<Object> mailFolders(@PathVariable String user) {
+        Optional<ResponseEntity<Object>> fault = simulator.injectFault("mailFolders");
+        if (fault.isPresent()) {
+            return fault.get();
+        }
+        simulator.mailbox(user);
+        return ResponseEntity.ok(collection(SyntheticMailbox.FOLDERS.stream()
+                .map(folder -> (Object) Map.of("id", folder, "displayName", folder, "childFolderCount", 0))
+                .toList()));
+    }
+
+    @GetMapping("/users/{user}/mailFolders/{folderId}/childFolders")
+    public ResponseEntity<Object> childFolders(@PathVariable String user, @PathVariable String folderId) {
+        return ResponseEntity.ok(collection(List.of()));
+    }
+
+    /**
+     * A delta round is either a snapshot of the mailbox at a sequence number
+     * or the changes since a delta token; both page with stateless cursors
+     * encoded in {@code $skiptoken}.
+     */
+    private ResponseEntity<Object> delta(String user, String folderId,
+                                         MultiValueMap<String, String> query) {
+        Optional<ResponseEntity<Object>> fault = simulator.injectFault("delta");
+        if (fault.isPresent()) {
+            return fault.get();
+        }
+
+        SyntheticMailbox mailbox = simulator.mailbox(user);
+        int limit = pageSize(query);
+        boolean includeBody = includeBody(query);
+        String skipToken = query.getFirst("$skiptoken");
+        String deltaToken = query.getFirst("$deltatoken");
+
+        if (deltaToken != null && simulator.expireDeltaToken()) {
+            return syncStateNotFound();
+        }
+
+        List<Object> value = new ArrayList<>();
+        String nextToken = null;
+        long roundEnd;
+
+        if (deltaToken != null || (skipToken != null && skipToken.startsWith("C."))) {
+            long after;
+            long cursor;
+            if (skipToken != null) {
+                String[] token = skipToken.split("\\.");
+                after = Long.parseLong(token[1]);
+                roundEnd = Long.parseLong(token[2]);
+                cursor = Long.parseLong(token[3]);
+            } else {
+                after = Long.parseLong(deltaToken);
+                roundEnd = mailbox.currentSequence();
+                cursor = -1;
+            }
+
+            SyntheticMailbox.ChangePage page = mailbox.changesPage(folderId, after, roundEnd, cursor, limit);
+            if (page == null) {
+                return syncStateNotFound();
+            }
+            for (SyntheticMailbox.Change change : page.items()) {
+                value.add(change.message().isDeleted()
+                        ? SyntheticMailbox.removedJson(change.message())
+                        : SyntheticMailbox.toJson(change.message(), includeBody));
+            }
+            if (page.nextCursor() >= 0) {
+                nextToken = "C." + after + "." + roundEnd + "." + page.nextCursor();
+            }
+        } else {
+            int cursor;
+            Instant since;
+            if (skipToken != null) {
+                String[] token = skipToken.split("\\.");
+                roundEnd = Long.parseLong(token[1]);
+                cursor = Integer.parseInt(token[2]);
+                since = "-".equals(token[3]) ? null : Instant.ofEpochMilli(Long.parseLong(token[3]));
+            } else {
+                roundEnd = mailbox.currentSequence();
+                cursor = 0;
+                since = filterBound(query.getFirst("$filter"), SINCE);
+            }
+
+            SyntheticMailbox.Page page = mailbox.snapshotPage(folderId, since, null, roundEnd, cursor, limit);
+            page.items().forEach(message -> value.add(SyntheticMailbox.toJson(message, includeBody)));
+            if (page.nextCursor() >= 0) {
+                nextToken = "S." + roundEnd + "." + page.nextCursor() + "." + millis(since);
+            }
+        }
+
+        Map<String, Object> body = collection(value);
+        if (nextToken != null) {
+            body.put("@odata.nextLink", link(query, "$skiptoken", nextToken));
+        } else {
+            body.put("@odata.deltaLink", link(query, "$deltatoken", String.valueOf(roundEnd)));
+        }
+        return ResponseEntity.ok(body);
+    }
+
+    private ResponseEntity<Object> syncStateNotFound() {
+        simulator.count("delta", 410);
+        return ResponseEntity.status(HttpStatus.GONE)
+                .body(GraphSimulator.error("SyncStateNotFound",
+                        "The sync state generation is not found. Restart the sync."));
+    }
+
+    // Subscriptions
+
+    @PostMapping("/subscriptions")
+    public ResponseEntity<Object> createSubscription(@RequestBody Map<String, Object> request) {
+        Optional<ResponseEntity<Object>> fault = simulator.injectFault("subscriptions");
+        if (fault.isPresent()) {
+            return fault.get();
+        }
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(simulator.createSubscription(request).toJson());
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                    .body(GraphSimulator.error("InvalidRequest", e.getMessage()));
+        }
+    }
+
+    @PatchMapping("/subscriptions/{id}")
+    public ResponseEntity<Object> renewSubscription(@PathVariable String id,
+                                                    @RequestBody Map<String, Object> patch) {
+        Optional<ResponseEntity<Object>> fault = simulator.injectFault("subscriptions");
+        if (fault.isPresent()) {
+            return fault.get();
+        }
+        GraphSimulator.SimSubscription renewed = simulator.renewSubscription(id, patch);
+        return renewed != null
+                ? ResponseEntity.ok(renewed.toJson())
+                : ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(GraphSimulator.error("ResourceNotFound", "Subscription not found"));
+    }
+
+    @DeleteMapping("/subscriptions/{id}")
+    public ResponseEntity<Object> deleteSubscription(@PathVariable String id) {
+        Optional<ResponseEntity<Object>> fault = simulator.injectFault("subscriptions");
+        if (fault.isPresent()) {
+            return fault.get();
+        }
+        return simulator.deleteSubscription(id)
+                ? ResponseEntity.noContent().build()
+                : ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(GraphSimulator.error("ResourceNotFound", "Subscription not found"));
+    }
+
+    @GetMapping("/subscriptions")
+    public ResponseEntity<Object> listSubscriptions() {
+        return ResponseEntity.ok(collection(simulator.subscriptions().stream()
+                .map(subscription -> (Object) subscription.toJson())
+                .toList()));
+    }
+
+    // JSON batching
+
+    /**
+     * Runs each step through the matching endpoint above, so steps are
+     * throttled individually like on Graph. Supports the step types this
+     * service sends: subscription create/renew/delete and single-message GET.
+     */
+    @PostMapping("/$batch")
+    @SuppressWarnings("unchecked")
+    public ResponseEntity<Object> batch(@RequestBody Map<String, Object> batch) {
+        List<Object> responses = new ArrayList<>();
+        for (Map<String, Object> step : (List<Map<String, Object>>) batch.get("requests")) {
+            ResponseEntity<Object> result = dispatch(
+                    String.valueOf(step.get("method")),
+                    String.valueOf(step.get("url")),
+                    (Map<String, Object>) step.get("body"));
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("id", step.get("id"));
+            response.put("status", result.getStatusCode().value());
+            Map<String, String> headers = new LinkedHashMap<>();
+            result.getHeaders().forEach((name, values) -> headers.put(name, String.join(",", values)));
+            response.put("headers", headers);
+            if (result.getBody() != null) {
+                response.put("body", result.getBody());
+            }
+            responses.add(response);
+        }
+        simulator.count("batch", 200);
+        return ResponseEntity.ok(Map.of("responses", responses));
+    }
+
+    private ResponseEntity<Object> dispatch(String method, String url, Map<String, Object> body) {
+        UriComponents uri = UriComponentsBuilder.fromUriString(url).build();
+        List<String> path = uri.getPathSegments();
+
+        if (!path.isEmpty() && "subscriptions".equalsIgnoreCase(path.get(0))) {
+            switch (method.toUpperCase()) {
+                case "POST":
+                    return createSubscription(body);
+                case "PATCH":
+                    return renewSubscription(path.get(1), body);
+                case "DELETE":
+                    return deleteSubscription(path.get(1));
+                default:
+                    break;
+            }
+        }
+        if ("GET".equalsIgnoreCase(method) && path.size() == 4
+                && "users".equalsIgnoreCase(path.get(0)) && "messages".equalsIgnoreCase(path.get(2))) {
+            return getMessage(path.get(1), path.get(3), uri.getQueryParams());
+        }
+        return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
+                .body(GraphSimulator.error("NotImplemented", method + " " + url + " is not simulated"));
+    }
+
+    // Helpers
+
+    private static Map<String, Object> collection(List<Object> value) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("value", value);
+        return body;
+    }
+
+    private static int pageSize(MultiValueMap<String, String> query) {
+        String top = query.getFirst("$top");
+        return top != null ? Integer.parseInt(top) : DEFAULT_PAGE_SIZE;
+    }
+
+    private static boolean includeBody(MultiValueMap<String, String> query) {
+        String select = query.getFirst("$select");
+        return select == null || Arrays.asList(select.split(",")).contains("body");
+    }
+
+    private static Instant filterBound(String filter, Pattern pattern) {
+        if (filter == null) {
+            return null;
+        }
+        Matcher matcher = pattern.matcher(filter);
+        return matcher.find() ? OffsetDateTime.parse(matcher.group(1)).toInstant() : null;
+    }
+
+    private static String millis(Instant instant) {
+        return instant != null ? String.valueOf(instant.toEpochMilli()) : "-";
+    }
+
+    // Continuation links keep $select and $top, like the tokens Graph hands out
+    private static String link(MultiValueMap<String, String> query, String tokenName, String token) {
+        ServletUriComponentsBuilder builder = ServletUriComponentsBuilder.fromCurrentRequestUri();
+        builder.replaceQuery(null);
+        for (String kept : List.of("$select", "$top")) {
+            if (query.getFirst(kept) != null) {
+                builder.queryParam(kept, query.getFirst(kept));
+            }
+        }
+        return builder.queryParam(tokenName, token).build().toUriString();
+    }
+}
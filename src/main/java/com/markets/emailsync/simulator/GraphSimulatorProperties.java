@@ -0,0 +1,69 @@
+package com.markets.emailsync.simulator;
+
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+/**
+ * Settings of the local Graph simulator (profile {@code simulator}).
+ */
+@Data
+@Validated
+@ConfigurationProperties(prefix = "graph-simulator")
+public class GraphSimulatorProperties {
+
+    // Messages generated when a mailbox is first touched
+    @PositiveOrZero
+    private int messagesPerMailbox = 2000;
+
+    // Generated messages are spread over this many days
+    @Positive
+    private int historyDays = 60;
+
+    @Positive
+    private int bodySizeBytes = 8192;
+
+    @PositiveOrZero
+    private int recipientsPerMessage = 8;
+
+    // Creates, updates and deletes per mailbox and minute
+    @PositiveOrZero
+    private double changesPerMinute = 60;
+
+    // Notifications per webhook POST
+    @Positive
+    private int notificationBatchSize = 10;
+
+    // Older changes are dropped; delta tokens behind them expire
+    @Positive
+    private int maxChangeLog = 100000;
+
+    private long seed = 42;
+
+    private FaultProperties faults = new FaultProperties();
+
+    @Data
+    public static class FaultProperties {
+        @PositiveOrZero
+        private long latencyMs = 0;
+
+        @PositiveOrZero
+        private long latencyJitterMs = 0;
+
+        // Share of requests answered with 429 / 503
+        @PositiveOrZero
+        private double throttleRate = 0;
+
+        @PositiveOrZero
+        private double unavailableRate = 0;
+
+        @PositiveOrZero
+        private int retryAfterSeconds = 2;
+
+        // Share of delta-token requests answered with 410 SyncStateNotFound
+        @PositiveOrZero
+        private double expiredDeltaTokenRate = 0;
+    }
+}
@@ -0,0 +1,91 @@
+package com.markets.emailsync.simulator;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runtime controls of the Graph simulator: inspect state, change fault
+ * injection between test phases, and trigger change bursts.
+ */
+@RestController
+@Profile("simulator")
+@RequestMapping("/simulator/control")
+public class SimulatorControlController {
+
+    private final GraphSimulator simulator;
+    private final WebhookStormHarness stormHarness;
+
+    public SimulatorControlController(GraphSimulator simulator, WebhookStormHarness stormHarness) {
+        this.simulator = simulator;
+        this.stormHarness = stormHarness;
+    }
+
+    @GetMapping("/state")
+    public ResponseEntity<Map<String, Object>> state() {
+        List<Map<String, Object>> mailboxes = simulator.mailboxes().stream()
+                .map(mailbox -> Map.<String, Object>of(
+                        "address", mailbox.address(),
+                        "messages", mailbox.size(),
+                        "sequence", mailbox.currentSequence()))
+                .toList();
+        return ResponseEntity.ok(Map.of(
+                "mailboxes", mailboxes,
+                "subscriptions", simulator.subscriptions().size(),
+                "faults", simulator.faults()));
+    }
+
+    @PutMapping("/faults")
+    public ResponseEntity<GraphSimulatorProperties.FaultProperties> updateFaults(
+            @RequestBody GraphSimulatorProperties.FaultProperties faults) {
+        GraphSimulatorProperties.FaultProperties current = simulator.faults();
+        current.setLatencyMs(faults.getLatencyMs());
+        current.setLatencyJitterMs(faults.getLatencyJitterMs());
+        current.setThrottleRate(faults.getThrottleRate());
+        current.setUnavailableRate(faults.getUnavailableRate());
+        current.setRetryAfterSeconds(faults.getRetryAfterSeconds());
+        current.setExpiredDeltaTokenRate(faults.getExpiredDeltaTokenRate());
+        return ResponseEntity.ok(current);
+    }
+
+    /**
+     * Applies {@code count} changes to the mailbox at once and sends the
+     * matching notifications.
+     */
+    @PostMapping("/burst")
+    public ResponseEntity<Map<String, Object>> burst(
+            @RequestParam String mailbox,
+            @RequestParam(defaultValue = "100") int count) {
+        int applied = simulator.applyChanges(simulator.mailbox(mailbox), count);
+        return ResponseEntity.ok(Map.of("mailbox", mailbox, "changes", applied));
+    }
+
+    /**
+     * Runs a webhook storm and returns its report once the created messages
+     * are stored or the drain timeout has passed.
+     */
+    @PostMapping("/storm")
+    public ResponseEntity<Object> storm(
+            @RequestParam(defaultValue = "200") int batches,
+            @RequestParam(defaultValue = "10") int notificationsPerBatch,
+            @RequestParam(defaultValue = "20") double batchesPerSecond,
+            @RequestParam(defaultValue = "16") int concurrency,
+            @RequestParam(defaultValue = "120") int drainTimeoutSeconds) throws InterruptedException {
+        try {
+            return ResponseEntity.ok(stormHarness.run(new WebhookStormHarness.StormPlan(
+                    batches, notificationsPerBatch, batchesPerSecond, concurrency, drainTimeoutSeconds)));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/reset")
+    public ResponseEntity<Void> reset() {
+        simulator.reset();
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,256 @@
+package com.markets.emailsync.simulator;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * In-memory mailbox of the simulator. Messages are append-only (deletes are
+ * tombstones) and every change gets a sequence number, so delta rounds can be
+ * paged with stateless cursors: a snapshot round lists what existed at a
+ * sequence number, a change round lists the changes between two of them.
+ */
+final class SyntheticMailbox {
+
+    static final List<String> FOLDERS = List.of("inbox", "archive", "sentitems");
+
+    private static final String PARAGRAPH = "<p style=\"font-family:Segoe UI,sans-serif;font-size:14px\">"
+            + "Please find the latest figures for the desk below. Positions were reconciled against "
+            + "the overnight run and the exceptions are listed in the attached table.</p>\n";
+
+    private final String address;
+    private final GraphSimulatorProperties settings;
+    private final Random random;
+    private final String bodyFiller;
+
+    private final List<SimMessage> messages = new ArrayList<>();
+    private final Map<String, SimMessage> byId = new HashMap<>();
+    private final List<Change> changes = new ArrayList<>();
+    private long trimmedChanges;
+    private long sequence;
+
+    SyntheticMailbox(String address, GraphSimulatorProperties settings) {
+        this.address = address;
+        this.settings = settings;
+        this.random = new Random(settings.getSeed() ^ address.hashCode());
+        this.bodyFiller = PARAGRAPH.repeat(Math.max(1, settings.getBodySizeBytes() / PARAGRAPH.length()));
+
+        Instant now = Instant.now();
+        long historySeconds = settings.getHistoryDays() * 86400L;
+        for (int i = 0; i < settings.getMessagesPerMailbox(); i++) {
+            add(newMessage(now.minusSeconds((long) (random.nextDouble() * historySeconds)), 0));
+        }
+    }
+
+    String address() {
+        return address;
+    }
+
+    synchronized long currentSequence() {
+        return sequence;
+    }
+
+    synchronized int size() {
+        return byId.size();
+    }
+
+    synchronized SimMessage find(String messageId) {
+        SimMessage message = byId.get(messageId);
+        return message != null && !message.isDeleted() ? message : null;
+    }
+
+    /**
+     * Applies one random change (create 60%, update 30%, delete 10%) and
+     * returns the affected message with its change type.
+     */
+    synchronized Change randomChange() {
+        double roll = random.nextDouble();
+        SimMessage target = messages.isEmpty() ? null : messages.get(random.nextInt(messages.size()));
+        long seq = ++sequence;
+
+        Change change;
+        if (roll < 0.6 || target == null || target.isDeleted()) {
+            SimMessage created = newMessage(Instant.now().truncatedTo(ChronoUnit.SECONDS), seq);
+            add(created);
+            change = new Change(seq, created, "created");
+        } else if (roll < 0.9) {
+            target.isRead = !target.isRead;
+            change = new Change(seq, target, "updated");
+        } else {
+            target.deletedSequence = seq;
+            change = new Change(seq, target, "deleted");
+        }
+
+        changes.add(change);
+        trimChanges();
+        return change;
+    }
+
+    /**
+     * Messages that existed at {@code atSequence}, scanning from
+     * {@code cursor}. The returned cursor is -1 after the last page.
+     */
+    synchronized Page snapshotPage(String folderId, Instant since, Instant until,
+                                   long atSequence, int cursor, int limit) {
+        List<SimMessage> items = new ArrayList<>(limit);
+        int index = cursor;
+        while (index < messages.size() && items.size() < limit) {
+            SimMessage message = messages.get(index++);
+            if (message.createdSequence > atSequence || message.deletedSequence <= atSequence) {
+                continue;
+            }
+            if (folderId != null && !folderId.equalsIgnoreCase(message.folderId)) {
+                continue;
+            }
+            if ((since != null && message.receivedDateTime.isBefore(since))
+                    || (until != null && !message.receivedDateTime.isBefore(until))) {
+                continue;
+            }
+            items.add(message);
+        }
+        return new Page(items, index < messages.size() ? index : -1);
+    }
+
+    /**
+     * Changes with {@code afterSequence < seq <= upToSequence}. The cursor is
+     * an absolute change index (-1 = start of the round). Returns
+     * {@code null} when the round reaches behind the retained change log.
+     */
+    synchronized ChangePage changesPage(String folderId, long afterSequence, long upToSequence,
+                                        long cursor, int limit) {
+        long start = cursor >= 0 ? cursor : firstChangeAfter(afterSequence);
+        if (afterSequence < firstRetainedSequence() - 1 || start < trimmedChanges) {
+            return null;
+        }
+
+        List<Change> items = new ArrayList<>(limit);
+        long index = start;
+        while (index - trimmedChanges < changes.size() && items.size() < limit) {
+            Change change = changes.get((int) (index - trimmedChanges));
+            if (change.sequence() > upToSequence) {
+                break;
+            }
+            index++;
+            if (folderId == null || folderId.equalsIgnoreCase(change.message().folderId)) {
+                items.add(change);
+            }
+        }
+
+        boolean more = index - trimmedChanges < changes.size()
+                && changes.get((int) (index - trimmedChanges)).sequence() <= upToSequence;
+        return new ChangePage(items, more ? index : -1);
+    }
+
+    private long firstChangeAfter(long afterSequence) {
+        int low = 0;
+        int high = changes.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (changes.get(mid).sequence() <= afterSequence) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return trimmedChanges + low;
+    }
+
+    private long firstRetainedSequence() {
+        return changes.isEmpty() ? sequence + 1 : changes.get(0).sequence();
+    }
+
+    private void trimChanges() {
+        int excess = changes.size() - settings.getMaxChangeLog();
+        // Trim in chunks so the list is not shifted on every change
+        if (excess > settings.getMaxChangeLog() / 10) {
+            changes.subList(0, excess).clear();
+            trimmedChanges += excess;
+        }
+    }
+
+    private void add(SimMessage message) {
+        messages.add(message);
+        byId.put(message.id, message);
+    }
+
+    private SimMessage newMessage(Instant receivedDateTime, long createdSequence) {
+        String id = "AAMk" + UUID.randomUUID().toString().replace("-", "");
+        List<String> recipients = new ArrayList<>(settings.getRecipientsPerMessage());
+        for (int i = 0; i < settings.getRecipientsPerMessage(); i++) {
+            recipients.add("recipient" + random.nextInt(500) + "@contoso.example");
+        }
+        String subject = "Daily report " + Integer.toHexString(random.nextInt());
+        String body = "<html><body><h3>" + subject + "</h3>\n" + bodyFiller + "</body></html>";
+        return new SimMessage(id, FOLDERS.get(random.nextInt(FOLDERS.size())), receivedDateTime,
+                subject, "sender" + random.nextInt(200) + "@fabrikam.example",
+                Collections.unmodifiableList(recipients), body, createdSequence);
+    }
+
+    static Map<String, Object> toJson(SimMessage message, boolean includeBody) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", message.id);
+        json.put("subject", message.subject);
+        json.put("from", Map.of("emailAddress", Map.of("name", message.sender, "address", message.sender)));
+        json.put("toRecipients", message.recipients.stream()
+                .map(address -> Map.of("emailAddress", Map.of("name", address, "address", address)))
+                .toList());
+        json.put("receivedDateTime", message.receivedDateTime.toString());
+        json.put("hasAttachments", false);
+        json.put("isRead", message.isRead);
+        json.put("importance", "normal");
+        json.put("bodyPreview", message.subject);
+        if (includeBody) {
+            json.put("body", Map.of("contentType", "html", "content", message.body));
+        }
+        json.put("categories", List.of());
+        json.put("conversationId", "conv-" + message.id.substring(4, 16));
+        json.put("parentFolderId", message.folderId);
+        return json;
+    }
+
+    static Map<String, Object> removedJson(SimMessage message) {
+        return Map.of("id", message.id, "@removed", Map.of("reason", "deleted"));
+    }
+
+    static final class SimMessage {
+        final String id;
+        final String folderId;
+        final Instant receivedDateTime;
+        final String subject;
+        final String sender;
+        final List<String> recipients;
+        final String body;
+        final long createdSequence;
+        boolean isRead;
+        long deletedSequence = Long.MAX_VALUE;
+
+        private SimMessage(String id, String folderId, Instant receivedDateTime, String subject,
+                           String sender, List<String> recipients, String body, long createdSequence) {
+            this.id = id;
+            this.folderId = folderId;
+            this.receivedDateTime = receivedDateTime;
+            this.subject = subject;
+            this.sender = sender;
+            this.recipients = recipients;
+            this.body = body;
+            this.createdSequence = createdSequence;
+        }
+
+        boolean isDeleted() {
+            return deletedSequence != Long.MAX_VALUE;
+        }
+    }
+
+    record Change(long sequence, SimMessage message, String changeType) {}
+
+    record Page(List<SimMessage> items, int nextCursor) {}
+
+    record ChangePage(List<Change> items, long nextCursor) {}
+}
@@ -0,0 +1,323 @@
+package com.markets.emailsync.simulator;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.markets.emailsync.repository.EmailRepository;
+import com.markets.emailsync.repository.WebhookNotificationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Webhook storm against this instance: applies changes to the simulated
+ * mailboxes, posts the matching notification batches to the webhook
+ * endpoint at a fixed rate across all simulator subscriptions, and reports
+ * how the pipeline kept up.
+ *
+ * <p>End-to-end latency is measured for created messages, from the moment
+ * their notification is sent to the {@code created_at} of the stored row.
+ * The harness shares the JVM with the service, so results are a lower bound
+ * of what a dedicated node absorbs.
+ */
+@Slf4j
+@Component
+@Profile("simulator")
+public class WebhookStormHarness {
+
+    private static final int ID_CHUNK = 1000;
+
+    private final GraphSimulator simulator;
+    private final EmailRepository emailRepository;
+    private final WebhookNotificationRepository notificationRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final Semaphore running = new Semaphore(1);
+
+    public WebhookStormHarness(
+            GraphSimulator simulator,
+            EmailRepository emailRepository,
+            WebhookNotificationRepository notificationRepository,
+            EntityManagerFactory entityManagerFactory,
+            MeterRegistry meterRegistry,
+            ObjectMapper objectMapper) {
+        this.simulator = simulator;
+        this.emailRepository = emailRepository;
+        this.notificationRepository = notificationRepository;
+        this.entityManagerFactory = entityManagerFactory;
+        this.meterRegistry = meterRegistry;
+        this.objectMapper = objectMapper;
+    }
+
+    public record StormPlan(int batches, int notificationsPerBatch, double batchesPerSecond,
+                            int concurrency, int drainTimeoutSeconds) {
+    }
+
+    public StormReport run(StormPlan plan) throws InterruptedException {
+        if (!running.tryAcquire()) {
+            throw new IllegalStateException("A storm is already running");
+        }
+        try {
+            return storm(plan);
+        } finally {
+            running.release();
+        }
+    }
+
+    private StormReport storm(StormPlan plan) throws InterruptedException {
+        List<GraphSimulator.SimSubscription> subscriptions = new ArrayList<>(simulator.subscriptions());
+        if (subscriptions.isEmpty()) {
+            throw new IllegalStateException("No subscriptions; initialize the mailboxes first");
+        }
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        Map<String, Long> dbBefore = dbCounts(statistics);
+        Map<String, Double> graphBefore = graphCalls();
+        long backlogBefore = notificationRepository.countByProcessedFalse();
+
+        Map<String, Instant> sentAt = new ConcurrentHashMap<>();
+        ConcurrentLinkedQueue<Long> responseNanos = new ConcurrentLinkedQueue<>();
+        AtomicInteger failedPosts = new AtomicInteger();
+        List<Map<String, Object>> samples = new ArrayList<>();
+
+        ExecutorService senders = Executors.newFixedThreadPool(plan.concurrency(), runnable -> {
+            Thread thread = new Thread(runnable, "storm-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore inFlight = new Semaphore(plan.concurrency());
+
+        log.info("Storm: {} batches of {} notifications at {}/s across {} subscriptions",
+                plan.batches(), plan.notificationsPerBatch(), plan.batchesPerSecond(), subscriptions.size());
+
+        long start = System.nanoTime();
+        long nextSample = start;
+        try {
+            for (int i = 0; i < plan.batches(); i++) {
+                long due = start + (long) (i * 1_000_000_000L / plan.batchesPerSecond());
+                while (System.nanoTime() < due) {
+                    TimeUnit.NANOSECONDS.sleep(Math.min(due - System.nanoTime(), 10_000_000L));
+                }
+                if (System.nanoTime() >= nextSample) {
+                    samples.add(sample(start));
+                    nextSample += 1_000_000_000L;
+                }
+
+                GraphSimulator.SimSubscription subscription = subscriptions.get(i % subscriptions.size());
+                List<SyntheticMailbox.Change> changes = simulator.mutate(
+                        simulator.mailbox(subscription.mailbox()), plan.notificationsPerBatch());
+                byte[] payload = objectMapper.writeValueAsBytes(
+                        GraphSimulator.notificationPayload(subscription, changes));
+
+                inFlight.acquire();
+                senders.submit(() -> {
+                    try {
+                        Instant sent = Instant.now();
+                        for (SyntheticMailbox.Change change : changes) {
+                            if ("created".equals(change.changeType())) {
+                                sentAt.put(change.message().id, sent);
+                            }
+                        }
+                        long begin = System.nanoTime();
+                        HttpResponse<Void> response = httpClient.send(HttpRequest.newBuilder()
+                                        .uri(URI.create(subscription.notificationUrl()))
+                                        .header("Content-Type", "application/json")
+                                        .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                                        .build(),
+                                HttpResponse.BodyHandlers.discarding());
+                        responseNanos.add(System.nanoTime() - begin);
+                        if (response.statusCode() >= 300) {
+                            failedPosts.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failedPosts.incrementAndGet();
+                        log.debug("Storm: webhook post failed: {}", e.getMessage());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize notification payload", e);
+        } finally {
+            senders.shutdown();
+            senders.awaitTermination(60, TimeUnit.SECONDS);
+        }
+        double sendSeconds = (System.nanoTime() - start) / 1e9;
+
+        // Drain: wait until every created message is stored or the timeout hits
+        Map<String, Instant> persistedAt = new HashMap<>();
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(plan.drainTimeoutSeconds());
+        while (true) {
+            samples.add(sample(start));
+            collectPersisted(sentAt, persistedAt);
+            if (persistedAt.size() >= sentAt.size() || System.nanoTime() > drainDeadline) {
+                break;
+            }
+            Thread.sleep(1000);
+        }
+        double totalSeconds = (System.nanoTime() - start) / 1e9;
+
+        long[] latencies = persistedAt.entrySet().stream()
+                .mapToLong(entry -> Duration.between(sentAt.get(entry.getKey()), entry.getValue()).toMillis())
+                .toArray();
+        long[] responses = responseNanos.stream().mapToLong(TimeUnit.NANOSECONDS::toMicros).toArray();
+
+        int notifications = plan.batches() * plan.notificationsPerBatch();
+        StormReport report = new StormReport(
+                plan,
+                subscriptions.size(),
+                round(sendSeconds),
+                round(totalSeconds),
+                round(notifications / sendSeconds),
+                failedPosts.get(),
+                sentAt.size(),
+                persistedAt.size(),
+                percentiles(latencies, "ms"),
+                percentiles(responses, "us"),
+                backlogBefore,
+                samples.stream().mapToLong(s -> (Long) s.get("backlog")).max().orElse(0),
+                notificationRepository.countByProcessedFalse(),
+                samples,
+                diff(dbCounts(statistics), dbBefore),
+                diffDouble(graphCalls(), graphBefore));
+
+        log.info("Storm finished: {} of {} created messages stored, p99 {} ms",
+                persistedAt.size(), sentAt.size(), report.notificationToPersisted().get("p99"));
+        return report;
+    }
+
+    private void collectPersisted(Map<String, Instant> sentAt, Map<String, Instant> persistedAt) {
+        List<String> pending = sentAt.keySet().stream()
+                .filter(id -> !persistedAt.containsKey(id))
+                .toList();
+        for (int from = 0; from < pending.size(); from += ID_CHUNK) {
+            for (EmailRepository.PersistedEmail email : emailRepository.findPersisted(
+                    pending.subList(from, Math.min(from + ID_CHUNK, pending.size())))) {
+                persistedAt.put(email.getMessageId(), email.getCreatedAt());
+            }
+        }
+    }
+
+    // Backlog and pool pressure over time, one sample per second
+    private Map<String, Object> sample(long start) {
+        Map<String, Object> sample = new LinkedHashMap<>();
+        sample.put("second", (System.nanoTime() - start) / 1_000_000_000L);
+        sample.put("backlog", notificationRepository.countByProcessedFalse());
+        sample.put("asyncQueued", gauge("executor.queued", "name", "applicationTaskExecutor"));
+        sample.put("asyncActive", gauge("executor.active", "name", "applicationTaskExecutor"));
+        sample.put("dbConnectionsActive", gauge("hikaricp.connections.active", null, null));
+        sample.put("dbConnectionsPending", gauge("hikaricp.connections.pending", null, null));
+        return sample;
+    }
+
+    private double gauge(String name, String tagKey, String tagValue) {
+        Gauge gauge = tagKey != null
+                ? meterRegistry.find(name).tag(tagKey, tagValue).gauge()
+                : meterRegistry.find(name).gauge();
+        return gauge != null ? gauge.value() : Double.NaN;
+    }
+
+    private static Map<String, Long> dbCounts(Statistics statistics) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put("statements", statistics.getPrepareStatementCount());
+        counts.put("queries", statistics.getQueryExecutionCount());
+        counts.put("entityLoads", statistics.getEntityLoadCount());
+        counts.put("entityInserts", statistics.getEntityInsertCount());
+        counts.put("entityUpdates", statistics.getEntityUpdateCount());
+        counts.put("transactions", statistics.getTransactionCount());
+        counts.put("connections", statistics.getConnectCount());
+        return counts;
+    }
+
+    // Requests the simulator served, by endpoint
+    private Map<String, Double> graphCalls() {
+        Map<String, Double> calls = new LinkedHashMap<>();
+        for (Counter counter : meterRegistry.find("simulator.requests").counters()) {
+            calls.merge(counter.getId().getTag("endpoint"), counter.count(), Double::sum);
+        }
+        return calls;
+    }
+
+    private static Map<String, Long> diff(Map<String, Long> after, Map<String, Long> before) {
+        Map<String, Long> diff = new LinkedHashMap<>();
+        after.forEach((key, value) -> diff.put(key, value - before.getOrDefault(key, 0L)));
+        return diff;
+    }
+
+    private static Map<String, Long> diffDouble(Map<String, Double> after, Map<String, Double> before) {
+        Map<String, Long> diff = new LinkedHashMap<>();
+        after.forEach((key, value) -> diff.put(key, Math.round(value - before.getOrDefault(key, 0.0))));
+        return diff;
+    }
+
+    private static Map<String, Object> percentiles(long[] values, String unit) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("unit", unit);
+        result.put("count", values.length);
+        if (values.length == 0) {
+            return result;
+        }
+        Arrays.sort(values);
+        for (double p : new double[]{50, 90, 95, 99, 99.9}) {
+            int index = (int) Math.ceil(p / 100 * values.length) - 1;
+            result.put("p" + (p == Math.rint(p) ? String.valueOf((int) p) : String.valueOf(p)),
+                    values[Math.max(0, index)]);
+        }
+        result.put("max", values[values.length - 1]);
+        return result;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    public record StormReport(
+            StormPlan plan,
+            int subscriptions,
+            double sendSeconds,
+            double totalSeconds,
+            double notificationsPerSecond,
+            int failedPosts,
+            int createdMessages,
+            int persistedMessages,
+            Map<String, Object> notificationToPersisted,
+            Map<String, Object> webhookResponse,
+            long backlogBefore,
+            long backlogPeak,
+            long backlogAfter,
+            List<Map<String, Object>> samples,
+            Map<String, Long> dbCalls,
+            Map<String, Long> graphCalls) {
+    }
+}
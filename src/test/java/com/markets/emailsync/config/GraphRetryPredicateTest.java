@@ -0,0 +1,55 @@
+package com.markets.emailsync.config;
+
+import com.markets.emailsync.service.GraphService;
+import com.microsoft.graph.http.GraphError;
+import com.microsoft.graph.http.GraphErrorResponse;
+import com.microsoft.graph.http.GraphServiceException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GraphRetryPredicateTest {
+
+    private final GraphRetryPredicate predicate = new GraphRetryPredicate();
+
+    @Test
+    void retriesServerErrorsWrappedBySync() {
+        Throwable wrapped = new GraphService.GraphSyncException("Failed to perform delta sync",
+                new CompletionException(graphError(500, "generalException")));
+
+        assertThat(predicate.test(wrapped)).isTrue();
+    }
+
+    @Test
+    void leavesThrottlingToTheGovernor() {
+        assertThat(predicate.test(graphError(429, "TooManyRequests"))).isFalse();
+        assertThat(predicate.test(new CompletionException(graphError(503, "serviceNotAvailable")))).isFalse();
+    }
+
+    @Test
+    void doesNotRetryAnExpiredDeltaLink() {
+        assertThat(predicate.test(new GraphService.GraphSyncException("Failed to perform delta sync",
+                graphError(410, "syncStateNotFound")))).isFalse();
+    }
+
+    @Test
+    void ignoresOtherExceptions() {
+        assertThat(predicate.test(new GraphService.GraphSyncException("Failed", new IOException("reset"))))
+                .isFalse();
+        assertThat(predicate.test(new IllegalStateException())).isFalse();
+    }
+
+    private static GraphServiceException graphError(int status, String code) {
+        GraphErrorResponse error = new GraphErrorResponse();
+        error.error = new GraphError();
+        error.error.code = code;
+        error.error.message = code;
+        return GraphServiceException.createFromResponse("https://graph.microsoft.com/v1.0/users/a/messages",
+                "GET", List.of(), null, Map.of("Retry-After", "5"), code, status, error, false);
+    }
+}
@@ -0,0 +1,40 @@
+package com.markets.emailsync.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GraphThrottlingGovernorTest {
+
+    private final GraphThrottlingGovernor governor =
+            new GraphThrottlingGovernor(new MicrosoftGraphProperties(), new SimpleMeterRegistry());
+
+    @Test
+    void findsTheMailboxOfABatchStep() throws Exception {
+        assertThat(GraphThrottlingGovernor.mailboxOf(
+                new URL("https://graph.microsoft.com/v1.0/users/Ann%40contoso.example/messages/AAMk1")))
+                .isEqualTo("Ann@contoso.example");
+        assertThat(GraphThrottlingGovernor.mailboxOf(
+                new URL("https://graph.microsoft.com/v1.0/subscriptions"))).isNull();
+        assertThat(GraphThrottlingGovernor.mailboxOf((URL) null)).isNull();
+    }
+
+    @Test
+    void throttledMailboxDoesNotSlowDownTheTenant() {
+        governor.recordResponse("ann@contoso.example", 429, "5", null);
+
+        assertThat(governor.isUnderPressure("Ann@contoso.example")).isTrue();
+        assertThat(governor.isUnderPressure("bob@contoso.example")).isFalse();
+        assertThat(governor.isUnderPressure(null)).isFalse();
+    }
+
+    @Test
+    void tenantThrottlingAffectsEveryMailbox() {
+        governor.recordResponse(null, 503, "5", null);
+
+        assertThat(governor.isUnderPressure("bob@contoso.example")).isTrue();
+    }
+}
@@ -0,0 +1,72 @@
+package com.markets.emailsync.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class GraphThrottlingGovernorTokenBucketTest {
+
+    private final MicrosoftGraphProperties.ThrottlingProperties settings =
+            new MicrosoftGraphProperties.ThrottlingProperties();
+
+    @Test
+    void startsFullAndMakesCallersWaitOnceEmpty() {
+        GraphThrottlingGovernor.TokenBucket bucket = new GraphThrottlingGovernor.TokenBucket(10, settings);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(bucket.reserve()).isLessThan(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+        // The next token is about 100 ms away at 10 per second
+        assertThat(bucket.reserve()).isBetween(
+                TimeUnit.MILLISECONDS.toNanos(50), TimeUnit.MILLISECONDS.toNanos(110));
+    }
+
+    @Test
+    void slowDownIsMultiplicativeAndStopsAtTheFloor() {
+        settings.setDecreaseFactor(0.5);
+        settings.setMinRequestsPerSecond(2);
+        GraphThrottlingGovernor.TokenBucket bucket = new GraphThrottlingGovernor.TokenBucket(16, settings);
+
+        bucket.slowDown();
+        assertThat(bucket.currentRate()).isEqualTo(8);
+        bucket.slowDown();
+        bucket.slowDown();
+        bucket.slowDown();
+        assertThat(bucket.currentRate()).isEqualTo(2);
+    }
+
+    @Test
+    void recoveryIsAdditiveAndCappedAtTheMaximum() {
+        settings.setDecreaseFactor(0.5);
+        settings.setRecoveryStep(1);
+        GraphThrottlingGovernor.TokenBucket bucket = new GraphThrottlingGovernor.TokenBucket(4, settings);
+
+        bucket.slowDown();
+        bucket.recover();
+        assertThat(bucket.currentRate()).isCloseTo(3, within(1e-9));
+        bucket.recover();
+        bucket.recover();
+        assertThat(bucket.currentRate()).isEqualTo(4);
+    }
+
+    @Test
+    void throttleBlocksForRetryAfter() {
+        GraphThrottlingGovernor.TokenBucket bucket = new GraphThrottlingGovernor.TokenBucket(100, settings);
+
+        bucket.throttle(TimeUnit.SECONDS.toNanos(2));
+
+        assertThat(bucket.reserve()).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(1900));
+        assertThat(bucket.slowedDownWithin(TimeUnit.SECONDS.toNanos(1))).isTrue();
+        assertThat(bucket.currentRate()).isLessThan(100);
+    }
+
+    @Test
+    void isNotSlowedDownUntilThrottled() {
+        GraphThrottlingGovernor.TokenBucket bucket = new GraphThrottlingGovernor.TokenBucket(10, settings);
+
+        assertThat(bucket.slowedDownWithin(TimeUnit.MINUTES.toNanos(1))).isFalse();
+    }
+}
@@ -0,0 +1,69 @@
+package com.markets.emailsync.repository;
+
+import com.markets.emailsync.entity.EmailEntity;
+import com.markets.emailsync.entity.MailboxEntity;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmailBulkRepositoryCsvTest {
+
+    @Test
+    void writesNullAsUnquotedEmptyField() {
+        assertThat(EmailBulkRepository.appendCsv(new StringBuilder(), null)).isEmpty();
+    }
+
+    @Test
+    void quotesEmptyStringSoItIsNotNull() {
+        assertThat(EmailBulkRepository.appendCsv(new StringBuilder(), "").toString()).isEqualTo("\"\"");
+    }
+
+    @Test
+    void doublesEmbeddedQuotesAndKeepsSeparators() {
+        String value = "Re: \"Q1\", part 2\r\nnext line\\";
+
+        assertThat(EmailBulkRepository.appendCsv(new StringBuilder(), value).toString())
+                .isEqualTo("\"Re: \"\"Q1\"\", part 2\r\nnext line\\\"");
+    }
+
+    @Test
+    void writesColumnsInCopyOrder() {
+        Instant received = Instant.parse("2024-03-01T10:15:30.123Z");
+        EmailEntity email = EmailEntity.builder()
+                .messageId("AAMk1")
+                .mailbox(MailboxEntity.builder().id(7L).build())
+                .subject("Hello, \"world\"")
+                .senderEmail("ann@contoso.example")
+                .recipientEmails("bob@contoso.example, eve@contoso.example")
+                .receivedDateTime(received)
+                .hasAttachments(true)
+                .importance("HIGH")
+                .bodyPreview("")
+                .bodyHydrated(false)
+                .contentFingerprint(-42L)
+                .build();
+
+        StringBuilder line = new StringBuilder();
+        EmailBulkRepository.appendCsvLine(line, 3, email);
+
+        assertThat(line.toString()).isEqualTo("3,\"AAMk1\",7,\"Hello, \"\"world\"\"\",\"ann@contoso.example\",,"
+                + "\"bob@contoso.example, eve@contoso.example\",\"" + Timestamp.from(received) + "\","
+                + "true,false,\"HIGH\",\"\",,,,false,,,-42\n");
+    }
+
+    @Test
+    void leavesMissingReceivedTimeAndFingerprintNull() {
+        EmailEntity email = EmailEntity.builder()
+                .messageId("AAMk2")
+                .mailbox(MailboxEntity.builder().id(1L).build())
+                .build();
+
+        StringBuilder line = new StringBuilder();
+        EmailBulkRepository.appendCsvLine(line, 0, email);
+
+        assertThat(line.toString()).isEqualTo("0,\"AAMk2\",1,,,,,,false,false,,,,,,true,,,\n");
+    }
+}
@@ -0,0 +1,116 @@
+package com.markets.emailsync.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.markets.emailsync.config.EmailPersistenceProperties;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DeltaPageDecoderTest {
+
+    private static final String MESSAGE = """
+            {"id":"AAMk1","subject":"Quarterly numbers","unknown":{"nested":[1,2,{"x":null}]},\
+            "from":{"emailAddress":{"name":"Ann","address":"ann@contoso.example"}},\
+            "toRecipients":[{"emailAddress":{"address":"bob@contoso.example"}},\
+            {"emailAddress":{"name":"No address"}},{"emailAddress":{"address":"eve@contoso.example"}}],\
+            "receivedDateTime":"2024-03-01T10:15:30Z","hasAttachments":true,"isRead":false,\
+            "importance":"high","bodyPreview":"Numbers attached","body":{"contentType":"html",\
+            "content":"<p>Grüße</p>"},"categories":["Red","Blue"],"conversationId":"conv-1"}""";
+
+    private static final String REMOVED = """
+            {"id":"AAMk2","@removed":{"reason":"deleted"}}""";
+
+    @Test
+    void decodesMessagesAndLinks() throws IOException {
+        GraphService.DeltaPage page = decoder(EmailPersistenceProperties.RawDataProperties.Mode.NEVER)
+                .decode(page("[" + MESSAGE + "," + REMOVED + "]",
+                        "\"@odata.nextLink\":\"https://graph/next\""));
+
+        assertThat(page.nextLink()).isEqualTo("https://graph/next");
+        assertThat(page.deltaLink()).isNull();
+        assertThat(page.messages()).hasSize(2);
+
+        MessageRecord message = page.messages().get(0);
+        assertThat(message.id()).isEqualTo("AAMk1");
+        assertThat(message.subject()).isEqualTo("Quarterly numbers");
+        assertThat(message.senderEmail()).isEqualTo("ann@contoso.example");
+        assertThat(message.senderName()).isEqualTo("Ann");
+        assertThat(message.recipientEmails()).isEqualTo("bob@contoso.example, eve@contoso.example");
+        assertThat(message.receivedDateTime()).isEqualTo(Instant.parse("2024-03-01T10:15:30Z"));
+        assertThat(message.hasAttachments()).isTrue();
+        assertThat(message.isRead()).isFalse();
+        assertThat(message.importance()).isEqualTo("HIGH");
+        assertThat(message.bodyPreview()).isEqualTo("Numbers attached");
+        assertThat(message.hasBody()).isTrue();
+        assertThat(message.bodyContent()).isEqualTo("<p>Grüße</p>");
+        assertThat(message.bodyContentType()).isEqualTo("HTML");
+        assertThat(message.categories()).isEqualTo("Red, Blue");
+        assertThat(message.conversationId()).isEqualTo("conv-1");
+        assertThat(message.removed()).isFalse();
+        assertThat(message.rawData()).isNull();
+
+        MessageRecord removed = page.messages().get(1);
+        assertThat(removed.id()).isEqualTo("AAMk2");
+        assertThat(removed.removed()).isTrue();
+        assertThat(removed.hasBody()).isFalse();
+    }
+
+    @Test
+    void readsDeltaLinkOnLastPage() throws IOException {
+        GraphService.DeltaPage page = decoder(EmailPersistenceProperties.RawDataProperties.Mode.NEVER)
+                .decode(page("[]", "\"@odata.deltaLink\":\"https://graph/delta?token=1\""));
+
+        assertThat(page.messages()).isEmpty();
+        assertThat(page.nextLink()).isNull();
+        assertThat(page.deltaLink()).isEqualTo("https://graph/delta?token=1");
+    }
+
+    @Test
+    void capturesRawJsonOfEachMessage() throws IOException {
+        GraphService.DeltaPage page = decoder(EmailPersistenceProperties.RawDataProperties.Mode.ALWAYS)
+                .decode(page("[ " + MESSAGE + " ,\n" + REMOVED + "]", null));
+
+        assertThat(page.messages()).extracting(MessageRecord::rawData)
+                .containsExactly(MESSAGE, REMOVED);
+    }
+
+    @Test
+    void leavesMissingFieldsEmpty() throws IOException {
+        GraphService.DeltaPage page = decoder(EmailPersistenceProperties.RawDataProperties.Mode.NEVER)
+                .decode(page("[{\"id\":\"AAMk3\",\"from\":null,\"toRecipients\":[],\"categories\":[]}]", null));
+
+        MessageRecord message = page.messages().get(0);
+        assertThat(message.senderEmail()).isNull();
+        assertThat(message.recipientEmails()).isNull();
+        assertThat(message.categories()).isNull();
+        assertThat(message.receivedDateTime()).isNull();
+        assertThat(message.hasBody()).isFalse();
+    }
+
+    @Test
+    void rejectsNonObjectResponse() {
+        DeltaPageDecoder decoder = decoder(EmailPersistenceProperties.RawDataProperties.Mode.NEVER);
+
+        assertThatThrownBy(() -> decoder.decode(
+                new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8))))
+                .isInstanceOf(IOException.class);
+    }
+
+    private static DeltaPageDecoder decoder(EmailPersistenceProperties.RawDataProperties.Mode mode) {
+        EmailPersistenceProperties properties = new EmailPersistenceProperties();
+        properties.getRawData().setMode(mode);
+        return new DeltaPageDecoder(new ObjectMapper(), properties);
+    }
+
+    private static ByteArrayInputStream page(String value, String link) {
+        String json = "{\"@odata.context\":\"https://graph/$metadata#messages\",\"value\":" + value
+                + (link != null ? "," + link : "") + "}";
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
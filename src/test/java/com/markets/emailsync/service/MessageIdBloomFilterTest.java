@@ -0,0 +1,61 @@
+package com.markets.emailsync.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageIdBloomFilterTest {
+
+    @Test
+    void containsEveryAddedId() {
+        MessageIdBloomFilter filter = new MessageIdBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("AAMkAGI2-" + i);
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain("AAMkAGI2-" + i)).isTrue();
+        }
+    }
+
+    @Test
+    void keepsFalsePositivesNearTheConfiguredRate() {
+        MessageIdBloomFilter filter = new MessageIdBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("stored-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("absent-" + i)) {
+                falsePositives++;
+            }
+        }
+        // 1% expected; allow for the variance of one fixed set of ids
+        assertThat(falsePositives).isLessThan(2_000);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        MessageIdBloomFilter filter = new MessageIdBloomFilter(1_000, 0.01);
+
+        assertThat(filter.mightContain("AAMk1")).isFalse();
+        assertThat(filter.mightContain("")).isFalse();
+    }
+
+    @Test
+    void sizesBitsFromCapacityAndRate() {
+        // About 9.6 bits per entry at 1%
+        MessageIdBloomFilter filter = new MessageIdBloomFilter(1_000_000, 0.01);
+
+        assertThat(filter.sizeInBytes()).isBetween(1_150_000L, 1_250_000L);
+    }
+
+    @Test
+    void toleratesZeroCapacity() {
+        MessageIdBloomFilter filter = new MessageIdBloomFilter(0, 0.01);
+        filter.add("AAMk1");
+
+        assertThat(filter.mightContain("AAMk1")).isTrue();
+    }
+}
@@ -0,0 +1,87 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.config.EmailPersistenceProperties;
+import com.markets.emailsync.repository.EmailRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MessageIdIndexTest {
+
+    private MessageIdIndex index;
+
+    @BeforeEach
+    void loadEmptyIndex() {
+        EmailRepository emailRepository = mock(EmailRepository.class);
+        when(emailRepository.count()).thenReturn(0L);
+        when(emailRepository.findMessageKeysAfter(anyLong(), any(Pageable.class))).thenReturn(List.of());
+        index = new MessageIdIndex(emailRepository, new EmailPersistenceProperties(), new SimpleMeterRegistry());
+        index.refresh();
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void writesOfARolledBackPageAreNotReportedStored() {
+        TransactionSynchronizationManager.initSynchronization();
+        index.recordWritten(List.of("AAMk1", "AAMk2"));
+
+        assertThat(index.lookup(List.of("AAMk1", "AAMk2")).known()).isEmpty();
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCompletion(
+                synchronizations, TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        MessageIdIndex.Membership membership = index.lookup(List.of("AAMk1", "AAMk2"));
+        assertThat(membership.known()).isEmpty();
+        assertThat(membership.unknown()).isEmpty();
+    }
+
+    @Test
+    void writesAreReportedStoredOnceCommitted() {
+        TransactionSynchronizationManager.initSynchronization();
+        index.recordWritten(List.of("AAMk1"));
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
+
+        assertThat(index.lookup(List.of("AAMk1", "AAMk9")).known()).containsExactly("AAMk1");
+    }
+
+    @Test
+    void writesWithoutATransactionAreRecordedAtOnce() {
+        index.recordWritten(List.of("AAMk1"));
+
+        assertThat(index.lookup(List.of("AAMk1")).known()).containsExactly("AAMk1");
+    }
+
+    @Test
+    void clearedRecentIdsNeedALookup() {
+        index.recordWritten(List.of("AAMk1"));
+        index.clearRecent();
+
+        MessageIdIndex.Membership membership = index.lookup(List.of("AAMk1"));
+        assertThat(membership.known()).isEmpty();
+        assertThat(membership.unknown()).containsExactly("AAMk1");
+    }
+}
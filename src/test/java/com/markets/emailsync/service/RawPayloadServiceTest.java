@@ -0,0 +1,63 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.repository.EmailRawDataRepository;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RawPayloadServiceTest {
+
+    private static final String RAW = "{\"id\":\"AAMk1\",\"subject\":\"Grüße\",\"body\":{\"content\":\""
+            + "<p>quarterly numbers</p>".repeat(200) + "\"}}";
+
+    @Test
+    void roundTripsAndShrinksRepetitiveJson() {
+        EmailRawDataRepository.EncodedPayload encoded = RawPayloadService.encode(RAW);
+
+        assertThat(encoded.codec()).isEqualTo(RawPayloadService.CODEC);
+        assertThat(encoded.rawSize()).isEqualTo(RAW.getBytes(StandardCharsets.UTF_8).length);
+        assertThat(encoded.bytes().length).isLessThan(encoded.rawSize() / 4);
+        assertThat(RawPayloadService.decode(encoded)).isEqualTo(RAW);
+    }
+
+    @Test
+    void roundTripsEmptyPayload() {
+        EmailRawDataRepository.EncodedPayload encoded = RawPayloadService.encode("");
+
+        assertThat(encoded.rawSize()).isZero();
+        assertThat(RawPayloadService.decode(encoded)).isEmpty();
+    }
+
+    @Test
+    void rejectsUnknownCodec() {
+        EmailRawDataRepository.EncodedPayload encoded = RawPayloadService.encode(RAW);
+
+        assertThatThrownBy(() -> RawPayloadService.decode(
+                new EmailRawDataRepository.EncodedPayload("zstd", encoded.rawSize(), encoded.bytes())))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("zstd");
+    }
+
+    @Test
+    void rejectsCorruptPayload() {
+        byte[] garbage = "not deflate at all".getBytes(StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> RawPayloadService.decode(
+                new EmailRawDataRepository.EncodedPayload(RawPayloadService.CODEC, 100, garbage)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void rejectsTruncatedPayload() {
+        EmailRawDataRepository.EncodedPayload encoded = RawPayloadService.encode(RAW);
+        byte[] truncated = Arrays.copyOf(encoded.bytes(), encoded.bytes().length / 2);
+
+        assertThatThrownBy(() -> RawPayloadService.decode(
+                new EmailRawDataRepository.EncodedPayload(encoded.codec(), encoded.rawSize(), truncated)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,75 @@
+package com.markets.emailsync.service;
+
+import com.markets.emailsync.config.WebhookProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookBackoffTest {
+
+    private final WebhookProperties.RetryProperties retry = new WebhookProperties.RetryProperties();
+
+    @Test
+    void doublesPerAttemptWithinTheJitterRange() {
+        retry.setInitialBackoffMs(1000);
+        retry.setMaxBackoffMs(3_600_000);
+        Random random = new Random(42);
+
+        for (int attempts = 1; attempts <= 8; attempts++) {
+            long full = 1000L << (attempts - 1);
+            for (int i = 0; i < 100; i++) {
+                assertThat(WebhookProcessingService.backoff(attempts, retry, random))
+                        .isBetween(Duration.ofMillis(full / 2), Duration.ofMillis(full));
+            }
+        }
+    }
+
+    @Test
+    void staysUnderTheMaximum() {
+        retry.setInitialBackoffMs(30_000);
+        retry.setMaxBackoffMs(3_600_000);
+        Random random = new Random(7);
+
+        for (int attempts : new int[] {8, 20, 31, 64, Integer.MAX_VALUE}) {
+            assertThat(WebhookProcessingService.backoff(attempts, retry, random))
+                    .isBetween(Duration.ofMillis(1_800_000), Duration.ofMillis(3_600_000));
+        }
+    }
+
+    @Test
+    void spreadsRetriesOfTheSameAttempt() {
+        retry.setInitialBackoffMs(30_000);
+        Random random = new Random(1);
+
+        long distinct = IntStream.range(0, 50)
+                .mapToObj(i -> WebhookProcessingService.backoff(3, retry, random))
+                .distinct()
+                .count();
+
+        assertThat(distinct).isGreaterThan(40);
+    }
+
+    @Test
+    void usesBoundsAtTheExtremesOfTheRandomSource() {
+        retry.setInitialBackoffMs(1000);
+
+        assertThat(WebhookProcessingService.backoff(1, retry, fixed(0)))
+                .isEqualTo(Duration.ofMillis(500));
+        assertThat(WebhookProcessingService.backoff(1, retry, fixed(Long.MAX_VALUE)))
+                .isEqualTo(Duration.ofMillis(1000));
+    }
+
+    // Always draws the smallest or the largest value the bound allows
+    private static Random fixed(long value) {
+        return new Random() {
+            @Override
+            public long nextLong(long bound) {
+                return Math.min(value, bound - 1);
+            }
+        };
+    }
+}